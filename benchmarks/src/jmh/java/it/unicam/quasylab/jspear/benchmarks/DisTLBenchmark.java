@@ -0,0 +1,85 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.benchmarks;
+
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.SystemState;
+import it.unicam.quasylab.jspear.distl.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the evaluation of DisTL formulae via {@link DoubleSemanticsVisitor}.
+ * Sequences are generated during the setup, so that only the evaluation of formulae is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DisTLBenchmark {
+
+    @Param({Models.ENGINE, Models.RANDOM_WALK})
+    public String model;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    @Param({"10", "50"})
+    public int horizon;
+
+    @Param({"10"})
+    public int variables;
+
+    @Param({"true", "false"})
+    public boolean parallel;
+
+    private EvolutionSequence sequence;
+    private DisTLFormula always;
+    private DisTLFormula until;
+
+    @Setup
+    public void setup() {
+        SystemState system = Models.system(model, variables);
+        sequence = new EvolutionSequence(new DefaultRandomGenerator(0), rg -> system, size);
+        TargetDisTLFormula target = new TargetDisTLFormula((rg, ds) -> ds, Models.penalty(model), 0.1);
+        always = new AlwaysDisTLFormula(target, 0, horizon);
+        until = new UntilDisTLFormula(new TrueDisTLFormula(), 0, horizon, target);
+        sequence.generateUpTo(2*horizon);
+    }
+
+    @Benchmark
+    public double always() {
+        DoubleSemanticsVisitor visitor = new DoubleSemanticsVisitor(parallel);
+        visitor.setRandomGeneratorSeed(0);
+        return visitor.eval(always).eval(size, 0, sequence);
+    }
+
+    @Benchmark
+    public double until() {
+        DoubleSemanticsVisitor visitor = new DoubleSemanticsVisitor(parallel);
+        visitor.setRandomGeneratorSeed(0);
+        return visitor.eval(until).eval(size, 0, sequence);
+    }
+
+}
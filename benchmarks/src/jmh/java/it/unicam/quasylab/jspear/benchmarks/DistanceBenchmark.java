@@ -0,0 +1,105 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.benchmarks;
+
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.SampleSet;
+import it.unicam.quasylab.jspear.SystemState;
+import it.unicam.quasylab.jspear.distance.AtomicDistanceExpressionLeq;
+import it.unicam.quasylab.jspear.distance.DistanceExpression;
+import it.unicam.quasylab.jspear.distance.MaxIntervalDistanceExpression;
+import it.unicam.quasylab.jspear.distance.UntilDistanceExpression;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the evaluation of distances between sample sets and of distance expressions between
+ * evolution sequences. Sequences are generated during the setup, so that only the evaluation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DistanceBenchmark {
+
+    @Param({Models.ENGINE, Models.RANDOM_WALK})
+    public String model;
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    @Param({"50"})
+    public int horizon;
+
+    @Param({"10"})
+    public int variables;
+
+    private EvolutionSequence nominal;
+    private EvolutionSequence other;
+    private SampleSet<SystemState> first;
+    private SampleSet<SystemState> second;
+    private DistanceExpression interval;
+    private DistanceExpression until;
+
+    @Setup
+    public void setup() {
+        SystemState system = Models.system(model, variables);
+        nominal = new EvolutionSequence(new DefaultRandomGenerator(0), rg -> system, size);
+        other = new EvolutionSequence(new DefaultRandomGenerator(1), rg -> system, size);
+        nominal.generateUpTo(2*horizon);
+        other.generateUpTo(2*horizon);
+        first = nominal.get(horizon);
+        second = other.get(horizon);
+        DataStateExpression penalty = Models.penalty(model);
+        DistanceExpression atomic = new AtomicDistanceExpressionLeq(penalty);
+        interval = new MaxIntervalDistanceExpression(atomic, 0, horizon/2);
+        until = new UntilDistanceExpression(atomic, 0, horizon/2, atomic);
+    }
+
+    /**
+     * Distance with a fresh penalty function, hence evaluations are computed and sorted at each invocation.
+     */
+    @Benchmark
+    public double distance() {
+        DataStateExpression penalty = Models.penalty(model);
+        return first.distance(ds -> penalty.applyAsDouble(ds), second);
+    }
+
+    @Benchmark
+    public double[] bootstrapDistance() {
+        return first.bootstrapDistance(new DefaultRandomGenerator(2), Models.penalty(model), second, 100, 1.96);
+    }
+
+    @Benchmark
+    public double[] maxIntervalOverRange() {
+        return interval.compute(0, horizon, nominal, other);
+    }
+
+    @Benchmark
+    public double[] untilOverRange() {
+        return until.compute(0, horizon, nominal, other);
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.benchmarks;
+
+import it.unicam.quasylab.jspear.ControlledSystem;
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.SystemState;
+import it.unicam.quasylab.jspear.TimedSystem;
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.controller.NilController;
+import it.unicam.quasylab.jspear.controller.ParallelController;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.stream.IntStream;
+
+/**
+ * Models used in the benchmarks. Besides the example models <code>engine</code>, <code>vehicle</code>
+ * and <code>repressilator</code>, a <code>randomwalk</code> model is provided whose number of variables
+ * can be chosen, so that the cost of the different operations can be measured against the size of data states.
+ */
+public final class Models {
+
+    public static final String ENGINE = "engine";
+    public static final String VEHICLE = "vehicle";
+    public static final String REPRESSILATOR = "repressilator";
+    public static final String RANDOM_WALK = "randomwalk";
+
+    private Models() {}
+
+    /**
+     * Returns the initial state of the given model.
+     *
+     * @param model name of the model.
+     * @param variables number of variables, only used by the <code>randomwalk</code> model.
+     * @return the initial state of the given model.
+     */
+    public static SystemState system(String model, int variables) {
+        return switch (model) {
+            case ENGINE -> new ControlledSystem(
+                    it.unicam.quasylab.jspear.examples.engine.Main.getController(),
+                    (rg, ds) -> ds.apply(it.unicam.quasylab.jspear.examples.engine.Main.getEnvironmentUpdates(rg, ds)),
+                    it.unicam.quasylab.jspear.examples.engine.Main.getInitialState(95.0));
+            case VEHICLE -> new ControlledSystem(
+                    new ParallelController(
+                            it.unicam.quasylab.jspear.examples.vehicle.Main.getController_V1(),
+                            it.unicam.quasylab.jspear.examples.vehicle.Main.getController_V2()),
+                    (rg, ds) -> ds.apply(it.unicam.quasylab.jspear.examples.vehicle.Main.getEnvironmentUpdates(rg, ds)),
+                    it.unicam.quasylab.jspear.examples.vehicle.Main.getInitialState());
+            case REPRESSILATOR -> {
+                RandomGenerator rand = new DefaultRandomGenerator(0);
+                yield new TimedSystem(
+                        new NilController(),
+                        (rg, ds) -> ds.apply(it.unicam.quasylab.jspear.examples.repressilator.Main.selectAndApplyReaction(rg, ds)),
+                        it.unicam.quasylab.jspear.examples.repressilator.Main.getInitialState(1.0, 0.0, 0.0, 0.0),
+                        ds -> it.unicam.quasylab.jspear.examples.repressilator.Main.selectReactionTime(rand, ds));
+            }
+            case RANDOM_WALK -> randomWalk(variables);
+            default -> throw new IllegalArgumentException("Unknown model "+model);
+        };
+    }
+
+    /**
+     * Returns a penalty function, with values in [0,1], on the data states of the given model.
+     *
+     * @param model name of the model.
+     * @return a penalty function on the data states of the given model.
+     */
+    public static DataStateExpression penalty(String model) {
+        return switch (model) {
+            case ENGINE -> ds -> ds.get(it.unicam.quasylab.jspear.examples.engine.Main.temp)/150.0;
+            case VEHICLE -> it.unicam.quasylab.jspear.examples.vehicle.Main::rho_crash_probability;
+            case REPRESSILATOR -> ds -> Math.min(1.0, ds.get(it.unicam.quasylab.jspear.examples.repressilator.Main.Z1)/100.0);
+            case RANDOM_WALK -> ds -> Math.min(1.0, Math.abs(ds.get(0))/10.0);
+            default -> throw new IllegalArgumentException("Unknown model "+model);
+        };
+    }
+
+    /**
+     * Returns a system where at each step each of the given number of variables is incremented by a
+     * value uniformly distributed in [-0.5,0.5].
+     *
+     * @param variables number of variables.
+     * @return a random walk on the given number of variables.
+     */
+    public static SystemState randomWalk(int variables) {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doTick(registry.get("Ctrl")));
+        DataStateFunction environment = (rg, ds) -> ds.apply(IntStream.range(0, variables)
+                .mapToObj(i -> new DataStateUpdate(i, ds.get(i) + rg.nextDouble() - 0.5))
+                .toList());
+        return new ControlledSystem(registry.reference("Ctrl"), environment, new DataState(variables, i -> 0.0));
+    }
+
+}
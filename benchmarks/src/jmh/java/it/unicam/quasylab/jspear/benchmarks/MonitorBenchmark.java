@@ -0,0 +1,99 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.benchmarks;
+
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.SampleSet;
+import it.unicam.quasylab.jspear.SystemState;
+import it.unicam.quasylab.jspear.distl.*;
+import nl.tue.Monitoring.Default.DefaultMonitorBuilder;
+import nl.tue.Monitoring.Default.DefaultUDisTLMonitor;
+import nl.tue.Monitoring.PerceivedSystemState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmarks the runtime monitors of <code>nl.tue.Monitoring</code>. Each invocation builds a monitor and
+ * feeds it with the sample sets observed up to the time horizon of the monitored formula.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MonitorBenchmark {
+
+    @Param({Models.ENGINE, Models.RANDOM_WALK})
+    public String model;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    @Param({"10", "50"})
+    public int horizon;
+
+    @Param({"10"})
+    public int variables;
+
+    @Param({"true", "false"})
+    public boolean parallel;
+
+    private List<SampleSet<PerceivedSystemState>> observations;
+    private DisTLFormula always;
+    private DisTLFormula until;
+
+    @Setup
+    public void setup() {
+        SystemState system = Models.system(model, variables);
+        EvolutionSequence sequence = new EvolutionSequence(new DefaultRandomGenerator(0), rg -> system, size);
+        TargetDisTLFormula target = new TargetDisTLFormula((rg, ds) -> ds, Models.penalty(model), 0.1);
+        always = new AlwaysDisTLFormula(target, 0, horizon);
+        until = new UntilDisTLFormula(new TrueDisTLFormula(), 0, horizon, target);
+        int steps = Math.max(always.getTimeHorizon().orElseThrow(), until.getTimeHorizon().orElseThrow())+1;
+        observations = IntStream.range(0, steps).mapToObj(sequence::getAsPerceivedSystemStates).toList();
+    }
+
+    private OptionalDouble monitor(DisTLFormula formula) {
+        DefaultUDisTLMonitor monitor = new DefaultMonitorBuilder(size, parallel).build(formula);
+        monitor.setRandomGeneratorSeed(0);
+        OptionalDouble result = OptionalDouble.empty();
+        for (int i = 0; i <= formula.getTimeHorizon().orElseThrow(); i++) {
+            result = monitor.evalNext(observations.get(i));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public OptionalDouble always() {
+        return monitor(always);
+    }
+
+    @Benchmark
+    public OptionalDouble until() {
+        return monitor(until);
+    }
+
+}
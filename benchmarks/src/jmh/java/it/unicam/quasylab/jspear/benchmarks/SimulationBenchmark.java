@@ -0,0 +1,82 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.benchmarks;
+
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.SampleSet;
+import it.unicam.quasylab.jspear.SystemState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the generation of evolution sequences.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SimulationBenchmark {
+
+    @Param({Models.ENGINE, Models.VEHICLE, Models.REPRESSILATOR, Models.RANDOM_WALK})
+    public String model;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    @Param({"50"})
+    public int horizon;
+
+    @Param({"10"})
+    public int variables;
+
+    @Param({"true", "false"})
+    public boolean parallel;
+
+    private SampleSet<SystemState> initial;
+
+    @Setup
+    public void setup() {
+        SystemState system = Models.system(model, variables);
+        initial = SampleSet.generate(new DefaultRandomGenerator(0), rg -> system, size);
+    }
+
+    @Benchmark
+    public SampleSet<SystemState> sampleSteps() {
+        DefaultRandomGenerator rg = new DefaultRandomGenerator(1);
+        SampleSet<SystemState> current = initial;
+        for (int i = 0; i < horizon; i++) {
+            current = current.apply(rg, (r, s) -> s.sampleNext(r), parallel);
+        }
+        return current;
+    }
+
+    @Benchmark
+    public SampleSet<SystemState> generateUpTo() {
+        SystemState system = Models.system(model, variables);
+        EvolutionSequence sequence = new EvolutionSequence(new DefaultRandomGenerator(1), rg -> system, size);
+        sequence.generateUpTo(horizon);
+        return sequence.get(horizon);
+    }
+
+}
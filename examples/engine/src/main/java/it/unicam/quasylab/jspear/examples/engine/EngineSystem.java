@@ -0,0 +1,101 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.examples.engine;
+
+import it.unicam.quasylab.jspear.BatchSystem;
+import it.unicam.quasylab.jspear.SystemState;
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.EffectStep;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
+import it.unicam.quasylab.jspear.ds.DataStateBuffer;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * The state of the engine, consisting of its controller and of its data state. A step of the engine applies
+ * the effect of the controller and then the updates of the environment given by
+ * {@link Main#getEnvironmentUpdates(RandomGenerator, DataState)}, as a
+ * {@link it.unicam.quasylab.jspear.ControlledSystem} with the same environment does. Since the class
+ * implements {@link BatchSystem}, sample sets of engines are advanced a block of states at a time.
+ */
+public final class EngineSystem implements BatchSystem {
+
+    private final Controller controller;
+    private final DataState state;
+
+    /**
+     * Creates the state of the engine with the given controller and data state.
+     *
+     * @param controller the controller of the engine.
+     * @param state the data state of the engine.
+     */
+    public EngineSystem(Controller controller, DataState state) {
+        this.controller = controller;
+        this.state = state;
+    }
+
+    @Override
+    public DataState getDataState() {
+        return state;
+    }
+
+    @Override
+    public SystemState sampleNext(RandomGenerator rg) {
+        DataStateBuffer buffer = new DataStateBuffer();
+        EngineSystem next = sampleNext(rg, buffer);
+        buffer.detach(next.state);
+        return next;
+    }
+
+    @Override
+    public EngineSystem sampleNext(RandomGenerator rg, DataStateBuffer buffer) {
+        EffectStep<Controller> step = controller.next(rg, state);
+        DataState newState = buffer.apply(state, step.effect());
+        buffer.update(newState, Main.getEnvironmentUpdates(rg, newState));
+        newState.setStep(state.getStep() + 1);
+        return new EngineSystem(step.next(), newState);
+    }
+
+    @Override
+    public void sampleNext(RandomGenerator rg, SystemState[] states, int from, int to) {
+        for (int i = from; i < to; i++) {
+            states[i] = states[i].sampleNext(rg);
+        }
+    }
+
+    @Override
+    public SystemState sampleNextCond(RandomGenerator rg, DataStateBooleanExpression condition) {
+        DataStateBuffer buffer = new DataStateBuffer();
+        SystemState result = this;
+        while (!condition.eval(result.getDataState())) {
+            result = result.sampleNext(rg, buffer);
+        }
+        buffer.detach(result.getDataState());
+        return result;
+    }
+
+    @Override
+    public SystemState setDataState(DataState dataState) {
+        return new EngineSystem(controller, dataState);
+    }
+}
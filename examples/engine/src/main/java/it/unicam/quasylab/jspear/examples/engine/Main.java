@@ -99,7 +99,7 @@ public class Main {
 
             Controller controller = getController();
             DataState state = getInitialState(INITIAL_TEMP_VALUE);
-            ControlledSystem system = new ControlledSystem(controller, (rg, ds) -> ds.apply(getEnvironmentUpdates(rg, ds)), state);
+            EngineSystem system = new EngineSystem(controller, state);
             EvolutionSequence sequence = new EvolutionSequence(rand, rg -> system, 100);
 
             DistanceExpression temp_atomic = new AtomicDistanceExpressionLeq(ds -> Math.abs((ds.get(temp)-ds.get(ch_temp))/Math.abs(MAX_TEMP-MIN_TEMP)));
@@ -404,18 +404,18 @@ public class Main {
                 Controller.ifThenElse(
                         DataState.equalsTo(ch_speed, SLOW),
                         Controller.doAction(
-                                (rg, ds) -> List.of (new DataStateUpdate(ch_speed, SLOW), new DataStateUpdate(cool, OFF)),registry.reference("Ctrl")),
+                                (rg, ds) -> DataStateUpdateBuffer.of(new int[] { ch_speed, cool }, new double[] { SLOW, OFF }),registry.reference("Ctrl")),
                         Controller.doAction(
-                                (rg, ds) -> List.of( new DataStateUpdate(ch_speed, ds.get(ch_in)), new DataStateUpdate(cool, OFF)),registry.reference("Ctrl"))
+                                (rg, ds) -> DataStateUpdateBuffer.of(new int[] { ch_speed, cool }, new double[] { ds.get(ch_in), OFF }),registry.reference("Ctrl"))
                 )
         );
         registry.set("IDS",
                 Controller.ifThenElse(
                         DataState.greaterThan(temp, 101.0).and(DataState.equalsTo(cool, OFF)),
                         Controller.doAction(
-                                (rd, ds) -> List.of(new DataStateUpdate(ch_wrn, HOT), new DataStateUpdate(ch_speed, LOW), new DataStateUpdate(ch_out, FULL)),registry.reference("IDS")),
+                                (rd, ds) -> DataStateUpdateBuffer.of(new int[] { ch_wrn, ch_speed, ch_out }, new double[] { HOT, LOW, FULL }),registry.reference("IDS")),
                         Controller.doAction(
-                                (rg, ds) -> List.of(new DataStateUpdate(ch_wrn, OK), new DataStateUpdate(ch_speed, HALF), new DataStateUpdate(ch_out, HALF)),registry.reference("IDS"))
+                                (rg, ds) -> DataStateUpdateBuffer.of(new int[] { ch_wrn, ch_speed, ch_out }, new double[] { OK, HALF, HALF }),registry.reference("IDS"))
                 )
         );
         return registry;
@@ -437,25 +437,25 @@ public class Main {
         double vStress = state.get(stress);
         double vCool = state.get(cool);
         double vSpeed = state.get(ch_speed);
-        List<DataStateUpdate> updates = new LinkedList<>();
-        updates.add(new DataStateUpdate(p1, vTemp));
-        updates.add(new DataStateUpdate(p2, vP1));
-        updates.add(new DataStateUpdate(p3, vP2));
-        updates.add(new DataStateUpdate(p4, vP3));
-        updates.add(new DataStateUpdate(p5, vP4));
-        updates.add(new DataStateUpdate(p6, vP5));
+        DataStateUpdateBuffer.Builder updates = new DataStateUpdateBuffer.Builder(13);
+        updates.add(p1, vTemp);
+        updates.add(p2, vP1);
+        updates.add(p3, vP2);
+        updates.add(p4, vP3);
+        updates.add(p5, vP4);
+        updates.add(p6, vP5);
         if (isStressing(vP1, vP2, vP3, vP4, vP5, vP6)) {
-            updates.add(new DataStateUpdate(stress,Math.max(0.0,Math.min(1,vStress+STRESS_INCR))));
+            updates.add(stress,Math.max(0.0,Math.min(1,vStress+STRESS_INCR)));
         }
         double newTemp = nextTempValue(vTemp, getTemperatureVariation(rg, vCool, vSpeed));
-        updates.add(new DataStateUpdate(temp, newTemp));
-        updates.add(new DataStateUpdate(ch_temp, newTemp));
+        updates.add(temp, newTemp);
+        updates.add(ch_temp, newTemp);
         double new_fn = (state.get(counter)*state.get(fn) + Math.max(0.0,state.get(stress) - state.get(ch_wrn)))/(state.get(counter)+1);
         double new_fp = (state.get(counter)*state.get(fp) + Math.max(0.0,state.get(ch_wrn) - state.get(stress)))/(state.get(counter)+1);
-        updates.add(new DataStateUpdate(fn, new_fn));
-        updates.add(new DataStateUpdate(fp, new_fp));
-        updates.add(new DataStateUpdate(counter, state.get(counter)+1));
-        return updates;
+        updates.add(fn, new_fn);
+        updates.add(fp, new_fp);
+        updates.add(counter, state.get(counter)+1);
+        return updates.build();
     }
 
     private static Perturbation perturbation_temp(double offset) {
@@ -24,11 +24,14 @@ package it.unicam.quasylab.jspear.examples.engine;
 
 import it.unicam.quasylab.jspear.ControlledSystem;
 import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.SampleSet;
 import it.unicam.quasylab.jspear.SystemState;
 import it.unicam.quasylab.jspear.controller.Controller;
 import it.unicam.quasylab.jspear.ds.DataState;
 import org.junit.jupiter.api.Test;
 
+import java.util.Collections;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class EngineTest {
@@ -68,4 +71,31 @@ class EngineTest {
         cs = cs.sampleNext(new DefaultRandomGenerator());
         assertEquals(Main.ON, cs.getDataState().get(Main.cool));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStepEngineSystem() {
+        DataState state = Main.getInitialState(99.78);
+        Controller ctrl = Main.getController();
+        SystemState cs = new ControlledSystem(ctrl, (rg, ds) -> ds.apply(Main.getEnvironmentUpdates(rg, ds)), state);
+        SystemState es = new EngineSystem(ctrl, state);
+        for (int i = 0; i < 10; i++) {
+            cs = cs.sampleNext(new DefaultRandomGenerator(i));
+            es = es.sampleNext(new DefaultRandomGenerator(i));
+            assertEquals(cs.getDataState().toString(), es.getDataState().toString());
+            assertEquals(cs.getDataState().getStep(), es.getDataState().getStep());
+        }
+    }
+
+    @Test
+    public void testBatchStepEngineSystem() {
+        SystemState system = new EngineSystem(Main.getController(), Main.getInitialState(99.78));
+        SampleSet<SystemState> sample = new SampleSet<>(Collections.nCopies(2 * SampleSet.BATCH_SIZE + 1, system));
+        SampleSet<SystemState> next = sample.sampleNext(new DefaultRandomGenerator(0));
+        assertEquals(sample.size(), next.size());
+        next.stream().forEach(s -> {
+            assertTrue(s instanceof EngineSystem);
+            assertEquals(1, s.getDataState().getStep());
+            assertEquals(Main.OFF, s.getDataState().get(Main.cool));
+        });
+    }
+}
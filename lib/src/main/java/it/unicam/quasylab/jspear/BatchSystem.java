@@ -0,0 +1,54 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * This interface is implemented by the states of models that are able to advance many of their states at once.
+ * When all the elements of a sample set are instances of the same class implementing this interface, the
+ * sample set is advanced by invoking {@link #sampleNext(RandomGenerator, SystemState[], int, int)} on
+ * contiguous blocks of states instead of invoking {@link SystemState#sampleNext(RandomGenerator)} on each of them.
+ * This allows a model to evolve its states in a tight loop over primitive arrays.
+ * <p>
+ * The batch path is not seed-compatible with the per-state one: each block receives a single random generator,
+ * so the sampled states have the same distribution but, for the same seed, they differ from the ones obtained
+ * by advancing each state with its own generator, and they depend on {@link SampleSet#BATCH_SIZE}.
+ */
+public interface BatchSystem extends SystemState {
+
+    /**
+     * Replaces each state stored in <code>states</code> in a position between <code>from</code> (included) and
+     * <code>to</code> (excluded) with a state sampled among the ones reachable from it in one step. All the
+     * states in the range are instances of the same class of this state. The result must have the same
+     * distribution as the one obtained by invoking {@link SystemState#sampleNext(RandomGenerator)} on each of
+     * them.
+     *
+     * @param rg random generator used to sample random expressions.
+     * @param states array of the states to advance.
+     * @param from index of the first state to advance.
+     * @param to index following the one of the last state to advance.
+     */
+    void sampleNext(RandomGenerator rg, SystemState[] states, int from, int to);
+
+}
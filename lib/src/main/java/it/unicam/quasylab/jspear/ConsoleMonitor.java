@@ -29,6 +29,7 @@ public class ConsoleMonitor implements SimulationMonitor {
 
     private final String label;
     private long last;
+    private SimulationProgress progress;
 
     /**
      * Assigns a name to the simulation.
@@ -43,13 +44,32 @@ public class ConsoleMonitor implements SimulationMonitor {
     public void startSamplingsOfStep(int step) {
         System.out.println(label+": Sampling of step "+step+" started.");
         last = System.currentTimeMillis();
+        progress = null;
     }
 
     @Override
     public void endSamplingsOfStep(int step) {
         long elapsed = System.currentTimeMillis() - last;
         System.out.println(label+": Sampling of step "+step+" completed.");
-        System.out.println(label+": Elapsed time "+(elapsed/1000.0)+"s");
+        if (progress == null) {
+            System.out.println(label+": Elapsed time "+(elapsed/1000.0)+"s");
+        } else {
+            System.out.printf("%s: Elapsed time %ss, %.0f samples/s, %d MB allocated, %d/%d steps, ETA %ds%n", label,
+                    elapsed/1000.0,
+                    progress.samplesPerSecond(),
+                    Math.max(0, progress.allocatedBytes()) / (1024 * 1024),
+                    progress.step(),
+                    progress.targetStep(),
+                    progress.estimatedTimeToCompletion().toSeconds());
+        }
+    }
+
+    /**
+     * The progress is printed on the same line of the elapsed time of the step it refers to.
+     */
+    @Override
+    public void progressOfSampling(SimulationProgress progress) {
+        this.progress = progress;
     }
 
     @Override
@@ -26,6 +26,7 @@ import it.unicam.quasylab.jspear.controller.Controller;
 import it.unicam.quasylab.jspear.controller.EffectStep;
 import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
+import it.unicam.quasylab.jspear.ds.DataStateBuffer;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -69,14 +70,25 @@ public class ControlledSystem implements SystemState {
         return new ControlledSystem(step.next(), environment, newState);
     }
 
+    @Override
+    public SystemState sampleNext(RandomGenerator rg, DataStateBuffer buffer) {
+        EffectStep<Controller> step = controller.next(rg, state);
+        int c_step = state.getStep();
+        DataState newState = environment.apply(rg, buffer.apply(state, step.effect()));
+        newState.setStep(c_step+1);
+        return new ControlledSystem(step.next(), environment, newState);
+    }
+
     @Override
     public SystemState sampleNextCond(RandomGenerator rg, DataStateBooleanExpression condition) {
+        DataStateBuffer buffer = new DataStateBuffer();
         SystemState result = this;
         DataState ds = this.state;
         while(!condition.eval(ds)) {
-            result = result.sampleNext(rg);
+            result = result.sampleNext(rg, buffer);
             ds = result.getDataState();
             }
+        buffer.detach(ds);
         return result;
     }
 
@@ -35,7 +35,49 @@ import java.util.SplittableRandom;
  */
 public class DefaultRandomGenerator extends AbstractRandomGenerator {
 
-    private SplittableRandom random = new SplittableRandom();
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private SplittableRandom random;
+
+    /**
+     * Creates a random generator initialised with a random seed.
+     */
+    public DefaultRandomGenerator() {
+        this.random = new SplittableRandom();
+    }
+
+    /**
+     * Creates a random generator initialised with the given seed.
+     *
+     * @param seed initial seed.
+     */
+    public DefaultRandomGenerator(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Returns the random generator associated with the stream of index <code>index</code> derived from <code>seed</code>.
+     * Generators obtained from the same seed and the same index always produce the same sequence of values,
+     * while generators obtained for different indexes are statistically independent. This allows each sample of a
+     * sample set to be evolved with its own generator, so that results do not depend on the order in which
+     * samples are processed by parallel workers.
+     *
+     * @param seed seed shared by all the streams.
+     * @param index index of the stream.
+     * @return the random generator associated with the stream of index <code>index</code> derived from <code>seed</code>.
+     */
+    public static DefaultRandomGenerator streamOf(long seed, int index) {
+        return new DefaultRandomGenerator(mix64(seed + GOLDEN_GAMMA * (index + 1L)));
+    }
+
+    /**
+     * Bit mixing function used to derive independent seeds for the streams.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
 
     @Override
     public void setSeed(long seed) {
@@ -46,4 +88,19 @@ public class DefaultRandomGenerator extends AbstractRandomGenerator {
     public double nextDouble() {
         return random.nextDouble();
     }
+
+    @Override
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    @Override
+    public int nextInt() {
+        return random.nextInt();
+    }
+
+    @Override
+    public int nextInt(int n) {
+        return random.nextInt(n);
+    }
 }
\ No newline at end of file
@@ -23,16 +23,34 @@
 package it.unicam.quasylab.jspear;
 
 import it.unicam.quasylab.jspear.distance.DistanceExpression;
+import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateMatrix;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
+import it.unicam.quasylab.jspear.jfr.StepGeneratedEvent;
 import it.unicam.quasylab.jspear.perturbation.Perturbation;
 import nl.tue.Monitoring.PerceivedSystemState;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /**
  * This class represent a collection of sequences of data sampled from a model described in terms
@@ -40,13 +58,39 @@ import java.util.function.Function;
  */
 public class EvolutionSequence {
 
+    /**
+     * Executor used to generate steps in background. Generation threads are daemon threads, so that pending
+     * speculative generations do not prevent the virtual machine from terminating.
+     */
+    private static final Executor GENERATION_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "jspear-generation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     protected       SampleSet<SystemState>              lastGenerated;
-    private final   ArrayList<SampleSet<SystemState>>   sequence;
-    private final   RandomGenerator                     rg;
+    private final   StepStore<SampleSet<SystemState>>   sequence;
+    private final   EvolutionSequence                   prefix;
+    private final   int                                 offset;
+    private final   long                                seed;
+    private final   AtomicInteger                       branches = new AtomicInteger();
+    private volatile boolean                            commonRandomNumbers;
     private final   SimulationMonitor                   monitor;
+    private         int                                 window;
+    private volatile int                                firstAvailableStep;
+    private final   Map<PerturbedBranch, EvolutionSequence> perturbations;
+    private volatile int                                perturbationCacheSize;
+    private volatile int                                lookahead;
+    private final   AtomicInteger                       prefetchTarget = new AtomicInteger();
+    private final   AtomicBoolean                       prefetching = new AtomicBoolean();
+    private final   AtomicInteger                       prefetchEpoch = new AtomicInteger();
+    private final   AtomicReference<PrefetchFailure>    prefetchFailure = new AtomicReference<>();
 
     /**
-     * Creates an evolution sequence originating from the given generator.
+     * Creates an evolution sequence originating from the given generator. A single seed is sampled from the given
+     * random generator, and each step of the sequence is sampled with the random generator of the stream
+     * derived from this seed and from the index of the step (see {@link DefaultRandomGenerator#streamOf(long, int)}).
+     * Hence, the sampled steps do not depend on the order, or on the thread, in which they are generated.
      *
      * @param monitor monitor used to control generation of evolution sequence;
      * @param rg random generator;
@@ -54,10 +98,8 @@ public class EvolutionSequence {
      * @param size number of samplings at each time step.
      */
     public EvolutionSequence(SimulationMonitor monitor, RandomGenerator rg, Function<RandomGenerator, SystemState> generator, int size) {
-        this.lastGenerated = SampleSet.generate(rg, generator, size);
-        this.sequence = new ArrayList<>();
-        this.rg = rg;
-        this.monitor = monitor;
+        this(null, 0, monitor, rg.nextLong());
+        this.lastGenerated = SampleSet.generate(getRandomGenerator(0), generator, size);
         this.sequence.add(lastGenerated);
     }
 
@@ -76,23 +118,47 @@ public class EvolutionSequence {
      * Creates an evolution sequence whose first elements are contained in the given sequence.
      */
     protected EvolutionSequence(SimulationMonitor monitor, RandomGenerator rg, List<SampleSet<SystemState>> sequence) {
-        this.sequence = new ArrayList<>(sequence);
+        this(null, 0, monitor, rg.nextLong());
+        sequence.forEach(this.sequence::add);
         if (!sequence.isEmpty()) {
-            this.lastGenerated = this.sequence.get(this.sequence.size()-1);
+            this.lastGenerated = this.sequence.get(this.sequence.length()-1);
+        }
+        while ((firstAvailableStep<this.sequence.length())&&(this.sequence.get(firstAvailableStep)==null)) {
+            firstAvailableStep++;
         }
-        this.rg = rg;
-        this.monitor = monitor;
     }
 
     /**
-     * Creates an evolution sequence that shares the first <code>steps</code> with the given one.
+     * Creates an evolution sequence that shares the steps from <code>0</code> to <code>steps</code> with the given one.
+     * Shared steps are not copied: they are read from the original sequence, so that the memory used by
+     * the new sequence only depends on the steps generated after <code>steps</code>. The following steps are
+     * sampled with streams derived from a seed that is different for each sequence created from the same
+     * original one, unless common random numbers are used (see {@link #setCommonRandomNumbers(boolean)}).
      *
      * @param originalSequence an evolution sequence.
-     * @param steps number of steps to copy.
-     * @throws IllegalArgumentException if <code>steps<0</code>.
+     * @param steps index of the last shared step.
      */
     protected EvolutionSequence(EvolutionSequence originalSequence, int steps) {
-        this(originalSequence.monitor, originalSequence.rg, originalSequence.select(steps));
+        this(originalSequence, Math.max(0, steps+1), originalSequence.monitor, originalSequence.branchSeed(steps));
+        if (steps >= 0) {
+            this.lastGenerated = originalSequence.get(steps);
+        }
+        this.window = originalSequence.window;
+    }
+
+    private EvolutionSequence(EvolutionSequence prefix, int offset, SimulationMonitor monitor, long seed) {
+        this.sequence = new StepStore<>();
+        this.prefix = prefix;
+        this.offset = offset;
+        this.firstAvailableStep = offset;
+        this.seed = seed;
+        this.monitor = monitor;
+        this.perturbations = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PerturbedBranch, EvolutionSequence> eldest) {
+                return size() > perturbationCacheSize;
+            }
+        };
     }
 
     /**
@@ -101,13 +167,14 @@ public class EvolutionSequence {
      * @param from first selected step
      * @param to last selected step
      * @return the list of sample sets of this sequence in the given range (extremes included)
+     * @throws IllegalStateException if some of the selected steps has been released.
      */
     public List<SampleSet<SystemState>> select(int from, int to) {
         if (to<0) {
             return List.of();
         }
         generateUpTo(to);
-        return this.sequence.stream().skip(Math.max(0,from)).limit(Math.max(0,1+to-from)).toList();
+        return IntStream.rangeClosed(Math.max(0, from), to).mapToObj(this::get).toList();
     }
 
     /**
@@ -126,21 +193,275 @@ public class EvolutionSequence {
      * @return the length of the evolution sequence.
      */
     public int length() {
-        return sequence.size();
+        return offset+sequence.length();
     }
 
     /**
-     * Returns the sample set at the given step.
+     * Returns the sample set at the given step. Steps that have already been generated are read without locking,
+     * so that the same sequence can be evaluated concurrently by different threads while new steps are generated.
+     * Since distances and formulas are evaluated by reading each step with this method, the monitor of this
+     * sequence is queried at each invocation, and the evaluation is interrupted if the simulation has been
+     * cancelled.
      *
      * @param i step index.
      * @return the sample set at the given step.
      * @throws IndexOutOfBoundsException if <code>((i<0)||(i>=length()))</code>.
+     * @throws IllegalStateException if the step <code>i</code> has been released.
+     * @throws CancellationException if the simulation has been cancelled.
      */
     public SampleSet<SystemState> get(int i) {
+        checkCancelled();
+        checkPrefetchFailure();
+        return getStep(i);
+    }
+
+    /**
+     * Returns the sample set at the given step, without checking whether the simulation has been cancelled.
+     */
+    private SampleSet<SystemState> getStep(int i) {
+        if ((i>=0)&&(i<offset)) {
+            return prefix.get(i);
+        }
         if (getLastGeneratedStep()<i) {
             generateUpTo(i);
         }
-        return sequence.get(i);
+        checkAvailable(i);
+        SampleSet<SystemState> result = sequence.get(i-offset);
+        if (result == null) {
+            throw new IllegalStateException("Step "+i+" has been released: the first available step is "+firstAvailableStep);
+        }
+        if (lookahead>0) {
+            prefetch(i+lookahead);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a future that is completed with the sample set at the given step. When the step has not been
+     * generated yet, it is generated in background.
+     *
+     * @param i step index.
+     * @return a future that is completed with the sample set at the given step.
+     */
+    public CompletableFuture<SampleSet<SystemState>> getAsync(int i) {
+        return CompletableFuture.supplyAsync(() -> get(i), GENERATION_EXECUTOR);
+    }
+
+    /**
+     * Returns a future that is completed when this sequence has been generated up to the given step. Steps
+     * are generated in background one at a time, so that the steps already generated can be read while
+     * the next ones are computed.
+     *
+     * @param n index of the last generated step.
+     * @return a future that is completed when this sequence has been generated up to the given step.
+     */
+    public CompletableFuture<Void> generateUpToAsync(int n) {
+        return CompletableFuture.runAsync(() -> {
+            for (int i = getLastGeneratedStep()+1; i <= n; i++) {
+                generateUpTo(i);
+            }
+        }, GENERATION_EXECUTOR);
+    }
+
+    /**
+     * Sets the number of steps that are speculatively generated ahead of the last accessed one. When a positive
+     * lookahead <code>k</code> is set, each access to the step <code>i</code> triggers the generation in background
+     * of the steps up to <code>i+k</code>. In this way the next steps are generated while the step <code>i</code>
+     * is evaluated, for instance by a distance expression or by a monitor, and all the available cores are used
+     * to generate and to evaluate the sequence. Since each step is sampled with its own random generator, the
+     * generated sequence depends neither on the lookahead nor on the thread generating each step. A lookahead
+     * equal to <code>0</code> disables speculative generation.
+     *
+     * <p>When a window is set, the steps generated ahead are retained in addition to the ones in the window.
+     * If the generation in background fails, for instance because the simulation is cancelled, the error is
+     * raised by the next invocation of {@link #get(int)} or {@link #generateUpTo(int)}, and no step is generated
+     * in background until the error has been raised. Setting the lookahead cancels the pending generations in
+     * background and discards the errors that have not been raised yet.</p>
+     *
+     * @param lookahead number of steps generated ahead of the last accessed one.
+     * @throws IllegalArgumentException if <code>lookahead&lt;0</code>.
+     */
+    public void setLookahead(int lookahead) {
+        if (lookahead<0) {
+            throw new IllegalArgumentException();
+        }
+        this.lookahead = lookahead;
+        prefetchTarget.set(-1);
+        prefetchEpoch.incrementAndGet();
+        prefetchFailure.set(null);
+    }
+
+    /**
+     * Returns the number of steps that are speculatively generated ahead of the last accessed one.
+     *
+     * @return the number of steps that are speculatively generated ahead of the last accessed one.
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * Requests the generation in background of the steps up to the given one. At most one background
+     * generation is active for each sequence, and no generation is started while the error of a previous one
+     * has not been raised.
+     *
+     * @param n index of the last step to generate.
+     */
+    private void prefetch(int n) {
+        if (prefetchFailure.get() != null) {
+            return;
+        }
+        prefetchTarget.accumulateAndGet(n, Math::max);
+        if ((getLastGeneratedStep()<n)&&prefetching.compareAndSet(false, true)) {
+            GENERATION_EXECUTOR.execute(this::runPrefetch);
+        }
+    }
+
+    /**
+     * Generates the steps up to the requested one. Generation stops as soon as an error occurs, for instance
+     * when the simulation is cancelled: the error is then kept to be raised by the next foreground access.
+     * Generation also stops when the lookahead is set, and errors of the generations started before are
+     * discarded. The lock of this sequence is held until the error is recorded, so that a foreground
+     * generation started after a failed step always raises its error.
+     */
+    private void runPrefetch() {
+        do {
+            int epoch = prefetchEpoch.get();
+            synchronized (this) {
+                try {
+                    while ((epoch == prefetchEpoch.get())&&(getLastGeneratedStep()<prefetchTarget.get())) {
+                        doGenerateUpTo(getLastGeneratedStep()+1);
+                    }
+                } catch (RuntimeException e) {
+                    prefetchFailure.compareAndSet(null, new PrefetchFailure(epoch, e));
+                    prefetching.set(false);
+                    return;
+                }
+            }
+            prefetching.set(false);
+        } while ((getLastGeneratedStep()<prefetchTarget.get())&&prefetching.compareAndSet(false, true));
+    }
+
+    /**
+     * Saves the data states of the available steps of this sequence in the given file. Steps are stored in a
+     * compact columnar binary format, so that the sequence can be loaded with {@link #load(Path)} and reused
+     * without simulating again the model. If the file already exists, it is overwritten.
+     *
+     * @param file the file where the sequence is saved.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void save(Path file) throws IOException {
+        int first = getFirstAvailableStep();
+        int last = getLastGeneratedStep();
+        List<DataStateMatrix> steps = new ArrayList<>(last - first + 1);
+        int[] multiplicities = new int[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            SampleSet<SystemState> step = getStep(i);
+            steps.add(step.getDataStateMatrix());
+            multiplicities[i - first] = step.getMultiplicity();
+        }
+        SequenceFile.write(file, first, steps, multiplicities);
+    }
+
+    /**
+     * Loads the evolution sequence saved in the given file. The elements of the loaded sequence are perceived
+     * system states, hence no step can be generated after the last saved one.
+     *
+     * @param file the file where the sequence has been saved.
+     * @return the evolution sequence saved in the given file.
+     * @throws IOException if an I/O error occurs, or if the file does not contain an evolution sequence.
+     */
+    public static EvolutionSequence load(Path file) throws IOException {
+        return load(file, new DefaultRandomGenerator(), PerceivedSystemState::new);
+    }
+
+    /**
+     * Loads the evolution sequence saved in the given file. The elements of the loaded sequence are obtained
+     * by applying the given function to the saved data states, and steps following the last saved one are
+     * generated from them by using the given random generator. Saved steps are mapped in memory and their data
+     * states are materialised only when the elements of the sample sets are accessed.
+     *
+     * @param file the file where the sequence has been saved.
+     * @param rg random generator used to generate the steps after the saved ones.
+     * @param restore function used to obtain system states from the saved data states.
+     * @return the evolution sequence saved in the given file.
+     * @throws IOException if an I/O error occurs, or if the file does not contain an evolution sequence.
+     */
+    public static EvolutionSequence load(Path file, RandomGenerator rg, Function<DataState, ? extends SystemState> restore) throws IOException {
+        return new EvolutionSequence(null, rg, SequenceFile.read(file, restore));
+    }
+
+    /**
+     * Sets the number of steps that are retained by this sequence. When a positive window <code>w</code>
+     * is set, each time a new step is generated only the last <code>w</code> generated steps are kept in memory,
+     * while the older ones are released. Any attempt to access a released step fails with an
+     * {@link IllegalStateException}. A window equal to <code>0</code> means that all the steps are retained.
+     *
+     * <p>When the sequence is used to evaluate a distance expression, or a formula, step by step in increasing order,
+     * the window can be set to the time horizon of the expression plus one. In this case the memory used by the
+     * sequence is proportional to the horizon of the expression rather than to the length of the run.</p>
+     *
+     * @param window number of retained steps.
+     * @throws IllegalArgumentException if <code>window&lt;0</code>.
+     */
+    public synchronized void setWindow(int window) {
+        if (window<0) {
+            throw new IllegalArgumentException();
+        }
+        this.window = window;
+        release();
+    }
+
+    /**
+     * Returns the number of steps that are retained by this sequence, or <code>0</code> if all the steps are retained.
+     *
+     * @return the number of steps that are retained by this sequence.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Releases all the steps of this sequence before the given one. The last generated step is never released,
+     * since it is needed to generate the next ones. Steps shared with the sequence this one originates from
+     * are only released by the latter.
+     *
+     * @param step index of the first step that is retained.
+     */
+    public synchronized void releaseUpTo(int step) {
+        int last = Math.min(step, getLastGeneratedStep());
+        int first = firstAvailableStep;
+        if (first < last) {
+            firstAvailableStep = last;
+            sequence.release(first-offset, last-offset);
+        }
+    }
+
+    /**
+     * Returns the index of the first step of this sequence that has not been released.
+     *
+     * @return the index of the first step of this sequence that has not been released.
+     */
+    public int getFirstAvailableStep() {
+        if ((prefix != null)&&(firstAvailableStep == offset)) {
+            return Math.min(offset, prefix.getFirstAvailableStep());
+        }
+        return firstAvailableStep;
+    }
+
+    /**
+     * Releases the steps that are outside the window of this sequence.
+     */
+    private void release() {
+        if (window>0) {
+            releaseUpTo(length()-window-lookahead);
+        }
+    }
+
+    private void checkAvailable(int i) {
+        if ((i>=offset)&&(i<firstAvailableStep)) {
+            throw new IllegalStateException("Step "+i+" has been released: the first available step is "+firstAvailableStep);
+        }
     }
 
     /**
@@ -149,21 +470,73 @@ public class EvolutionSequence {
      * @return the index of last generated step.
      */
     private int getLastGeneratedStep() {
-        return sequence.size()-1;
+        return length()-1;
     }
 
     /**
-     * This method is used to generate the evolution sequence up to the given index.
+     * This method is used to generate the evolution sequence up to the given index. When a monitor is
+     * associated with this sequence, the monitor is queried before each step and the generation is interrupted
+     * if the simulation has been cancelled. Moreover, the progress of the generation is reported to the
+     * monitor after each step, before the monitor is notified that the sampling of the step is completed.
      *
      * @param n index of the last generated samplings.
+     * @throws CancellationException if the simulation has been cancelled.
      */
     public synchronized void generateUpTo(int n) {
+        checkPrefetchFailure();
+        doGenerateUpTo(n);
+    }
+
+    /**
+     * Raises the error that interrupted the last generation in background, if any. The error is raised once,
+     * and errors of the generations cancelled by {@link #setLookahead(int)} are discarded.
+     */
+    private void checkPrefetchFailure() {
+        PrefetchFailure failure = prefetchFailure.getAndSet(null);
+        if ((failure != null)&&(failure.epoch() == prefetchEpoch.get())) {
+            throw failure.error();
+        }
+    }
+
+    private synchronized void doGenerateUpTo(int n) {
+        long start = System.nanoTime();
+        long allocated = (monitor == null ? -1 : allocatedBytes());
+        int generatedSteps = 0;
+        long samples = 0;
         while (getLastGeneratedStep()<n) {
+            checkCancelled();
             int lastGeneratedStep = getLastGeneratedStep();
+            StepGeneratedEvent event = new StepGeneratedEvent();
+            event.begin();
             startSamplingsOfStep(lastGeneratedStep);
-            doAdd( generateNextStep() );
+            doAdd( generateNextStep(getRandomGenerator(lastGeneratedStep+1)) );
+            if (monitor != null) {
+                generatedSteps++;
+                samples += lastGenerated.size();
+                long allocatedNow = (allocated < 0 ? -1 : allocatedBytes());
+                monitor.progressOfSampling(new SimulationProgress(getLastGeneratedStep(), n, generatedSteps, samples,
+                        Duration.ofNanos(System.nanoTime() - start), (allocatedNow < 0 ? -1 : allocatedNow - allocated)));
+            }
             endSamplingsOfStep(lastGeneratedStep);
+            event.end();
+            if (event.shouldCommit()) {
+                event.step = lastGeneratedStep + 1;
+                event.samples = lastGenerated.size();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or <code>-1</code> if the running virtual machine
+     * does not support allocation measurement. Only the counter of the current thread is read, so that the cost
+     * does not depend on the number of live threads, and the returned value never decreases.
+     */
+    private static long allocatedBytes() {
+        if ((ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)&&bean.isThreadAllocatedMemoryEnabled()) {
+            return bean.getCurrentThreadAllocatedBytes();
         }
+        return -1;
     }
 
     /**
@@ -173,6 +546,7 @@ public class EvolutionSequence {
      */
     public synchronized void generateUpToCond(ArrayList<DataStateBooleanExpression> conditions) {
         while (!conditions.isEmpty()) {
+            checkCancelled();
             int lastGeneratedStep = getLastGeneratedStep();
             startSamplingsOfStep(lastGeneratedStep);
             doAdd(generateNextStepCond(conditions.get(0)));
@@ -189,21 +563,45 @@ public class EvolutionSequence {
     protected void doAdd(SampleSet<SystemState> sampling) {
         lastGenerated = sampling;
         sequence.add(lastGenerated);
+        release();
     }
 
     /**
      * Returns the sample of the distribution that it is reached in one step
      * from the last distribution in this sequence.
      *
+     * @param rg random generator used to sample the step.
      * @return the sample of the distribution that it is reached in one step
      * from the last distribution in this sequence.
      */
-    protected SampleSet<SystemState> generateNextStep() {
-        return lastGenerated.apply(s -> s.sampleNext(rg));
+    protected SampleSet<SystemState> generateNextStep(RandomGenerator rg) {
+        return lastGenerated.sampleNext(rg, monitor);
     }
 
     public SampleSet<SystemState> generateNextStepCond(DataStateBooleanExpression condition) {
-        return lastGenerated.apply(s -> s.sampleNextCond(rg,condition));
+        return generateNextStepCond(getRandomGenerator(getLastGeneratedStep()+1), condition);
+    }
+
+    /**
+     * Returns the sample obtained from the last distribution in this sequence by letting each element evolve
+     * until the given condition is satisfied.
+     *
+     * @param rg random generator used to sample the step.
+     * @param condition the condition to satisfy.
+     * @return the sample obtained from the last distribution in this sequence by letting each element evolve
+     * until <code>condition</code> is satisfied.
+     */
+    protected SampleSet<SystemState> generateNextStepCond(RandomGenerator rg, DataStateBooleanExpression condition) {
+        return lastGenerated.apply(rg, (r, s) -> s.sampleNextCond(r, condition));
+    }
+
+    /**
+     * Utility method used to interrupt the generation when the simulation has been cancelled.
+     */
+    private void checkCancelled() {
+        if ((monitor != null)&&monitor.hasBeenCancelled()) {
+            throw new CancellationException();
+        }
     }
 
     /**
@@ -239,18 +637,61 @@ public class EvolutionSequence {
     }
 
     /**
-     * Returns the random generator used to sample steps of this evolution sequence.
+     * Returns the random generator used to sample the given step of this evolution sequence. Each invocation
+     * returns a new generator producing the same values, so that steps are reproducible.
+     *
+     * @param step step index.
+     * @return the random generator used to sample the given step of this evolution sequence.
+     */
+    protected RandomGenerator getRandomGenerator(int step) {
+        return DefaultRandomGenerator.streamOf(seed, step);
+    }
+
+    /**
+     * Returns the seed of the next sequence branching from this one after the given step. Seeds are derived from
+     * the streams of negative index, which are never used to sample steps. When common random numbers are used,
+     * the seed only depends on this sequence and on the given step.
+     */
+    private long branchSeed(int steps) {
+        long stepSeed = DefaultRandomGenerator.streamOf(seed, -2-steps).nextLong();
+        if (commonRandomNumbers) {
+            return stepSeed;
+        }
+        return DefaultRandomGenerator.streamOf(stepSeed, -2-branches.getAndIncrement()).nextLong();
+    }
+
+    /**
+     * Sets whether the sequences branching from this one are sampled with common random numbers. When common
+     * random numbers are used, the steps of each sequence obtained by {@link #apply(Perturbation, int, int)}
+     * only depend on this sequence, on the perturbed step and on the perturbation: applying the same
+     * perturbation twice gives the same samples, and different perturbations of the same step are compared on
+     * the same random numbers, which reduces the variance of the estimated differences. Otherwise, which is the
+     * default, each branch is sampled independently of the others.
+     *
+     * @param commonRandomNumbers <code>true</code> if branches are sampled with common random numbers.
+     */
+    public void setCommonRandomNumbers(boolean commonRandomNumbers) {
+        this.commonRandomNumbers = commonRandomNumbers;
+    }
+
+    /**
+     * Returns <code>true</code> if the sequences branching from this one are sampled with common random numbers.
      *
-     * @return the random generator used to sample steps of this evolution sequence.
+     * @return <code>true</code> if the sequences branching from this one are sampled with common random numbers.
      */
-    protected RandomGenerator getRandomGenerator() {
-        return rg;
+    public boolean usesCommonRandomNumbers() {
+        return commonRandomNumbers;
     }
 
 
     /**
      * Returns the evolution sequence obtained from this evolution sequence by applying the given
      * perturbation at the given step and by considering the given scale of samplings.
+     * The perturbed sequence shares with this one the steps before <code>perturbedStep</code>.
+     * Each invocation returns a new perturbed sequence, whose samples are independent of those of the
+     * sequences returned by previous invocations, unless perturbed sequences are cached
+     * (see {@link #setPerturbationCacheSize(int)}) or common random numbers are used
+     * (see {@link #setCommonRandomNumbers(boolean)}).
      *
      * @param perturbation perturbation applied to this sequence.
      * @param perturbedStep perturbed step.
@@ -262,7 +703,47 @@ public class EvolutionSequence {
         if (perturbedStep<0) {
             throw new IllegalArgumentException();
         }
-        return new PerturbedEvolutionSequence(this.monitor, this.rg, this.select(perturbedStep-1), this.get(perturbedStep), perturbation, scale);
+        if (perturbationCacheSize == 0) {
+            return new PerturbedEvolutionSequence(this, perturbedStep, perturbation, scale);
+        }
+        PerturbedBranch branch = new PerturbedBranch(perturbation, perturbedStep, scale);
+        synchronized (perturbations) {
+            EvolutionSequence cached = perturbations.get(branch);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        EvolutionSequence perturbed = new PerturbedEvolutionSequence(this, perturbedStep, perturbation, scale);
+        synchronized (perturbations) {
+            EvolutionSequence cached = perturbations.putIfAbsent(branch, perturbed);
+            return (cached != null ? cached : perturbed);
+        }
+    }
+
+    /**
+     * Sets the maximum number of perturbed sequences obtained from this one that are cached. When a positive size
+     * is set, subsequent invocations of {@link #apply(Perturbation, int, int)} with the same perturbation instance,
+     * step and scale return the same sequence, instead of simulating again the perturbed system. Hence, the cache
+     * must only be enabled when the same perturbed samples can be reused, for instance when the same perturbation is
+     * evaluated by many sub-formulas of a single formula. Cached sequences, and the steps they generate, are
+     * retained until they are discarded: when the cache is full, the least recently used perturbed sequence is
+     * discarded. By default the cache is disabled, which corresponds to a size equal to <code>0</code>.
+     *
+     * @param size maximum number of cached perturbed sequences.
+     * @throws IllegalArgumentException if <code>size&lt;0</code>.
+     */
+    public void setPerturbationCacheSize(int size) {
+        if (size<0) {
+            throw new IllegalArgumentException();
+        }
+        synchronized (perturbations) {
+            this.perturbationCacheSize = size;
+            Iterator<PerturbedBranch> iterator = perturbations.keySet().iterator();
+            while (perturbations.size() > size) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
     }
 
     /**
@@ -292,7 +773,10 @@ public class EvolutionSequence {
      * underlying data state.
      * This removes agent and environment references of the system states, and
      * makes them suitable for monitoring: SampleSet<{@link PerceivedSystemState}> objects are
-     * the input of monitors </p>
+     * the input of monitors. The returned sample set is backed by the {@link DataStateMatrix} of the step, so that
+     * monitors evaluate penalty functions on a single primitive array, and it is only created once for each
+     * step (see {@link SampleSet#toPerceivedSystemStates()}). Elements keep the multiplicity they have in the
+     * step.</p>
      *
      * @param i step index.
      * @return a sample set of perceived system states at the given step.
@@ -300,7 +784,30 @@ public class EvolutionSequence {
      */
 
     public SampleSet<PerceivedSystemState> getAsPerceivedSystemStates(int i){
-        return new SampleSet<>(get(i).stream().map((st) -> new PerceivedSystemState(st.getDataState())).toList());
+        return get(i).toPerceivedSystemStates();
+    }
+
+    /**
+     * Identifies a perturbed sequence obtained from this one. Perturbations are immutable, hence they are
+     * compared by identity.
+     */
+    private record PerturbedBranch(Perturbation perturbation, int step, int scale) {
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof PerturbedBranch other)&&(perturbation == other.perturbation)&&(step == other.step)&&(scale == other.scale);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*(31*System.identityHashCode(perturbation)+step)+scale;
+        }
+    }
+
+    /**
+     * The error raised by a generation in background, together with the lookahead setting it was started with.
+     */
+    private record PrefetchFailure(int epoch, RuntimeException error) {
     }
 
 }
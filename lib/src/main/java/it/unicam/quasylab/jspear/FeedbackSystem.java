@@ -26,6 +26,7 @@ import it.unicam.quasylab.jspear.controller.Controller;
 import it.unicam.quasylab.jspear.controller.EffectStep;
 import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
+import it.unicam.quasylab.jspear.ds.DataStateBuffer;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
 import it.unicam.quasylab.jspear.feedback.Feedback;
 import org.apache.commons.math3.random.RandomGenerator;
@@ -73,6 +74,15 @@ public class FeedbackSystem implements SystemState {
         return new FeedbackSystem(step.next(), environment, newState, feedback.next());
     }
 
+    @Override
+    public SystemState sampleNext(RandomGenerator rg, DataStateBuffer buffer) {
+        EffectStep<Controller> step = controller.next(rg, state);
+        int c_step = state.getStep();
+        DataState newState = environment.apply(rg, feedback.apply(rg, buffer.apply(state, step.effect())));
+        newState.setStep(c_step +1);
+        return new FeedbackSystem(step.next(), environment, newState, feedback.next());
+    }
+
     @Override
     public SystemState setDataState(DataState dataState) {
         return new FeedbackSystem(controller, environment, dataState, feedback);
@@ -80,12 +90,14 @@ public class FeedbackSystem implements SystemState {
 
     @Override
     public SystemState sampleNextCond(RandomGenerator rg, DataStateBooleanExpression condition) {
+        DataStateBuffer buffer = new DataStateBuffer();
         SystemState result = this;
         DataState ds = this.state;
         while(!condition.eval(ds)) {
-            result = result.sampleNext(rg);
+            result = result.sampleNext(rg, buffer);
             ds = result.getDataState();
         }
+        buffer.detach(ds);
         return result;
     }
 
@@ -27,8 +27,6 @@ import it.unicam.quasylab.jspear.ds.DataStateFunction;
 import it.unicam.quasylab.jspear.perturbation.Perturbation;
 import org.apache.commons.math3.random.RandomGenerator;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
 
 /**
@@ -41,45 +39,48 @@ public class PerturbedEvolutionSequence extends EvolutionSequence {
     /**
      * Generates the perturbed version of a given evolution sequence,
      * obtained by applying a given perturbation
-     * to a given data state.
+     * to the sample set reached at a given step.
+     * The steps before the perturbed one are shared with the given sequence.
      *
-     * @param monitor a monitor
-     * @param rg a random generator
      * @param sequence an evolution sequence
-     * @param perturbedStep initial data state to which the perturbation is applied
+     * @param perturbedStep step at which the perturbation is applied
      * @param p the perturbation
      * @param scale multiplication factor for the number of samples to be used
      *              in the simulation of the perturbed system.
      */
-    protected PerturbedEvolutionSequence(SimulationMonitor monitor, RandomGenerator rg, List<SampleSet<SystemState>> sequence, SampleSet<SystemState> perturbedStep, Perturbation p, int scale) {
-        super(monitor, rg, sequence);
+    protected PerturbedEvolutionSequence(EvolutionSequence sequence, int perturbedStep, Perturbation p, int scale) {
+        super(sequence, perturbedStep-1);
         this.p = p;
-        doAdd(doApply(perturbedStep.replica(scale)));
+        doAdd(doApply(getRandomGenerator(perturbedStep), sequence.get(perturbedStep).replica(scale)));
     }
 
+    /**
+     * The step is sampled and then perturbed with the same random generator.
+     */
     @Override
-    protected synchronized SampleSet<SystemState> generateNextStep() {
+    protected synchronized SampleSet<SystemState> generateNextStep(RandomGenerator rg) {
         this.p = this.p.step();
-        return doApply(super.generateNextStep());
+        return doApply(rg, super.generateNextStep(rg));
     }
 
     @Override
-    public synchronized SampleSet<SystemState> generateNextStepCond(DataStateBooleanExpression condition) {
+    protected synchronized SampleSet<SystemState> generateNextStepCond(RandomGenerator rg, DataStateBooleanExpression condition) {
         this.p = this.p.step();
-        return doApply(super.generateNextStepCond(condition));
+        return doApply(rg, super.generateNextStepCond(rg, condition));
     }
 
 
     /**
      * Applies this perturbation to a given sample set.
      *
+     * @param rg random generator used to sample the effect of the perturbation
      * @param sample a given sample set
      * @return the perturbation of <code>sample</code> via <code>this.p</code>.
      */
-    protected synchronized SampleSet<SystemState> doApply(SampleSet<SystemState> sample) {
+    protected synchronized SampleSet<SystemState> doApply(RandomGenerator rg, SampleSet<SystemState> sample) {
         Optional<DataStateFunction> perturbationFunction = this.p.effect();
         if (perturbationFunction.isPresent()) {
-            return sample.apply(getRandomGenerator(), (rg, s) -> s.apply(rg, perturbationFunction.get()));
+            return sample.apply(rg, (r, s) -> s.apply(r, perturbationFunction.get()));
         } else {
             return sample;
         }
@@ -22,13 +22,26 @@
 
 package it.unicam.quasylab.jspear;
 
+import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateMatrix;
+import it.unicam.quasylab.jspear.jfr.BootstrapEvent;
+import it.unicam.quasylab.jspear.jfr.DistanceComputedEvent;
+import it.unicam.quasylab.jspear.jfr.PenaltyEvaluationEvent;
+import nl.tue.Monitoring.PerceivedSystemState;
 import org.apache.commons.math3.random.RandomGenerator;
 import it.unicam.quasylab.jspear.penalty.*;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CancellationException;
 import java.util.function.*;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -39,7 +52,32 @@ import java.util.stream.Stream;
  */
 public class SampleSet<T extends SystemState> {
 
+    /**
+     * Maximum number of penalty functions whose evaluations are cached by a sample set.
+     */
+    public static final int PENALTY_CACHE_SIZE = 16;
+
+    /**
+     * Number of bootstrap replicates computed by each parallel task.
+     */
+    private static final int BOOTSTRAP_CHUNK_SIZE = 16;
+
+    /**
+     * Number of states advanced with a single invocation of {@link BatchSystem#sampleNext(RandomGenerator, SystemState[], int, int)}.
+     */
+    public static final int BATCH_SIZE = 1024;
+
     private final List<T> states;
+    private final List<T> distinct;
+    private final int multiplicity;
+    private volatile DataStateMatrix matrix;
+    private volatile SampleSet<PerceivedSystemState> perceived;
+    private final Map<DataStateExpression, double[]> penalties = new LinkedHashMap<>(PENALTY_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DataStateExpression, double[]> eldest) {
+            return size() > PENALTY_CACHE_SIZE;
+        }
+    };
 
     /**
      * Creates an empty sample set.
@@ -54,7 +92,48 @@ public class SampleSet<T extends SystemState> {
      * @param states system states in the sample.
      */
     public SampleSet(List<T> states) {
-        this.states = states;
+        this(states, null);
+    }
+
+    private SampleSet(List<T> states, DataStateMatrix matrix) {
+        this(states, 1, matrix);
+    }
+
+    /**
+     * Creates a sample set where each of the given states occurs <code>multiplicity</code> times. The given
+     * matrix, when not null, contains the data states of the given states.
+     */
+    private SampleSet(List<T> distinct, int multiplicity, DataStateMatrix matrix) {
+        this.distinct = distinct;
+        this.multiplicity = multiplicity;
+        this.states = (multiplicity == 1 ? distinct : new ReplicatedList<>(distinct, multiplicity));
+        this.matrix = matrix;
+    }
+
+    /**
+     * Returns a sample set whose data states are those stored in the given matrix. The returned sample set
+     * is backed by the matrix: penalty functions and distances are computed directly on the stored values,
+     * while the perceived system states are only created when the elements of the sample set are accessed.
+     *
+     * @param matrix the matrix containing the data states in the sample.
+     * @return a sample set whose data states are those stored in <code>matrix</code>.
+     */
+    public static SampleSet<PerceivedSystemState> of(DataStateMatrix matrix) {
+        return of(matrix, PerceivedSystemState::new);
+    }
+
+    /**
+     * Returns a sample set whose data states are those stored in the given matrix. The returned sample set
+     * is backed by the matrix, and its elements are obtained by applying the given function to the stored
+     * data states when they are accessed.
+     *
+     * @param matrix the matrix containing the data states in the sample.
+     * @param restore function used to obtain the elements of the sample set from the stored data states.
+     * @return a sample set whose data states are those stored in <code>matrix</code>.
+     * @param <T> type of the elements of the sample set.
+     */
+    public static <T extends SystemState> SampleSet<T> of(DataStateMatrix matrix, Function<DataState, ? extends T> restore) {
+        return new SampleSet<>(new MatrixList<>(matrix, restore), matrix);
     }
 
     /**
@@ -71,12 +150,23 @@ public class SampleSet<T extends SystemState> {
     }
 
     /**
-     * Adds a new system state to this sample set.
+     * Adds a new system state to this sample set. Sample sets obtained with {@link #replica(int)} are immutable,
+     * since all their elements occur the same number of times.
      *
      * @param state a system state.
+     * @throws UnsupportedOperationException if this sample set has been obtained with {@link #replica(int)},
+     * or if its elements cannot be modified.
      */
     public void add(T state) {
+        if (multiplicity > 1) {
+            throw new UnsupportedOperationException("States cannot be added to a replicated sample set!");
+        }
         states.add(state);
+        matrix = null;
+        perceived = null;
+        synchronized (penalties) {
+            penalties.clear();
+        }
     }
 
     /**
@@ -88,17 +178,124 @@ public class SampleSet<T extends SystemState> {
         return states.size();
     }
 
+    /**
+     * Returns the number of times each element occurs in this sample set. Sample sets obtained with
+     * {@link #replica(int)} store each element only once together with its multiplicity, so that penalty
+     * functions are evaluated once for each element and distances are computed on weighted values.
+     *
+     * @return the number of times each element occurs in this sample set.
+     */
+    public int getMultiplicity() {
+        return multiplicity;
+    }
+
     /**
      * Given a penalty function, described by means of an expression over data states,
      * returns a (sorted) array containing its evaluation on the data state
-     * of each element in the sample set.
+     * of each element in the sample set. Elements occurring more than once, in the sample sets obtained with
+     * {@link #replica(int)}, are evaluated once: each value of the returned array stands for
+     * {@link #getMultiplicity()} elements. Since all the elements have the same multiplicity, the returned values
+     * have the same empirical distribution, hence the same mean and quantiles, of the evaluations on all the elements.
      *
      * @param f a penalty function.
      * @return a sorted array containing all the evaluations of <code>f</code> over the
-     * data states associated to the system states in the sample set.
+     * data states associated to the distinct system states in the sample set.
+     */
+    public double[] evalPenaltyFunction(DataStateExpression f) {
+        return sortedPenalties(f).clone();
+    }
+
+    /**
+     * Returns the sorted evaluations of the given penalty function on this sample set. Evaluations are cached,
+     * so that the sample set is evaluated and sorted only once for each penalty function. At most
+     * {@link #PENALTY_CACHE_SIZE} penalty functions are cached, and the least recently used one is evicted when
+     * a new one is added; penalty functions are compared by identity.
+     * The returned array is shared and must not be modified. Each element of this sample set is evaluated once,
+     * regardless of its multiplicity.
+     *
+     * @param f a penalty function.
+     * @return the sorted evaluations of <code>f</code> on the distinct elements of this sample set.
      */
-    public synchronized double[] evalPenaltyFunction(DataStateExpression f) {
-        return states.stream().map(SystemState::getDataState).mapToDouble(f).sorted().toArray();
+    private double[] sortedPenalties(DataStateExpression f) {
+        double[] values;
+        synchronized (penalties) {
+            values = penalties.get(f);
+        }
+        if (values == null) {
+            PenaltyEvaluationEvent event = new PenaltyEvaluationEvent();
+            event.begin();
+            DataStateMatrix m = this.matrix;
+            if (m != null) {
+                values = m.evalPenaltyFunction(f);
+            } else {
+                values = distinct.stream().map(SystemState::getDataState).mapToDouble(f).sorted().toArray();
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.samples = values.length;
+                event.columnar = (m != null);
+                event.commit();
+            }
+            synchronized (penalties) {
+                double[] previous = penalties.putIfAbsent(f, values);
+                if (previous != null) {
+                    values = previous;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns a sample set with the same elements of this one whose penalty functions and distances are
+     * evaluated on a copy of their data states stored outside the heap (see {@link DataStateMatrix#direct(List)}).
+     * Evaluations are not faster than on this sample set: moving data states outside the heap only shortens
+     * the pauses of the garbage collector when the elements of the sample set are no longer referenced, as it
+     * happens for the sample sets obtained with {@link #of(DataStateMatrix, Function)}.
+     *
+     * @return a sample set with the elements of this one whose data states are stored outside the heap.
+     */
+    public SampleSet<T> toDirect() {
+        DataStateMatrix m = this.matrix;
+        if ((m != null)&&m.isDirect()) {
+            return new SampleSet<>(distinct, multiplicity, m);
+        }
+        return new SampleSet<>(distinct, multiplicity, DataStateMatrix.direct(distinct.stream().map(SystemState::getDataState).toList()));
+    }
+
+    /**
+     * Returns the matrix containing the data states of the elements of this sample set, in the same order.
+     * The matrix is computed at the first invocation and then reused for all the evaluations of
+     * penalty functions on this sample set. Elements occurring more than once are stored in a single row,
+     * which stands for {@link #getMultiplicity()} elements.
+     *
+     * @return the matrix containing the data states of the distinct elements of this sample set.
+     */
+    public DataStateMatrix getDataStateMatrix() {
+        DataStateMatrix m = this.matrix;
+        if (m == null) {
+            m = new DataStateMatrix(distinct.stream().map(SystemState::getDataState).toList());
+            this.matrix = m;
+        }
+        return m;
+    }
+
+    /**
+     * Returns the sample set containing the perceived system states of the elements of this sample set, with the
+     * same multiplicity. The returned sample set is backed by the matrix of this one (see
+     * {@link #getDataStateMatrix()}), and it is created at the first invocation and then reused, so that the
+     * data states of this sample set are copied at most once. The returned sample set is immutable.
+     *
+     * @return the sample set containing the perceived system states of the elements of this sample set.
+     */
+    public SampleSet<PerceivedSystemState> toPerceivedSystemStates() {
+        SampleSet<PerceivedSystemState> result = this.perceived;
+        if (result == null) {
+            DataStateMatrix m = getDataStateMatrix();
+            result = new SampleSet<>(new MatrixList<>(m, PerceivedSystemState::new), multiplicity, m);
+            this.perceived = result;
+        }
+        return result;
     }
 
     /**
@@ -113,13 +310,33 @@ public class SampleSet<T extends SystemState> {
      * computed on the values obtained by applying <code>f</code> to the data states in the samples,
      * between this sample set and <code>other</code>.
      */
-    public synchronized double distance(DataStateExpression f, DoubleBinaryOperator distance, SampleSet<T> other) {
-        if (other.size() % this.size() != 0) {
-            throw new IllegalArgumentException("Incompatible size of data sets!");
+    public double distance(DataStateExpression f, DoubleBinaryOperator distance, SampleSet<T> other) {
+        DistanceComputedEvent event = new DistanceComputedEvent();
+        event.begin();
+        double[] thisData = this.sortedPenalties(f);
+        double[] otherData = other.sortedPenalties(f);
+        double result = computeDistance(distance, thisData, this.multiplicity, otherData, other.multiplicity);
+        commitDistanceEvent(event, "wasserstein", other, result);
+        return result;
+    }
+
+    /**
+     * Ends the given event and, if it has to be recorded, commits it with the sizes of the compared sample sets.
+     *
+     * @param event the event to commit.
+     * @param kind the kind of the computed distance.
+     * @param other the sample set compared with this one.
+     * @param distance the computed distance.
+     */
+    private void commitDistanceEvent(DistanceComputedEvent event, String kind, SampleSet<T> other, double distance) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.samples = this.size();
+            event.otherSamples = other.size();
+            event.distance = distance;
+            event.commit();
         }
-        double[] thisData = this.evalPenaltyFunction(f);
-        double[] otherData = other.evalPenaltyFunction(f);
-        return computeDistance(distance, thisData, otherData);
     }
 
     /**
@@ -132,13 +349,16 @@ public class SampleSet<T extends SystemState> {
      * computed on the values obtained by applying <code>f</code> to the data states in the samples,
      * between this sample set and <code>other</code>.
      */
-    public synchronized double distance(DataStateExpression f, SampleSet<T> other) {
+    public double distance(DataStateExpression f, SampleSet<T> other) {
         return distance(f, (v1, v2) -> Math.abs(v2-v1), other);
     }
 
     /**
      * Utility method to evaluate the Wasserstein distance between two sampled distributions on reals,
-     * based on a given ground distance.
+     * based on a given ground distance. The two arrays are sorted and may have any size: when the size of
+     * <code>otherData</code> is a multiple of that of <code>thisData</code>, each value of <code>thisData</code>
+     * is coupled with a block of values of <code>otherData</code>, otherwise the two empirical cumulative
+     * distribution functions are merged.
      *
      * @param distance ground distance on reals
      * @param thisData an array of real values
@@ -146,13 +366,83 @@ public class SampleSet<T extends SystemState> {
      * @return the Wasserstein lifting of <code>distance</code>
      * between the sampled distributions <code>thisData</code> and <code>otherData</code>.
      */
-    private double computeDistance(DoubleBinaryOperator distance, double[] thisData, double[] otherData) {
+    private static double computeDistance(DoubleBinaryOperator distance, double[] thisData, double[] otherData) {
+        if (otherData.length % thisData.length != 0) {
+            return mergeDistance(distance, thisData, 1, otherData, 1);
+        }
         int k = otherData.length / thisData.length;
         return IntStream.range(0, thisData.length).parallel()
                 .mapToDouble(i -> IntStream.range(0, k).mapToDouble(j -> distance.applyAsDouble(thisData[i],otherData[i * k + j])).sum())
                 .sum() / otherData.length;
     }
 
+    /**
+     * Computes the Wasserstein lifting of the given ground distance between two sorted arrays of values where
+     * each value of <code>thisData</code> occurs <code>thisWeight</code> times and each value of
+     * <code>otherData</code> occurs <code>otherWeight</code> times.
+     *
+     * @param distance ground distance on reals.
+     * @param thisData a sorted array of real values.
+     * @param thisWeight multiplicity of the values in <code>thisData</code>.
+     * @param otherData a sorted array of real values.
+     * @param otherWeight multiplicity of the values in <code>otherData</code>.
+     * @return the Wasserstein lifting of <code>distance</code> between the weighted sampled distributions.
+     */
+    private static double computeDistance(DoubleBinaryOperator distance, double[] thisData, int thisWeight, double[] otherData, int otherWeight) {
+        if ((thisWeight == 1)&&(otherWeight == 1)) {
+            return computeDistance(distance, thisData, otherData);
+        }
+        return mergeDistance(distance, thisData, thisWeight, otherData, otherWeight);
+    }
+
+    /**
+     * Computes the Wasserstein lifting of the given ground distance between two weighted sorted arrays of
+     * values, of any size, by merging their empirical cumulative distribution functions. Each value of
+     * <code>thisData</code> carries a mass proportional to <code>thisWeight</code> times the size of the other
+     * distribution, and vice versa, so that the coupling is computed with integer arithmetic in a single pass.
+     *
+     * @param distance ground distance on reals.
+     * @param thisData a sorted array of real values.
+     * @param thisWeight multiplicity of the values in <code>thisData</code>.
+     * @param otherData a sorted array of real values.
+     * @param otherWeight multiplicity of the values in <code>otherData</code>.
+     * @return the Wasserstein lifting of <code>distance</code> between the weighted sampled distributions.
+     */
+    private static double mergeDistance(DoubleBinaryOperator distance, double[] thisData, int thisWeight, double[] otherData, int otherWeight) {
+        long thisSize = (long) thisData.length * thisWeight;
+        long otherSize = (long) otherData.length * otherWeight;
+        long gcd = gcd(thisSize, otherSize);
+        long thisMass = thisWeight * (otherSize / gcd);
+        long otherMass = otherWeight * (thisSize / gcd);
+        long thisResidual = thisMass;
+        long otherResidual = otherMass;
+        double sum = 0.0;
+        for (int i = 0, j = 0; (i < thisData.length)&&(j < otherData.length); ) {
+            long mass = Math.min(thisResidual, otherResidual);
+            sum += mass * distance.applyAsDouble(thisData[i], otherData[j]);
+            thisResidual -= mass;
+            otherResidual -= mass;
+            if (thisResidual == 0) {
+                i++;
+                thisResidual = thisMass;
+            }
+            if (otherResidual == 0) {
+                j++;
+                otherResidual = otherMass;
+            }
+        }
+        return sum / ((double) thisSize * (otherSize / gcd));
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
     /**
      * In case the ground distance is not specified,
      * the Euclidean distance on reals is used.
@@ -169,27 +459,24 @@ public class SampleSet<T extends SystemState> {
     /**
      * Returns the asymmetric distance between <code>other</code> and this sample set computed according to
      * the function <code>f</code>.
-     * The cardinality of <code>other</code> must be a multiple of that of this sample set.
      * @param f penalty function used to compute the distance.
      * @param other sample set to compare.
      * @return the distance between <code>other</code> and this sample set computed according to
      * the function <code>f</code>.
      */
-    public synchronized double distanceLeq(DataStateExpression f, SampleSet<T> other) {
+    public double distanceLeq(DataStateExpression f, SampleSet<T> other) {
         return distance(f, (v1,v2) -> Math.max(0.0, v2-v1), other);
     }
 
-    public synchronized double distanceLeq(Penalty rho, SampleSet<T> other, int step) {
-        if (other.size() % this.size() != 0) {
-            throw new IllegalArgumentException("Incompatible size of data sets!");
-        }
-        DataStateExpression f = rho.effectUpTo(step).get(step);
-        double[] thisData = this.evalPenaltyFunction(f);
-        double[] otherData = other.evalPenaltyFunction(f);
-        int k = otherData.length / thisData.length;
-        return IntStream.range(0, thisData.length).parallel()
-                .mapToDouble(i -> IntStream.range(0, k).mapToDouble(j -> Math.max(0,otherData[i * k + j] - thisData[i])).sum())
-                .sum() / otherData.length;
+    public double distanceLeq(Penalty rho, SampleSet<T> other, int step) {
+        DistanceComputedEvent event = new DistanceComputedEvent();
+        event.begin();
+        DataStateExpression f = rho.effectAt(step);
+        double[] thisData = this.sortedPenalties(f);
+        double[] otherData = other.sortedPenalties(f);
+        double result = computeDistance((v1, v2) -> Math.max(0, v2-v1), thisData, this.multiplicity, otherData, other.multiplicity);
+        commitDistanceEvent(event, "leq", other, result);
+        return result;
     }
 
     /**
@@ -207,27 +494,24 @@ public class SampleSet<T extends SystemState> {
     /**
      * Returns the asymmetric distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
-     * The cardinality of <code>other</code> must be a multiple of that of this sample set.
      * @param f penalty function used to compute the distance.
      * @param other sample set to compare.
      * @return the distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
      */
-    public synchronized double distanceGeq(DataStateExpression f, SampleSet<T> other) {
+    public double distanceGeq(DataStateExpression f, SampleSet<T> other) {
         return distance(f, (v1,v2) -> Math.max(0, v1-v2), other);
     }
 
-    public synchronized double distanceGeq(Penalty rho, SampleSet<T> other, int step) {
-        if (other.size() % this.size() != 0) {
-            throw new IllegalArgumentException("Incompatible size of data sets!");
-        }
-        DataStateExpression f = rho.effectUpTo(step).get(step);
-        double[] thisData = this.evalPenaltyFunction(f);
-        double[] otherData = other.evalPenaltyFunction(f);
-        int k = otherData.length / thisData.length;
-        return IntStream.range(0, thisData.length).parallel()
-                .mapToDouble(i -> IntStream.range(0, k).mapToDouble(j -> Math.max(0, thisData[i] - otherData[i * k + j])).sum())
-                .sum() / otherData.length;
+    public double distanceGeq(Penalty rho, SampleSet<T> other, int step) {
+        DistanceComputedEvent event = new DistanceComputedEvent();
+        event.begin();
+        DataStateExpression f = rho.effectAt(step);
+        double[] thisData = this.sortedPenalties(f);
+        double[] otherData = other.sortedPenalties(f);
+        double result = computeDistance((v1, v2) -> Math.max(0, v1-v2), thisData, this.multiplicity, otherData, other.multiplicity);
+        commitDistanceEvent(event, "geq", other, result);
+        return result;
     }
 
     /**
@@ -246,27 +530,42 @@ public class SampleSet<T extends SystemState> {
      * Returns the confidence interval of the evaluation of the distance between this sample set and <code>other</code>
      * computed according to the function <code>f</code>.
      * The confidence interval is evaluated by means of the empirical bootstrap method.
+     * Replicates are computed in parallel, each with its own random generator derived from <code>rg</code>,
+     * so that the result does not depend on the number of available workers. Since the evaluations of
+     * <code>f</code> are sorted, each resampling is obtained by counting how many times each value is drawn,
+     * without sorting the bootstrap data. Values are drawn from the evaluations on the distinct elements, which
+     * all have the same multiplicity, and each resampling has the size of the sample set.
      *
      * @param rg a random generator
      * @param f penalty function used to compute the distance.
+     * @param distanceFunction function used to compute the distance between two sorted arrays of values.
      * @param other sample set to compare.
      * @param m number of applications of bootstrapping
      * @param z the desired quantile of the standard-normal distribution
      * @return the limits of the confidence interval of the evaluation of the distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
      */
-    public synchronized double[] bootstrapDistance(RandomGenerator rg, DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double z) {
-        if (other.size()%this.size()!=0) {
-            throw new IllegalArgumentException("Incompatible size of data sets!");
-        }
+    public double[] bootstrapDistance(RandomGenerator rg, DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double z) {
+        BootstrapEvent event = new BootstrapEvent();
+        event.begin();
         double[] W = new double[m];
         double WSum = 0.0;
-        double[] thisData = this.evalPenaltyFunction(f);
-        double[] otherData = other.evalPenaltyFunction(f);
+        double[] thisData = this.sortedPenalties(f);
+        double[] otherData = other.sortedPenalties(f);
+        long seed = rg.nextLong();
+        IntStream.range(0, (m+BOOTSTRAP_CHUNK_SIZE-1)/BOOTSTRAP_CHUNK_SIZE).parallel().forEach(c -> {
+            int[] thisCounts = new int[thisData.length];
+            int[] otherCounts = new int[otherData.length];
+            double[] thisBootstrapData = new double[this.size()];
+            double[] otherBootstrapData = new double[other.size()];
+            for (int i = c*BOOTSTRAP_CHUNK_SIZE; i < Math.min(m, (c+1)*BOOTSTRAP_CHUNK_SIZE); i++) {
+                RandomGenerator replicateRg = DefaultRandomGenerator.streamOf(seed, i);
+                resample(replicateRg, thisData, thisCounts, thisBootstrapData);
+                resample(replicateRg, otherData, otherCounts, otherBootstrapData);
+                W[i] = distanceFunction.applyAsDouble(thisBootstrapData, otherBootstrapData);
+            }
+        });
         for (int i = 0; i<m; i++){
-            double[] thisBootstrapData = IntStream.range(0, thisData.length).mapToDouble(j -> thisData[rg.nextInt(thisData.length)]).sorted().toArray();
-            double[] otherBootstrapData = IntStream.range(0, otherData.length).mapToDouble(j -> otherData[rg.nextInt(otherData.length)]).sorted().toArray();
-            W[i] = distanceFunction.applyAsDouble(thisBootstrapData, otherBootstrapData);
             WSum += W[i];
         }
         double BootMean = WSum/m;
@@ -274,14 +573,43 @@ public class SampleSet<T extends SystemState> {
         double[] CI = new double[2];
         CI[0] = Math.max(0,BootMean - z*StandardError);
         CI[1] = Math.min(BootMean + z*StandardError,1);
+        event.end();
+        if (event.shouldCommit()) {
+            event.samples = this.size();
+            event.otherSamples = other.size();
+            event.replicates = m;
+            event.commit();
+        }
         return CI;
     }
 
+    /**
+     * Stores in <code>target</code> a sorted resampling with replacement of the sorted array <code>data</code>,
+     * containing as many values as <code>target</code>.
+     *
+     * @param rg random generator used to draw the values.
+     * @param data sorted array of values.
+     * @param counts buffer used to count how many times each value is drawn.
+     * @param target array where the resampled values are stored.
+     */
+    private static void resample(RandomGenerator rg, double[] data, int[] counts, double[] target) {
+        Arrays.fill(counts, 0);
+        for (int j = 0; j < target.length; j++) {
+            counts[rg.nextInt(data.length)]++;
+        }
+        int k = 0;
+        for (int j = 0; j < data.length; j++) {
+            for (int c = counts[j]; c > 0; c--) {
+                target[k++] = data[j];
+            }
+        }
+    }
+
     /**
      * In case the random generator is not passed as parameter,
      * the default one is used.
      */
-    public synchronized double[] bootstrapDistance(DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistance(DataStateExpression f, ToDoubleBiFunction<double[], double[]> distanceFunction, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(new DefaultRandomGenerator(), f, distanceFunction, other, m, z);
     }
 
@@ -289,7 +617,7 @@ public class SampleSet<T extends SystemState> {
      * In case the method to compute the distance is not passed as parameter,
      * method <code>computeDistance</code> is used as default.
      */
-    public synchronized double[] bootstrapDistance(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistance(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(rg, f, this::computeDistance, other, m , z);
     }
 
@@ -297,7 +625,7 @@ public class SampleSet<T extends SystemState> {
      * In case neither the random generator nor the distance method are passed as parameters,
      * the default ones are used.
      */
-    public synchronized double[] bootstrapDistance(DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistance(DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(new DefaultRandomGenerator(), f, this::computeDistance, other, m, z);
     }
 
@@ -313,7 +641,7 @@ public class SampleSet<T extends SystemState> {
      * @return the limits of the confidence interval of the evaluation of the distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
      */
-    public synchronized double[] bootstrapDistanceLeq(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistanceLeq(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(rg, f, this::computeDistanceLeq, other, m , z);
     }
 
@@ -321,7 +649,7 @@ public class SampleSet<T extends SystemState> {
      * In case the random generator is not passed as parameter,
      * the default one is used.
      */
-    public synchronized double[] bootstrapDistanceLeq(DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistanceLeq(DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(new DefaultRandomGenerator(), f, this::computeDistanceLeq, other, m, z);
     }
 
@@ -337,7 +665,7 @@ public class SampleSet<T extends SystemState> {
      * @return the limits of the confidence interval of the evaluation of the distance between this sample set and <code>other</code> computed according to
      * the function <code>f</code>.
      */
-    public synchronized double[] bootstrapDistanceGeq(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistanceGeq(RandomGenerator rg, DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(rg, f, this::computeDistanceGeq, other, m , z);
     }
 
@@ -345,7 +673,7 @@ public class SampleSet<T extends SystemState> {
      * In case the random generator is not passed as parameter,
      * the default one is used.
      */
-    public synchronized double[] bootstrapDistanceGeq(DataStateExpression f, SampleSet<T> other, int m, double z) {
+    public double[] bootstrapDistanceGeq(DataStateExpression f, SampleSet<T> other, int m, double z) {
         return bootstrapDistance(new DefaultRandomGenerator(), f, this::computeDistanceGeq, other, m, z);
     }
 
@@ -369,34 +697,149 @@ public class SampleSet<T extends SystemState> {
 
     /**
      * Returns a new sample set obtained by applying a given function to all the elements of this sample set.
+     * Elements are processed in parallel. A single seed is drawn from <code>rg</code> and each element is
+     * evolved with the random generator of the stream associated with its position in the sample set
+     * (see {@link DefaultRandomGenerator#streamOf(long, int)}). Hence, workers never share a random generator,
+     * and the same sequence of seeds always produces the same sample set, whatever the number of threads used.
+     *
      * @param rg random generator used to sample random values.
      * @param function function used to generate a new element.
      * @return a new sample set obtained by applying <code>function</code> to all the elements of this sample set.
      */
     public SampleSet<T> apply(RandomGenerator rg, BiFunction<RandomGenerator, T, T> function) {
-        return new SampleSet<>(
-                this.stream().parallel().map(s -> function.apply(rg, s)).toList()
-        );
+        return apply(rg, function, true);
+    }
+
+    /**
+     * Returns a new sample set obtained by applying a given function to all the elements of this sample set.
+     * Each element is evolved with the random generator of the stream associated with its position in the
+     * sample set, so that the result does not depend on whether elements are processed in parallel or not.
+     *
+     * @param rg random generator used to sample the seed of the streams.
+     * @param function function used to generate a new element.
+     * @param parallel if elements are processed in parallel.
+     * @return a new sample set obtained by applying <code>function</code> to all the elements of this sample set.
+     */
+    public SampleSet<T> apply(RandomGenerator rg, BiFunction<RandomGenerator, T, T> function, boolean parallel) {
+        return new SampleSet<>(map(rg, function, parallel));
+    }
+
+    /**
+     * Returns the sample set obtained by advancing each element of this sample set of one step.
+     * When all the elements are instances of the same class implementing {@link BatchSystem}, the elements are
+     * advanced in blocks of {@link #BATCH_SIZE} contiguous states, and the block in position <code>i</code>
+     * is given the random generator of the stream of index <code>i</code> derived from a seed sampled from
+     * <code>rg</code>. Otherwise, the result is the one of <code>apply(rg, (r, s) -> s.sampleNext(r))</code>.
+     * The two paths are not seed-compatible: for the same <code>rg</code>, batch systems are advanced to states
+     * that differ from the ones obtained by advancing each of them individually, and that depend on
+     * {@link #BATCH_SIZE}.
+     *
+     * @param rg random generator used to sample the seed of the streams.
+     * @return the sample set obtained by advancing each element of this sample set of one step.
+     */
+    public SampleSet<SystemState> sampleNext(RandomGenerator rg) {
+        return sampleNext(rg, null);
+    }
+
+    /**
+     * Returns the sample set obtained by advancing each element of this sample set of one step, as
+     * {@link #sampleNext(RandomGenerator)} does. Before advancing each block of {@link #BATCH_SIZE} elements,
+     * the given monitor is queried and the evolution is interrupted if the simulation has been cancelled.
+     *
+     * @param rg random generator used to sample the seed of the streams.
+     * @param monitor monitor used to check if the simulation has been cancelled, can be <code>null</code>.
+     * @return the sample set obtained by advancing each element of this sample set of one step.
+     * @throws CancellationException if the simulation is cancelled while elements are advanced.
+     */
+    public SampleSet<SystemState> sampleNext(RandomGenerator rg, SimulationMonitor monitor) {
+        SystemState[] elements = states.toArray(new SystemState[0]);
+        if (!isBatch(elements)) {
+            return new SampleSet<>(map(rg, (r, s) -> s.sampleNext(r), true, monitor));
+        }
+        long seed = rg.nextLong();
+        int blocks = (elements.length + BATCH_SIZE - 1) / BATCH_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            checkCancelled(monitor);
+            ((BatchSystem) elements[b * BATCH_SIZE]).sampleNext(DefaultRandomGenerator.streamOf(seed, b), elements, b * BATCH_SIZE, Math.min(elements.length, (b + 1) * BATCH_SIZE));
+        });
+        return new SampleSet<>(Arrays.asList(elements));
+    }
+
+    private static void checkCancelled(SimulationMonitor monitor) {
+        if ((monitor != null)&&monitor.hasBeenCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    private static boolean isBatch(SystemState[] elements) {
+        if ((elements.length == 0)||!(elements[0] instanceof BatchSystem)) {
+            return false;
+        }
+        Class<?> batchClass = elements[0].getClass();
+        for (SystemState state : elements) {
+            if (state.getClass() != batchClass) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Utility method that applies a given function to all the elements of this sample set, where the element
+     * in position <code>i</code> is given the random generator of the stream of index <code>i</code> derived from
+     * a seed sampled from <code>rg</code>.
+     *
+     * @param rg random generator used to sample the seed of the streams.
+     * @param function function applied to the elements.
+     * @param parallel if elements are processed in parallel.
+     * @return the list of the results, in the same order of the elements of this sample set.
+     * @param <R> type of results.
+     */
+    private <R> List<R> map(RandomGenerator rg, BiFunction<RandomGenerator, T, R> function, boolean parallel) {
+        return map(rg, function, parallel, null);
+    }
+
+    /**
+     * Applies a given function to all the elements of this sample set as {@link #map(RandomGenerator, BiFunction, boolean)}
+     * does, checking whether the simulation has been cancelled before each block of {@link #BATCH_SIZE} elements.
+     */
+    private <R> List<R> map(RandomGenerator rg, BiFunction<RandomGenerator, T, R> function, boolean parallel, SimulationMonitor monitor) {
+        long seed = rg.nextLong();
+        List<T> elements = (states instanceof RandomAccess ? states : new ArrayList<>(states));
+        IntStream indexes = IntStream.range(0, elements.size());
+        if (parallel) {
+            indexes = indexes.parallel();
+        }
+        return indexes.mapToObj(i -> {
+            if (i % BATCH_SIZE == 0) {
+                checkCancelled(monitor);
+            }
+            return function.apply(DefaultRandomGenerator.streamOf(seed, i), elements.get(i));
+        }).toList();
     }
 
     /**
      * Returns a sample set obtained from this one by replicating all the elements the given number of times.
+     * Copies are not materialised: the returned sample set shares the elements of this one, and each element
+     * is weighted with its multiplicity, until a function is applied to the elements of the sample set.
      *
      * @param k number of copies.
      * @return a sample set obtained from this one by replicating all the elements <code>k</code>  times.
      */
     public SampleSet<T> replica(int k) {
-        return new SampleSet<>(
-                this.stream().flatMap(e -> IntStream.range(0, k).mapToObj(i -> e)).toList()
-        );
+        if (k <= 0) {
+            return new SampleSet<>(List.of());
+        }
+        List<T> elements = (distinct instanceof MatrixList<T> ? distinct : List.copyOf(distinct));
+        SampleSet<T> result = new SampleSet<>(elements, multiplicity * k, matrix);
+        synchronized (penalties) {
+            result.penalties.putAll(penalties);
+        }
+        return result;
     }
 
     public SampleSet<T> applyDistribution(RandomGenerator rg, DataStateFunction function, boolean parallel){
-        if(parallel){
-            return new SampleSet<>(this.stream().parallel().map(s -> (T) s.apply(rg, function)).toList());
-        } else {
-            return new SampleSet<>(this.stream().map(s -> (T) s.apply(rg, function)).toList());
-        }
+        return new SampleSet<>(map(rg, (r, s) -> (T) s.apply(r, function), parallel));
     }
 
     public double mean(ToDoubleFunction<T> function){
@@ -404,6 +847,59 @@ public class SampleSet<T extends SystemState> {
     }
 
     public SampleSet<SystemState> applyDistribution(RandomGenerator rg, DataStateFunction function){
-        return new SampleSet<>(this.stream().parallel().map(s -> s.apply(rg, function)).toList());
+        return new SampleSet<>(map(rg, (r, s) -> s.apply(r, function), true));
+    }
+
+    /**
+     * List of the elements whose data states are stored in a matrix. Elements are created when accessed.
+     */
+    private static final class MatrixList<T> extends AbstractList<T> implements RandomAccess {
+
+        private final DataStateMatrix matrix;
+        private final Function<DataState, ? extends T> restore;
+
+        private MatrixList(DataStateMatrix matrix, Function<DataState, ? extends T> restore) {
+            this.matrix = matrix;
+            this.restore = restore;
+        }
+
+        @Override
+        public T get(int index) {
+            return restore.apply(matrix.getDataState(index));
+        }
+
+        @Override
+        public int size() {
+            return matrix.size();
+        }
+    }
+
+    /**
+     * List where each element of a given list occurs a given number of times in consecutive positions. The list
+     * is immutable: elements cannot be added to it, since each of them would occur only once.
+     */
+    private static final class ReplicatedList<T> extends AbstractList<T> implements RandomAccess {
+
+        private final List<T> elements;
+        private final int multiplicity;
+
+        private ReplicatedList(List<T> elements, int multiplicity) {
+            this.elements = elements;
+            this.multiplicity = multiplicity;
+        }
+
+        @Override
+        public T get(int index) {
+            if ((index < 0)||(index >= size())) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return elements.get(index / multiplicity);
+        }
+
+        @Override
+        public int size() {
+            return elements.size() * multiplicity;
+        }
     }
-}
\ No newline at end of file
+
+}
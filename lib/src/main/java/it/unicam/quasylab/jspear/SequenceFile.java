@@ -0,0 +1,165 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateMatrix;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Utility class used to store the steps of an evolution sequence in a binary file. The file starts with a header
+ * containing a magic number, the format version, the index of the first stored step, the number of stored steps,
+ * the offset of each step in the file and the multiplicity of the elements of each step (see
+ * {@link SampleSet#getMultiplicity()}). Each step is then stored as a {@link DataStateMatrix}, whose values
+ * are stored column by column. Files are written and read via memory mapping, one step at a time. Loaded steps
+ * are views of the mapped file, hence they are stored outside the heap and are paged in on demand.
+ */
+final class SequenceFile {
+
+    private static final int MAGIC = 0x4A535351;
+
+    private static final int VERSION = 2;
+
+    /**
+     * Version of the files where the multiplicities of the steps are not stored.
+     */
+    private static final int VERSION_WITHOUT_MULTIPLICITIES = 1;
+
+    private SequenceFile() {}
+
+    /**
+     * Writes the given steps in the given file. If the file already exists, it is overwritten.
+     *
+     * @param file the file where steps are written.
+     * @param firstStep the index of the first stored step.
+     * @param steps the data states of the distinct elements of the stored steps.
+     * @param multiplicities the multiplicities of the elements of the stored steps.
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalArgumentException if a step does not fit in a single mapped buffer.
+     */
+    static void write(Path file, int firstStep, List<DataStateMatrix> steps, int[] multiplicities) throws IOException {
+        long headerSize = align(4L * Integer.BYTES + (long) steps.size() * (Long.BYTES + Integer.BYTES));
+        long[] offsets = new long[steps.size()];
+        long position = headerSize;
+        for (int i = 0; i < offsets.length; i++) {
+            if (steps.get(i).byteSize() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Step "+(firstStep+i)+" is too large to be stored!");
+            }
+            offsets[i] = position;
+            position += steps.get(i).byteSize();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, headerSize);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(firstStep);
+            header.putInt(steps.size());
+            for (long offset : offsets) {
+                header.putLong(offset);
+            }
+            for (int multiplicity : multiplicities) {
+                header.putInt(multiplicity);
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                DataStateMatrix matrix = steps.get(i);
+                matrix.writeTo(map(channel, FileChannel.MapMode.READ_WRITE, offsets[i], matrix.byteSize()));
+            }
+        }
+    }
+
+    /**
+     * Reads the steps stored in the given file. The returned list contains <code>null</code> in the positions
+     * of the steps preceding the first stored one.
+     *
+     * @param file the file where steps are read.
+     * @param restore function used to obtain system states from the stored data states.
+     * @return the list of steps stored in the given file.
+     * @throws IOException if an I/O error occurs, or if the file does not contain an evolution sequence.
+     */
+    static List<SampleSet<SystemState>> read(Path file, Function<DataState, ? extends SystemState> restore) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < 4L * Integer.BYTES) {
+                throw new IOException("File "+file+" does not contain an evolution sequence!");
+            }
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, 4L * Integer.BYTES);
+            int version = (header.getInt() == MAGIC ? header.getInt() : -1);
+            if ((version != VERSION)&&(version != VERSION_WITHOUT_MULTIPLICITIES)) {
+                throw new IOException("File "+file+" does not contain an evolution sequence!");
+            }
+            int firstStep = header.getInt();
+            int count = header.getInt();
+            long indexEntrySize = (version == VERSION ? Long.BYTES + Integer.BYTES : Long.BYTES);
+            if ((firstStep < 0)||(count < 0)||(4L * Integer.BYTES + count * indexEntrySize > fileSize)) {
+                throw new IOException("File "+file+" is corrupted!");
+            }
+            long[] offsets = new long[count+1];
+            int[] multiplicities = new int[count];
+            ByteBuffer index = map(channel, FileChannel.MapMode.READ_ONLY, 4L * Integer.BYTES, count * indexEntrySize);
+            for (int i = 0; i < count; i++) {
+                offsets[i] = index.getLong();
+            }
+            for (int i = 0; i < count; i++) {
+                multiplicities[i] = (version == VERSION ? index.getInt() : 1);
+            }
+            offsets[count] = fileSize;
+            List<SampleSet<SystemState>> result = new ArrayList<>(firstStep + count);
+            for (int i = 0; i < firstStep; i++) {
+                result.add(null);
+            }
+            for (int i = 0; i < count; i++) {
+                if ((offsets[i] < 0)||(offsets[i] > offsets[i+1])||(offsets[i+1] - offsets[i] > Integer.MAX_VALUE)||(multiplicities[i] < 1)) {
+                    throw new IOException("File "+file+" is corrupted!");
+                }
+                try {
+                    DataStateMatrix matrix = DataStateMatrix.readFrom(map(channel, FileChannel.MapMode.READ_ONLY, offsets[i], offsets[i+1] - offsets[i]));
+                    SampleSet<SystemState> step = SampleSet.of(matrix, restore);
+                    result.add(multiplicities[i] == 1 ? step : step.replica(multiplicities[i]));
+                } catch (IllegalArgumentException | BufferUnderflowException e) {
+                    throw new IOException("File "+file+" is corrupted!", e);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+        return channel.map(mode, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+}
@@ -48,4 +48,13 @@ public interface SimulationMonitor {
      */
     boolean hasBeenCancelled();
 
+    /**
+     * This method is invoked each time a step has been generated, to report the progress of the generation.
+     * By default, progress is ignored.
+     *
+     * @param progress the progress of the generation.
+     */
+    default void progressOfSampling(SimulationProgress progress) {
+    }
+
 }
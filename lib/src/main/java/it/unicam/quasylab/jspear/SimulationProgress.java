@@ -0,0 +1,62 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import java.time.Duration;
+
+/**
+ * This record describes the progress of the generation of an evolution sequence up to a given step.
+ *
+ * @param step the last generated step.
+ * @param targetStep the step the generation has to reach.
+ * @param generatedSteps number of steps generated since the generation started.
+ * @param samples number of samples generated since the generation started.
+ * @param elapsed time elapsed since the generation started.
+ * @param allocatedBytes an estimate of the bytes allocated by the thread generating the sequence since the
+ *                       generation started, or <code>-1</code> if the running virtual machine does not support
+ *                       allocation measurement.
+ */
+public record SimulationProgress(int step, int targetStep, int generatedSteps, long samples, Duration elapsed, long allocatedBytes) {
+
+    /**
+     * Returns the number of samples generated per second.
+     *
+     * @return the number of samples generated per second.
+     */
+    public double samplesPerSecond() {
+        long nanos = elapsed.toNanos();
+        return (nanos == 0 ? 0.0 : samples * 1.0e9 / nanos);
+    }
+
+    /**
+     * Returns the estimated time needed to reach the target step, assuming that the remaining steps take
+     * on average as long as the ones already generated.
+     *
+     * @return the estimated time needed to reach the target step.
+     */
+    public Duration estimatedTimeToCompletion() {
+        int remaining = Math.max(0, targetStep - step);
+        return (generatedSteps == 0 ? Duration.ZERO : elapsed.dividedBy(generatedSteps).multipliedBy(remaining));
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import java.util.Arrays;
+
+/**
+ * Append-only store of the steps of an evolution sequence. Steps are stored in chunks of fixed size, so that
+ * adding a step never copies the already stored ones. Steps are added by a single thread at a time, while they
+ * can be read concurrently by any number of threads without locking: each step is published by the volatile
+ * write of the length of the store, hence a step whose index is less than the length read by a thread is
+ * visible to that thread.
+ *
+ * @param <T> type of stored steps.
+ */
+final class StepStore<T> {
+
+    private static final int CHUNK_BITS = 6;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile Object[][] chunks = new Object[4][];
+
+    private volatile int length;
+
+    /**
+     * Returns the number of steps added to this store.
+     *
+     * @return the number of steps added to this store.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Returns the step with the given index, or <code>null</code> if the step has been released.
+     *
+     * @param i step index.
+     * @return the step with the given index, or <code>null</code> if the step has been released.
+     * @throws IndexOutOfBoundsException if <code>((i&lt;0)||(i&gt;=length()))</code>.
+     */
+    @SuppressWarnings("unchecked")
+    T get(int i) {
+        if ((i<0)||(i>=length)) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        Object[] chunk = chunks[i >>> CHUNK_BITS];
+        return (chunk == null ? null : (T) chunk[i & CHUNK_MASK]);
+    }
+
+    /**
+     * Adds the given step at the end of this store. This method must not be invoked concurrently.
+     *
+     * @param step the added step.
+     */
+    void add(T step) {
+        int i = length;
+        int c = i >>> CHUNK_BITS;
+        Object[][] current = chunks;
+        if (c == current.length) {
+            current = Arrays.copyOf(current, 2*current.length);
+            chunks = current;
+        }
+        if (current[c] == null) {
+            current[c] = new Object[CHUNK_SIZE];
+        }
+        current[c][i & CHUNK_MASK] = step;
+        length = i+1;
+    }
+
+    /**
+     * Releases the steps with index in the interval <code>[from, to)</code>. Chunks whose steps are all
+     * released are discarded. This method must not be invoked concurrently with {@link #add(Object)}.
+     *
+     * @param from index of the first released step.
+     * @param to index of the first step that is not released.
+     */
+    void release(int from, int to) {
+        Object[][] current = chunks;
+        for (int i = from; i < to; i++) {
+            Object[] chunk = current[i >>> CHUNK_BITS];
+            if (chunk != null) {
+                chunk[i & CHUNK_MASK] = null;
+            }
+        }
+        for (int c = from >>> CHUNK_BITS; c < (to >>> CHUNK_BITS); c++) {
+            if ((c << CHUNK_BITS) >= from || isReleased(current[c])) {
+                current[c] = null;
+            }
+        }
+    }
+
+    private static boolean isReleased(Object[] chunk) {
+        if (chunk != null) {
+            for (Object o : chunk) {
+                if (o != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
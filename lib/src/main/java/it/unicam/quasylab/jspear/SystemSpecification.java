@@ -30,6 +30,7 @@ import it.unicam.quasylab.jspear.robtl.RobustnessFunction;
 import it.unicam.quasylab.jspear.robtl.TruthValues;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.stream.IntStream;
 
@@ -198,9 +199,7 @@ public class SystemSpecification {
      * @param <T> interpretation domain
      */
     private <T> void eval(RobustnessFunction<T> evaluationFunction, int sampleSize, int from, int by, T[] data) {
-        for(int i=0; i<data.length; i++) {
-            data[i] = eval(evaluationFunction, sampleSize, from+by*i);
-        }
+        eval(evaluationFunction, sampleSize, IntStream.range(0, data.length).map(i -> from+by*i).toArray(), data);
     }
 
     /**
@@ -215,9 +214,8 @@ public class SystemSpecification {
      * @param <T> interpretation domain
      */
     private <T> void eval(RobustnessFunction<T> evaluationFunction, int sampleSize, int[] steps, T[] data) {
-        for(int i=0; i<data.length; i++) {
-            data[i] = eval(evaluationFunction, sampleSize, steps[i]);
-        }
+        T[] values = evaluationFunction.eval(sampleSize, steps, getSequence(), n -> Arrays.copyOf(data, n));
+        System.arraycopy(values, 0, data, 0, data.length);
     }
 
     /**
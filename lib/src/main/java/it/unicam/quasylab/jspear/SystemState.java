@@ -23,6 +23,7 @@
 package it.unicam.quasylab.jspear;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateBuffer;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
@@ -55,6 +56,21 @@ public interface SystemState {
      */
     SystemState sampleNext(RandomGenerator rg);
 
+    /**
+     * Returns one state sampled among the ones reachable from this state in one step, as
+     * {@link #sampleNext(RandomGenerator)} does, whose data state may be stored in the given buffer instead of
+     * being allocated. This method is used when the states that are sampled are not retained, since the data
+     * state of the returned state is overwritten by the following uses of the buffer, unless it is detached
+     * from the buffer (see {@link DataStateBuffer}). By default, the buffer is not used.
+     *
+     * @param rg random generator used sample random expression.
+     * @param buffer buffer where data states can be stored.
+     * @return one state sampled among the one reachable from this state in one step.
+     */
+    default SystemState sampleNext(RandomGenerator rg, DataStateBuffer buffer) {
+        return sampleNext(rg);
+    }
+
     /**
      * Returns one state sampled among the ones reachable from this state that satisfy a set of conditions.
      *
@@ -119,7 +135,7 @@ public interface SystemState {
         double[] result = new double[steps];
         for (int i = 0; i < steps; i++) {
             result[i] = Arrays.stream(current.evalPenaltyFunction(f)).average().orElse(Double.NaN);
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.sampleNext(rg);
         }
         return result;
     }
@@ -129,7 +145,7 @@ public interface SystemState {
         double[] result = new double[steps];
         for (int i = 0; i < steps; i++) {
             result[i] = Arrays.stream(current.evalPenaltyFunction(f)).max().orElse(Double.NaN);
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.sampleNext(rg);
         }
         return result;
     }
@@ -243,10 +259,10 @@ public interface SystemState {
         for (int i = 0; i < steps; i++) {
             Optional<DataStateFunction> perturbationEffects = p.effect();
             if (perturbationEffects.isPresent()) {
-                current = current.apply(s -> s.apply(rg, perturbationEffects.get()));
+                current = current.apply(rg, (r, s) -> s.apply(r, perturbationEffects.get()));
             }
             result[i] = Arrays.stream(current.evalPenaltyFunction(f)).average().orElse(Double.NaN);
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.sampleNext(rg);
             p = p.step();
         }
         return result;
@@ -276,13 +292,13 @@ public interface SystemState {
 
             Optional<DataStateFunction> perturbationEffects = p.effect();
             if (perturbationEffects.isPresent()) {
-                current = current.apply(s -> s.apply(rg, perturbationEffects.get()));
+                current = current.apply(rg, (r, s) -> s.apply(r, perturbationEffects.get()));
             }
 
             for (int j = 0; j < F.size(); j++) {
                 result[i][j] = Arrays.stream(current.evalPenaltyFunction(F.get(j))).average().orElse(Double.NaN);
             }
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.sampleNext(rg);
             p = p.step();
         }
         return result;
@@ -309,12 +325,12 @@ public interface SystemState {
         for (int i = 0; i < steps; i++) {
             Optional<DataStateFunction> perturbationEffects = p.effect();
             if (perturbationEffects.isPresent()) {
-                current = current.apply(s -> s.apply(rg, perturbationEffects.get()));
+                current = current.apply(rg, (r, s) -> s.apply(r, perturbationEffects.get()));
             }
             for (int j = 0; j < F.size(); j++) {
                 result[i][j] = Arrays.stream(current.evalPenaltyFunction(F.get(j))).min().orElse(Double.NaN);
             }
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.sampleNext(rg);
             p = p.step();
         }
         return result;
@@ -341,12 +357,12 @@ public interface SystemState {
         for (int i = 0; i < steps; i++) {
             Optional<DataStateFunction> perturbationEffects = p.effect();
             if (perturbationEffects.isPresent()) {
-                current = current.apply(s -> s.apply(rg, perturbationEffects.get()));
+                current = current.apply(rg, (r, s) -> s.apply(r, perturbationEffects.get()));
             }
             for (int j = 0; j < F.size(); j++) {
                 result[i][j] = Arrays.stream(current.evalPenaltyFunction(F.get(j))).max().orElse(Double.NaN);
             }
-            current = current.apply(s -> s.sampleNext(rg));
+            current = current.sampleNext(rg);
             p = p.step();
         }
         return result;
@@ -26,10 +26,14 @@ import it.unicam.quasylab.jspear.controller.Controller;
 import it.unicam.quasylab.jspear.controller.EffectStep;
 import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
+import it.unicam.quasylab.jspear.ds.DataStateBuffer;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.List;
+
 /**
  * Represents a system controlled by controller.
  */
@@ -65,36 +69,65 @@ public class TimedSystem implements SystemState {
         return new TimedSystem(step.next(), environment, environment.apply(rg, state.apply(step.effect())),generateNextTime);
     }
 
+    /**
+     * Micro steps are performed directly on the controller and on the data state, without creating a timed system
+     * for each of them. Data states produced by a micro step are not visible outside this method, hence they are
+     * stored in a buffer where the effects of the following micro steps are applied in place. Only the resulting
+     * data state is detached from the buffer.
+     */
     @Override
     public SystemState sampleNext(RandomGenerator rg) {
-        TimedSystem next = new TimedSystem(this.controller,this.environment,this.state,this.generateNextTime);
-        DataState ds = next.state;
-        double t = next.generateNextTime.eval(ds);
+        DataStateBuffer buffer = new DataStateBuffer();
+        TimedSystem next = sampleNext(rg, buffer);
+        buffer.detach(next.state);
+        return next;
+    }
+
+    /**
+     * Micro steps are performed as in {@link #sampleNext(RandomGenerator)}, and the resulting data state is
+     * left in the given buffer.
+     */
+    @Override
+    public TimedSystem sampleNext(RandomGenerator rg, DataStateBuffer buffer) {
+        Controller current = this.controller;
+        DataState ds = this.state;
+        double t = generateNextTime.eval(ds);
         double sum_t = t + ds.getTimeReal();
         while(sum_t < ds.getTimeStep() + ds.getGranularity()){
-            next = next.sampleNextMicro(rg);
-            ds = next.getDataState();
+            EffectStep<Controller> step = current.next(rg, ds);
+            current = step.next();
+            ds = environment.apply(rg, applyEffect(buffer, ds, step.effect()));
             ds.setTimeDelta(t);
             ds.setTimeReal(t + ds.getTimeReal());
-            t = next.generateNextTime.eval(ds);
+            t = generateNextTime.eval(ds);
             sum_t = sum_t + t;
         }
-        next = next.sampleNextMicro(rg);
-        ds = next.getDataState();
+        EffectStep<Controller> step = current.next(rg, ds);
+        ds = environment.apply(rg, applyEffect(buffer, ds, step.effect()));
         ds.setTimeDelta(t);
         ds.setTimeReal(t + ds.getTimeReal());
         ds.setTimeStep(ds.getTimeStep() + ds.getGranularity());
-        return next;
+        return new TimedSystem(step.next(), environment, ds, generateNextTime);
+    }
+
+    /**
+     * The data state of this system is never overwritten, while the ones produced by the micro steps are updated
+     * in place.
+     */
+    private DataState applyEffect(DataStateBuffer buffer, DataState ds, List<DataStateUpdate> effect) {
+        return (ds == this.state ? buffer.apply(ds, effect) : buffer.update(ds, effect));
     }
 
     @Override
     public SystemState sampleNextCond(RandomGenerator rg, DataStateBooleanExpression condition) {
+        DataStateBuffer buffer = new DataStateBuffer();
         SystemState result = this;
         DataState ds = this.state;
         while(!condition.eval(ds)) {
-            result = result.sampleNext(rg);
+            result = result.sampleNext(rg, buffer);
             ds = result.getDataState();
             }
+        buffer.detach(ds);
         return result;
     }
 
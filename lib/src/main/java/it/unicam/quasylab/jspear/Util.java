@@ -132,7 +132,8 @@ public class Util {
      * @param <T> model domain.
      */
     public static <T extends SystemState> double[][] evalDistanceExpression(EvolutionSequence sequence, EvolutionSequence sequence2, int from, int to, DistanceExpression ...  expressions) {
-        return IntStream.range(from, to).mapToObj(i -> Stream.of(expressions).mapToDouble(expr -> expr.compute(i, sequence, sequence2)).toArray()).toArray(double[][]::new);
+        double[][] values = Stream.of(expressions).map(expr -> expr.compute(from, to-1, sequence, sequence2)).toArray(double[][]::new);
+        return IntStream.range(0, Math.max(0, to-from)).mapToObj(i -> Stream.of(values).mapToDouble(v -> v[i]).toArray()).toArray(double[][]::new);
     }
 
     /**
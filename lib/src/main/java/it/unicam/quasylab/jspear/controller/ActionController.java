@@ -65,4 +65,13 @@ public class ActionController implements Controller {
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
         return new EffectStep<>(action.apply(rg, state), nextController);
     }
+
+    BiFunction<RandomGenerator, DataState, List<DataStateUpdate>> getAction() {
+        return action;
+    }
+
+    Controller getNextController() {
+        return nextController;
+    }
+
 }
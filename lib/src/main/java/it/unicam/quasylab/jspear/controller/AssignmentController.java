@@ -63,4 +63,13 @@ public class AssignmentController implements Controller {
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
         return nextController.next(rg, state).applyBefore(assignment.apply(rg, state));
     }
+
+    BiFunction<RandomGenerator, DataState, List<DataStateUpdate>> getAssignment() {
+        return assignment;
+    }
+
+    Controller getNextController() {
+        return nextController;
+    }
+
 }
@@ -33,7 +33,7 @@ public class ControllerRegistry {
 
     public static final Controller NIL = new NilController();
 
-    private final Map<String, Controller> controllers;
+    private final Map<String, ReferenceController> controllers;
 
     /**
      * Creates an empty registry.
@@ -49,7 +49,7 @@ public class ControllerRegistry {
      * @param controller controller associated with the given name.
      */
     public void set(String name, Controller controller) {
-        this.controllers.put(name, controller);
+        reference(name).setController(controller);
     }
 
     /**
@@ -60,7 +60,8 @@ public class ControllerRegistry {
      * @return the controller associated with the given name.
      */
     public Controller get(String name) {
-        return this.controllers.getOrDefault(name, NIL);
+        ReferenceController reference = this.controllers.get(name);
+        return (reference == null ? NIL : reference.getController());
     }
 
     /**
@@ -68,8 +69,22 @@ public class ControllerRegistry {
      * @param name a name.
      * @return a controller that refers to the one defined in this registry with the given name.
      */
-    public Controller reference(String name) {
-        return (rg, ds) -> get(name).next(rg, ds);
+    public ReferenceController reference(String name) {
+        return this.controllers.computeIfAbsent(name, ReferenceController::new);
+    }
+
+    /**
+     * Compiles, in the given table, all the controllers defined in this registry. After this method is invoked,
+     * references to this registry execute the compiled controllers. Compilation takes a snapshot of the registry:
+     * a controller set after this method is invoked is executed without being compiled, while compiled
+     * controllers keep referring to the controllers defined at compilation time.
+     *
+     * @param table table where controllers are compiled.
+     */
+    public void compile(ControllerTable table) {
+        for (ReferenceController reference : this.controllers.values()) {
+            reference.setCompiled(table.compile(reference.getController()));
+        }
     }
 
 }
@@ -0,0 +1,570 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.controller;
+
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.ds.DataStateUpdateBuffer;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A controller table contains compiled controllers. Compiling a controller resolves, once and for all, the
+ * structure of the controller: references are replaced by the controllers they refer to, and each state the
+ * controller can reach is stored in this table and identified by an integer index. Executing a compiled
+ * controller does not create new states: the controller reached after a step is one of the states in
+ * the table, and the parallel composition or the interleaving of two states is created only the first time
+ * it is reached. Also the controllers waiting for a number of steps are states of the table, created the
+ * first time each number of remaining steps is reached. Only the ones waiting for at least
+ * {@link #MAX_COUNTDOWN} steps are small objects created for each sample, so that the size of the table
+ * does not depend on very long waits. Controllers whose structure is not known, like the ones defined by
+ * lambda expressions, are executed as they are, and their compositions are created for each sample.
+ */
+public final class ControllerTable {
+
+    /**
+     * Waits of at least this number of remaining steps are not states of the table.
+     */
+    public static final int MAX_COUNTDOWN = 256;
+
+    private final List<Node> states = new ArrayList<>();
+    private final Map<Controller, Node> compiled = new IdentityHashMap<>();
+    private final Product parallel = new Product((product, left, right) -> new Parallel(left, right), (product, left, right) -> new ParallelNode(left, right));
+    private final Map<Double, Product> interleavings = new HashMap<>();
+
+    /**
+     * Returns the compiled version of the given controller. The returned controller has the same behaviour of
+     * <code>controller</code>, and shares with it the random values sampled at each step.
+     *
+     * @param controller the controller to compile.
+     * @return the compiled version of the given controller.
+     * @throws IllegalArgumentException if the controller can reach itself without performing any step.
+     */
+    public synchronized Controller compile(Controller controller) {
+        return node(controller);
+    }
+
+    /**
+     * Returns the number of states in this table.
+     *
+     * @return the number of states in this table.
+     */
+    public synchronized int size() {
+        return states.size();
+    }
+
+    private Node node(Controller controller) {
+        Controller target = unfold(controller);
+        if (target == null) {
+            return null;
+        }
+        Node result = own(target);
+        if (result == null) {
+            result = compiled.get(target);
+        }
+        if (result == null) {
+            result = doCompile(target);
+            compiled.put(target, result);
+        }
+        if (target != controller) {
+            compiled.put(controller, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first controller that is not a reference or an exec controller reached from the given one.
+     */
+    private Controller unfold(Controller controller) {
+        Set<Controller> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        while ((own(controller) == null)&&((controller instanceof ReferenceController)||(controller instanceof ExecController))) {
+            if (!visited.add(controller)) {
+                throw new IllegalArgumentException("Controller "+controller+" can reach itself without performing any step!");
+            }
+            controller = (controller instanceof ReferenceController reference ? reference.getController() : ((ExecController) controller).getNextController());
+        }
+        return controller;
+    }
+
+    private Node doCompile(Controller controller) {
+        if (controller instanceof NilController) {
+            return new NilNode();
+        }
+        if (controller instanceof ActionController action) {
+            ActionNode result = placeholder(controller, new ActionNode(action.getAction()));
+            result.nextNode = node(action.getNextController());
+            return result;
+        }
+        if (controller instanceof AssignmentController assignment) {
+            AssignmentNode result = placeholder(controller, new AssignmentNode(assignment.getAssignment()));
+            result.nextNode = node(assignment.getNextController());
+            return result;
+        }
+        if (controller instanceof IfThenElseController ifThenElse) {
+            IfThenElseNode result = placeholder(controller, new IfThenElseNode(ifThenElse.getGuard()));
+            result.thenNode = node(ifThenElse.getThenController());
+            result.elseNode = node(ifThenElse.getElseController());
+            return result;
+        }
+        if (controller instanceof GenerativeChoiceController choice) {
+            ChoiceNode result = placeholder(controller, new ChoiceNode(choice.getProbability()));
+            result.leftNode = node(choice.getLeftController());
+            result.rightNode = node(choice.getRightController());
+            return result;
+        }
+        if (controller instanceof StepController step) {
+            StepNode result = placeholder(controller, new StepNode(step.getSteps()));
+            result.nextNode = node(step.getNextController());
+            return result;
+        }
+        if (controller instanceof ParallelController parallelController) {
+            Node left = node(parallelController.getLeftController());
+            Node right = node(parallelController.getRightController());
+            if ((left != null)&&(right != null)) {
+                return parallel.get(left, right);
+            }
+        }
+        if (controller instanceof ProbabilisticInterleavingController interleaving) {
+            Node left = node(interleaving.getLeftController());
+            Node right = node(interleaving.getRightController());
+            if ((left != null)&&(right != null)) {
+                return interleaving(interleaving.getProbability()).get(left, right);
+            }
+        }
+        return new OpaqueNode(controller);
+    }
+
+    /**
+     * Records the node associated with a controller before its successors are compiled, so that cycles in the
+     * controller are compiled as cycles in the table.
+     */
+    private <N extends Node> N placeholder(Controller controller, N node) {
+        compiled.put(controller, node);
+        return node;
+    }
+
+    private Product interleaving(double p) {
+        return interleavings.computeIfAbsent(p, k -> new Product((product, l, r) -> new Interleaving(product, k, l, r), (product, l, r) -> new InterleavingNode(product, k, l, r)));
+    }
+
+    /**
+     * Returns the state of this table corresponding to the given controller, or <code>null</code> if the
+     * controller has not been compiled in this table.
+     */
+    private Node own(Controller controller) {
+        if ((controller instanceof Node node)&&(node.owner() == this)) {
+            return node;
+        }
+        if ((controller instanceof ReferenceController reference)&&(reference.getCompiled() instanceof Node node)&&(node.owner() == this)) {
+            return node;
+        }
+        return null;
+    }
+
+    /**
+     * A state of this table.
+     */
+    private abstract class Node implements Controller {
+
+        private final int index;
+
+        private Node() {
+            this.index = states.size();
+            states.add(this);
+        }
+
+        private ControllerTable owner() {
+            return ControllerTable.this;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName()+"@"+index;
+        }
+    }
+
+    private final class NilNode extends Node {
+
+        private final EffectStep<Controller> step = new EffectStep<>(DataStateUpdateBuffer.EMPTY, this);
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return step;
+        }
+    }
+
+    private final class ActionNode extends Node {
+
+        private final BiFunction<RandomGenerator, DataState, List<DataStateUpdate>> action;
+        private Node nextNode;
+
+        private ActionNode(BiFunction<RandomGenerator, DataState, List<DataStateUpdate>> action) {
+            this.action = action;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return new EffectStep<>(action.apply(rg, state), nextNode);
+        }
+    }
+
+    private final class AssignmentNode extends Node {
+
+        private final BiFunction<RandomGenerator, DataState, List<DataStateUpdate>> assignment;
+        private Node nextNode;
+
+        private AssignmentNode(BiFunction<RandomGenerator, DataState, List<DataStateUpdate>> assignment) {
+            this.assignment = assignment;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return nextNode.next(rg, state).applyBefore(assignment.apply(rg, state));
+        }
+    }
+
+    private final class IfThenElseNode extends Node {
+
+        private final BiPredicate<RandomGenerator, DataState> guard;
+        private Node thenNode;
+        private Node elseNode;
+
+        private IfThenElseNode(BiPredicate<RandomGenerator, DataState> guard) {
+            this.guard = guard;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return (guard.test(rg, state) ? thenNode.next(rg, state) : elseNode.next(rg, state));
+        }
+    }
+
+    private final class ChoiceNode extends Node {
+
+        private final double p;
+        private Node leftNode;
+        private Node rightNode;
+
+        private ChoiceNode(double p) {
+            this.p = p;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return (rg.nextDouble() <= p ? leftNode.next(rg, state) : rightNode.next(rg, state));
+        }
+    }
+
+    /**
+     * A step controller. The controllers idling for <code>k</code> further steps are the states stored in
+     * <code>countdowns</code> at index <code>k</code>, which are created the first time they are reached.
+     */
+    private final class StepNode extends Node {
+
+        private final ToIntBiFunction<RandomGenerator, DataState> steps;
+        private Node nextNode;
+        private volatile EffectStep<Controller> done;
+        private volatile CountdownNode[] countdowns = new CountdownNode[0];
+
+        private StepNode(ToIntBiFunction<RandomGenerator, DataState> steps) {
+            this.steps = steps;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            int numberOfSteps = steps.applyAsInt(rg, state);
+            return (numberOfSteps <= 0 ? done() : countdown(numberOfSteps - 1));
+        }
+
+        /**
+         * Returns the step leading to the controller idling for <code>k</code> further steps.
+         */
+        private EffectStep<Controller> countdown(int k) {
+            if (k >= MAX_COUNTDOWN) {
+                return new Countdown(this, k).reached();
+            }
+            CountdownNode[] current = countdowns;
+            CountdownNode result = (k < current.length ? current[k] : null);
+            return (result != null ? result : createCountdown(k)).reached;
+        }
+
+        private CountdownNode createCountdown(int k) {
+            synchronized (ControllerTable.this) {
+                CountdownNode[] current = countdowns;
+                if ((k < current.length)&&(current[k] != null)) {
+                    return current[k];
+                }
+                CountdownNode[] updated = Arrays.copyOf(current, Math.max(k + 1, current.length));
+                updated[k] = new CountdownNode(this, k);
+                countdowns = updated;
+                return updated[k];
+            }
+        }
+
+        private EffectStep<Controller> done() {
+            EffectStep<Controller> result = done;
+            if (result == null) {
+                result = new EffectStep<>(DataStateUpdateBuffer.EMPTY, nextNode);
+                done = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The state idling for <code>k</code> further steps before behaving like the successor of a step
+     * controller.
+     */
+    private final class CountdownNode extends Node {
+
+        private final StepNode owner;
+        private final int k;
+        private final EffectStep<Controller> reached = new EffectStep<>(DataStateUpdateBuffer.EMPTY, this);
+
+        private CountdownNode(StepNode owner, int k) {
+            this.owner = owner;
+            this.k = k;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return (k <= 0 ? owner.done() : owner.countdown(k - 1));
+        }
+    }
+
+    /**
+     * The controller idling for at least {@link #MAX_COUNTDOWN} further steps, which is not a state of this
+     * table and is created for each sample.
+     */
+    private static final class Countdown implements Controller {
+
+        private final StepNode owner;
+        private final int k;
+
+        private Countdown(StepNode owner, int k) {
+            this.owner = owner;
+            this.k = k;
+        }
+
+        private EffectStep<Controller> reached() {
+            return new EffectStep<>(DataStateUpdateBuffer.EMPTY, this);
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return owner.countdown(k - 1);
+        }
+    }
+
+    private final class ParallelNode extends Node {
+
+        private final Node leftNode;
+        private final Node rightNode;
+
+        private ParallelNode(Node leftNode, Node rightNode) {
+            this.leftNode = leftNode;
+            this.rightNode = rightNode;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return parallelStep(leftNode, rightNode, rg, state);
+        }
+    }
+
+    private final class InterleavingNode extends Node {
+
+        private final Product product;
+        private final double p;
+        private final Node leftNode;
+        private final Node rightNode;
+
+        private InterleavingNode(Product product, double p, Node leftNode, Node rightNode) {
+            this.product = product;
+            this.p = p;
+            this.leftNode = leftNode;
+            this.rightNode = rightNode;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return interleavingStep(product, p, leftNode, rightNode, rg, state);
+        }
+    }
+
+    /**
+     * The parallel composition of two controllers that are not both states of this table, like a long
+     * countdown or a controller reached from a lambda expression, and a state. The composition is created for
+     * each sample, and it is replaced by a state of this table as soon as both its components are.
+     */
+    private final class Parallel implements Controller {
+
+        private final Controller left;
+        private final Controller right;
+
+        private Parallel(Controller left, Controller right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return parallelStep(left, right, rg, state);
+        }
+    }
+
+    /**
+     * The interleaving of two controllers that are not both states of this table, handled as {@link Parallel}.
+     */
+    private static final class Interleaving implements Controller {
+
+        private final Product product;
+        private final double p;
+        private final Controller left;
+        private final Controller right;
+
+        private Interleaving(Product product, double p, Controller left, Controller right) {
+            this.product = product;
+            this.p = p;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return interleavingStep(product, p, left, right, rg, state);
+        }
+    }
+
+    private EffectStep<Controller> parallelStep(Controller left, Controller right, RandomGenerator rg, DataState state) {
+        return left.next(rg, state).parallel(parallel::get, right.next(rg, state));
+    }
+
+    private static EffectStep<Controller> interleavingStep(Product product, double p, Controller left, Controller right, RandomGenerator rg, DataState state) {
+        if (rg.nextDouble() <= p) {
+            EffectStep<Controller> step = left.next(rg, state);
+            return new EffectStep<>(step.effect(), product.get(step.next(), right));
+        } else {
+            EffectStep<Controller> step = right.next(rg, state);
+            return new EffectStep<>(step.effect(), product.get(left, step.next()));
+        }
+    }
+
+    private final class OpaqueNode extends Node {
+
+        private final Controller controller;
+
+        private OpaqueNode(Controller controller) {
+            this.controller = controller;
+        }
+
+        @Override
+        public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+            return controller.next(rg, state);
+        }
+    }
+
+    /**
+     * The states obtained by composing two states of this table. Compositions are indexed by the indexes of
+     * their components. When one of the components is not a state of this table, the composition is
+     * created with <code>fallback</code> for each sample.
+     */
+    private final class Product {
+
+        private final Composition fallback;
+        private final NodeFactory factory;
+        private volatile Node[][] nodes = new Node[0][];
+
+        private Product(Composition fallback, NodeFactory factory) {
+            this.fallback = fallback;
+            this.factory = factory;
+        }
+
+        private Controller get(Controller left, Controller right) {
+            Node leftNode = own(left);
+            Node rightNode = own(right);
+            if ((leftNode == null)||(rightNode == null)) {
+                return fallback.create(this, left, right);
+            }
+            Node result = lookup(nodes, leftNode.index, rightNode.index);
+            return (result != null ? result : create(leftNode, rightNode));
+        }
+
+        private Node get(Node left, Node right) {
+            return (Node) get((Controller) left, right);
+        }
+
+        private Node lookup(Node[][] current, int left, int right) {
+            if (left < current.length) {
+                Node[] row = current[left];
+                if ((row != null)&&(right < row.length)) {
+                    return row[right];
+                }
+            }
+            return null;
+        }
+
+        private Node create(Node left, Node right) {
+            synchronized (ControllerTable.this) {
+                Node[][] current = nodes;
+                Node result = lookup(current, left.index, right.index);
+                if (result == null) {
+                    result = factory.create(this, left, right);
+                    Node[][] updated = Arrays.copyOf(current, Math.max(left.index + 1, current.length));
+                    Node[] row = (updated[left.index] == null ? new Node[0] : updated[left.index]);
+                    row = Arrays.copyOf(row, Math.max(right.index + 1, row.length));
+                    row[right.index] = result;
+                    updated[left.index] = row;
+                    nodes = updated;
+                }
+                return result;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface NodeFactory {
+
+        Node create(Product product, Node left, Node right);
+
+    }
+
+    @FunctionalInterface
+    private interface Composition {
+
+        Controller create(Product product, Controller left, Controller right);
+
+    }
+
+}
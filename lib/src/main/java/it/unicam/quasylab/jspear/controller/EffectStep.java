@@ -23,24 +23,34 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.ds.DataStateUpdateBuffer;
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.function.BinaryOperator;
 import java.util.function.UnaryOperator;
-import java.util.stream.Stream;
 
 /**
  * Identifies a step executed by a controller.
  */
 public record EffectStep<T>(List<DataStateUpdate> effect, T next) {
 
+    /**
+     * Creates a step with the given effect and next controller. The effect is stored in a
+     * {@link DataStateUpdateBuffer}, so that steps can be combined without copying their updates.
+     *
+     * @param effect updates of the step.
+     * @param next controller reached after the step.
+     */
+    public EffectStep {
+        effect = DataStateUpdateBuffer.of(effect);
+    }
+
     public EffectStep(List<DataStateUpdate> effect) {
         this(effect, null);
     }
 
     public EffectStep() {
-        this(List.of());
+        this(DataStateUpdateBuffer.EMPTY);
     }
 
     /**
@@ -60,10 +70,7 @@ public record EffectStep<T>(List<DataStateUpdate> effect, T next) {
      * @return a step consisting of the parallel application of this step with the one given as parameters.
      */
     public EffectStep<T> parallel(BinaryOperator<T> stepOperator, EffectStep<T> other) {
-        List<DataStateUpdate> newEffects = new LinkedList<>();
-        newEffects.addAll(this.effect);
-        newEffects.addAll(other.effect);
-        return new EffectStep<>(newEffects, stepOperator.apply(this.next, other.next));
+        return new EffectStep<>(updates().concat(other.updates()), stepOperator.apply(this.next, other.next));
     }
 
     /**
@@ -76,7 +83,7 @@ public record EffectStep<T>(List<DataStateUpdate> effect, T next) {
         if (updates.isEmpty()) {
             return this;
         } else {
-            return new EffectStep<>(Stream.concat(updates.stream(), this.effect.stream()).toList(), next);
+            return new EffectStep<>(DataStateUpdateBuffer.of(updates).concat(updates()), next);
         }
     }
 
@@ -88,9 +95,11 @@ public record EffectStep<T>(List<DataStateUpdate> effect, T next) {
      */
     public EffectStep<T> applyAfter(EffectStep<T> apply) {
         if (this.isCompleted()) return this;
-        LinkedList<DataStateUpdate> updates = new LinkedList<>(this.effect);
-        updates.addAll(apply.effect);
-        return new EffectStep<>(updates, apply.next);
+        return new EffectStep<>(updates().concat(apply.updates()), apply.next);
+    }
+
+    private DataStateUpdateBuffer updates() {
+        return (DataStateUpdateBuffer) effect;
     }
 
     /**
@@ -55,4 +55,8 @@ public class ExecController implements Controller {
         return nextController.next(rg, state);
     }
 
+    Controller getNextController() {
+        return nextController;
+    }
+
 }
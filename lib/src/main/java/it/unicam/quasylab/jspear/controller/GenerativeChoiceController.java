@@ -76,4 +76,16 @@ public class GenerativeChoiceController implements Controller{
         }
     }
 
+    double getProbability() {
+        return p;
+    }
+
+    Controller getLeftController() {
+        return leftController;
+    }
+
+    Controller getRightController() {
+        return rightController;
+    }
+
 }
@@ -68,5 +68,16 @@ public class IfThenElseController implements Controller{
         return (guard.test(rg, state)?thenController.next(rg, state):elseController.next(rg, state));
     }
 
+    BiPredicate<RandomGenerator, DataState> getGuard() {
+        return guard;
+    }
+
+    Controller getThenController() {
+        return thenController;
+    }
+
+    Controller getElseController() {
+        return elseController;
+    }
 
 }
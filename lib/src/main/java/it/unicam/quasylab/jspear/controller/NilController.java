@@ -23,10 +23,9 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateUpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
-import java.util.List;
-
 /**
  * Class NilController implements a controller that does not execute any action.
  */
@@ -42,7 +41,7 @@ public class NilController implements Controller {
      */
     @Override
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
-        return new EffectStep<>(List.of(), this);
+        return new EffectStep<>(DataStateUpdateBuffer.EMPTY, this);
     }
 
 }
@@ -59,4 +59,13 @@ public class ParallelController implements Controller {
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
         return this.leftController.next(rg, state).parallel(ParallelController::new, this.rightController.next(rg, state));
     }
+
+    Controller getLeftController() {
+        return leftController;
+    }
+
+    Controller getRightController() {
+        return rightController;
+    }
+
 }
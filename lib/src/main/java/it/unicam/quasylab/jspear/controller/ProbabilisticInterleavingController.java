@@ -86,4 +86,17 @@ public class ProbabilisticInterleavingController implements Controller {
             return new EffectStep<>(updates, c);
         }
     }
+
+    double getProbability() {
+        return p;
+    }
+
+    Controller getLeftController() {
+        return leftController;
+    }
+
+    Controller getRightController() {
+        return rightController;
+    }
+
 }
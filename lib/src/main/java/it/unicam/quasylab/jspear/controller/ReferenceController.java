@@ -0,0 +1,92 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.controller;
+
+import it.unicam.quasylab.jspear.ds.DataState;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Class ReferenceController implements a controller that behaves like the one associated with a name in a
+ * {@link ControllerRegistry}. References are resolved each time the controller is executed, so a reference
+ * can be used before the controller it refers to has been defined. Each registry creates a single reference
+ * for each name, and the reference directly stores the referred controller.
+ */
+public final class ReferenceController implements Controller {
+
+    private final String name;
+    private volatile Controller controller;
+    private volatile Controller compiled;
+
+    ReferenceController(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of this reference.
+     *
+     * @return the name of this reference.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the referred controller, or {@link ControllerRegistry#NIL} if no controller has been associated with
+     * the name of this reference.
+     *
+     * @return the referred controller.
+     */
+    Controller getController() {
+        Controller current = controller;
+        return (current == null ? ControllerRegistry.NIL : current);
+    }
+
+    void setController(Controller controller) {
+        this.compiled = null;
+        this.controller = controller;
+    }
+
+    /**
+     * Returns the compiled version of the referred controller, or <code>null</code> if it has not been compiled.
+     *
+     * @return the compiled version of the referred controller.
+     */
+    Controller getCompiled() {
+        return compiled;
+    }
+
+    void setCompiled(Controller compiled) {
+        this.compiled = compiled;
+    }
+
+    @Override
+    public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
+        Controller current = compiled;
+        return (current == null ? getController() : current).next(rg, state);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -23,9 +23,9 @@
 package it.unicam.quasylab.jspear.controller;
 
 import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateUpdateBuffer;
 import org.apache.commons.math3.random.RandomGenerator;
 
-import java.util.LinkedList;
 import java.util.function.ToIntBiFunction;
 
 /**
@@ -80,10 +80,18 @@ public class StepController implements Controller {
     public EffectStep<Controller> next(RandomGenerator rg, DataState state) {
         int numberOfSteps = steps.applyAsInt(rg, state);
         if (numberOfSteps<=0) {
-            return new EffectStep<>(new LinkedList<>(), nextController);
+            return new EffectStep<>(DataStateUpdateBuffer.EMPTY, nextController);
         } else {
-            return new EffectStep<>(new LinkedList<>(), new StepController((rg2, ds) -> numberOfSteps-1, nextController));
+            return new EffectStep<>(DataStateUpdateBuffer.EMPTY, new StepController((rg2, ds) -> numberOfSteps-1, nextController));
         }
     }
 
+    ToIntBiFunction<RandomGenerator, DataState> getSteps() {
+        return steps;
+    }
+
+    Controller getNextController() {
+        return nextController;
+    }
+
 }
@@ -67,6 +67,14 @@ public final class ConvexCombinationDistanceExpression implements DistanceExpres
                 .sum();
     }
 
+    @Override
+    public double[] compute(int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
+        double[][] values = Arrays.stream(expressions).map(expr -> expr.compute(from, to, seq1, seq2)).toArray(double[][]::new);
+        return IntStream.range(0, Math.max(0, to-from+1))
+                .mapToDouble(j -> IntStream.range(0, weights.length).mapToDouble(i -> weights[i]*values[i][j]).sum())
+                .toArray();
+    }
+
     /**
      * @inheritDoc
      *
@@ -80,4 +88,9 @@ public final class ConvexCombinationDistanceExpression implements DistanceExpres
                 .sum()).toArray();
     }
 
+    @Override
+    public int getTimeHorizon() {
+        return Arrays.stream(expressions).mapToInt(DistanceExpression::getTimeHorizon).max().orElse(0);
+    }
+
 }
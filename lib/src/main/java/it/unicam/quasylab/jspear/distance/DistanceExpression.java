@@ -56,6 +56,8 @@ public sealed interface DistanceExpression permits
 
     /**
      * Returns the evaluation of the distance expression between the two sequences at each time step in a given interval.
+     * Expressions containing temporal operators override this method so that the evaluations of their
+     * sub-expressions are computed only once for the whole interval and then shared among the different steps.
      *
      * @param from left bound of the time interval
      * @param to right bound of the time interval
@@ -115,4 +117,15 @@ public sealed interface DistanceExpression permits
         return evalCI(new DefaultRandomGenerator(), step, seq1, seq2, m, z);
     }
 
+    /**
+     * Returns the number of steps after the evaluation step that are needed to evaluate this expression.
+     * Namely, the evaluation of this expression at step <code>t</code> only depends on the sample sets
+     * of the two sequences at steps in <code>[t, t+getTimeHorizon()]</code>.
+     *
+     * @return the number of steps after the evaluation step that are needed to evaluate this expression.
+     */
+    default int getTimeHorizon() {
+        return 0;
+    }
+
 }
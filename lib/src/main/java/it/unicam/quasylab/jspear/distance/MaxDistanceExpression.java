@@ -64,6 +64,16 @@ public final class MaxDistanceExpression implements DistanceExpression {
         return Math.max(expr1.compute(step, seq1, seq2), expr2.compute(step, seq1, seq2));
     }
 
+    @Override
+    public double[] compute(int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
+        if (from<0) {
+            throw new IllegalArgumentException();
+        }
+        double[] values1 = expr1.compute(from, to, seq1, seq2);
+        double[] values2 = expr2.compute(from, to, seq1, seq2);
+        return IntStream.range(0, values1.length).mapToDouble(i -> Math.max(values1[i], values2[i])).toArray();
+    }
+
     /**
      * @inheritDoc
      *
@@ -80,4 +90,9 @@ public final class MaxDistanceExpression implements DistanceExpression {
                 .toArray();
     }
 
+    @Override
+    public int getTimeHorizon() {
+        return Math.max(expr1.getTimeHorizon(), expr2.getTimeHorizon());
+    }
+
 }
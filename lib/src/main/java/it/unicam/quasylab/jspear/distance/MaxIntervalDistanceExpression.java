@@ -22,6 +22,7 @@
 
 package it.unicam.quasylab.jspear.distance;
 
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
 import it.unicam.quasylab.jspear.EvolutionSequence;
 import org.apache.commons.math3.random.RandomGenerator;
 import java.util.List;
@@ -72,6 +73,23 @@ public final class MaxIntervalDistanceExpression implements DistanceExpression {
         return IntStream.range(from+step, to+step).parallel().mapToDouble(i -> expression.compute(i, seq1, seq2)).max().orElse(Double.NaN);
     }
 
+    /**
+     * @inheritDoc
+     *
+     * The evaluations of <code>expression</code> are computed once on the interval
+     * <code>[from+this.from, to+this.to-1]</code>, then the maximum over each shifted interval is obtained via a sliding window.
+     */
+    @Override
+    public double[] compute(int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
+        if (from<0) {
+            throw new IllegalArgumentException();
+        }
+        if (to<from) {
+            return new double[0];
+        }
+        return SlidingWindow.max(expression.compute(from+this.from, to+this.to-1, seq1, seq2), this.to-this.from);
+    }
+
     /**
      * @inheritDoc
      *
@@ -84,11 +102,18 @@ public final class MaxIntervalDistanceExpression implements DistanceExpression {
             throw new IllegalArgumentException();
         }
         double[] res = new double[3];
-        List<double[]> resList = IntStream.range(from + step, to + step).parallel().mapToObj(i -> expression.evalCI(rg, i, seq1, seq2, m, z)).toList();
+        long seed = rg.nextLong();
+        List<double[]> resList = IntStream.range(from + step, to + step).parallel()
+                .mapToObj(i -> expression.evalCI(DefaultRandomGenerator.streamOf(seed, i), i, seq1, seq2, m, z)).toList();
         res[0] = resList.stream().parallel().mapToDouble(r -> r[0]).max().orElse(Double.NaN);
         res[1] = resList.stream().parallel().mapToDouble(r -> r[1]).max().orElse(Double.NaN);
         res[2] = resList.stream().parallel().mapToDouble(r -> r[2]).max().orElse(Double.NaN);
         return res;
     }
 
+    @Override
+    public int getTimeHorizon() {
+        return to-1+expression.getTimeHorizon();
+    }
+
 }
@@ -22,6 +22,7 @@
 
 package it.unicam.quasylab.jspear.distance;
 
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
 import it.unicam.quasylab.jspear.EvolutionSequence;
 import org.apache.commons.math3.random.RandomGenerator;
 
@@ -77,6 +78,23 @@ public final class MinIntervalDistanceExpression implements DistanceExpression {
                 .orElse(Double.NaN);
     }
 
+    /**
+     * @inheritDoc
+     *
+     * The evaluations of <code>expression</code> are computed once on the interval
+     * <code>[from+this.from, to+this.to-1]</code>, then the minimum over each shifted interval is obtained via a sliding window.
+     */
+    @Override
+    public double[] compute(int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
+        if (from<0) {
+            throw new IllegalArgumentException();
+        }
+        if (to<from) {
+            return new double[0];
+        }
+        return SlidingWindow.min(expression.compute(from+this.from, to+this.to-1, seq1, seq2), this.to-this.from);
+    }
+
     /**
      * @inheritDoc
      *
@@ -89,11 +107,18 @@ public final class MinIntervalDistanceExpression implements DistanceExpression {
             throw new IllegalArgumentException();
         }
         double[] res = new double[3];
-        List<double[]> resList = IntStream.range(from + step, to + step).parallel().mapToObj(i -> expression.evalCI(rg, i, seq1, seq2, m, z)).toList();
+        long seed = rg.nextLong();
+        List<double[]> resList = IntStream.range(from + step, to + step).parallel()
+                .mapToObj(i -> expression.evalCI(DefaultRandomGenerator.streamOf(seed, i), i, seq1, seq2, m, z)).toList();
         res[0] = resList.stream().parallel().mapToDouble(r -> r[0]).min().orElse(Double.NaN);
         res[1] = resList.stream().parallel().mapToDouble(r -> r[1]).min().orElse(Double.NaN);
         res[2] = resList.stream().parallel().mapToDouble(r -> r[2]).min().orElse(Double.NaN);
         return res;
     }
 
+    @Override
+    public int getTimeHorizon() {
+        return to-1+expression.getTimeHorizon();
+    }
+
 }
@@ -0,0 +1,135 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distance;
+
+/**
+ * Utility class used to compute the maxima and minima of the values in all the windows of a given width
+ * of an array. Each window is evaluated in constant amortised time by means of a monotonic deque.
+ * The bounded until of two arrays on all the windows of a given width is evaluated in linear time as well.
+ * This class is used to evaluate the interval operators of distance expressions and of formulae on all the
+ * steps of an interval.
+ */
+public final class SlidingWindow {
+
+    private SlidingWindow() {}
+
+    /**
+     * Returns the array whose <code>k</code>-th element is the maximum of the values in
+     * <code>values[k], ..., values[k+width-1]</code>. As for {@link Math#max(double, double)}, the maximum
+     * of a window containing <code>NaN</code> is <code>NaN</code>.
+     *
+     * @param values an array of values
+     * @param width the width of the windows
+     * @return the maxima of the values in each window of the given width.
+     */
+    public static double[] max(double[] values, int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException();
+        }
+        double[] result = new double[Math.max(0, values.length-width+1)];
+        int[] deque = new int[values.length];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < values.length; i++) {
+            while ((tail > head)&&(Double.compare(values[deque[tail-1]], values[i]) <= 0)) {
+                tail--;
+            }
+            deque[tail++] = i;
+            if (deque[head] <= i-width) {
+                head++;
+            }
+            if (i >= width-1) {
+                result[i-width+1] = values[deque[head]];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the array whose <code>k</code>-th element is the minimum of the values in
+     * <code>values[k], ..., values[k+width-1]</code>. As for {@link Math#min(double, double)}, the minimum
+     * of a window containing <code>NaN</code> is <code>NaN</code>.
+     *
+     * @param values an array of values
+     * @param width the width of the windows
+     * @return the minima of the values in each window of the given width.
+     */
+    public static double[] min(double[] values, int width) {
+        double[] negated = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            negated[i] = -values[i];
+        }
+        double[] result = max(negated, width);
+        for (int i = 0; i < result.length; i++) {
+            result[i] = -result[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the array whose <code>k</code>-th element is the minimum, for <code>i</code> in
+     * <code>k, ..., k+width-1</code>, of the maximum between <code>right[i]</code> and the values
+     * <code>0, left[k], ..., left[i-1]</code>. This is the evaluation of a bounded until on each window.
+     * The array is split in blocks of <code>width</code> elements, so that each window is the union of a suffix
+     * of a block and of a prefix of the following one: the until on suffixes is computed backward, the one on
+     * prefixes forward, hence all the windows are evaluated in linear time.
+     *
+     * @param left the values of the left argument, at least <code>right.length-1</code>
+     * @param right the values of the right argument
+     * @param width the width of the windows
+     * @return the evaluation of the until on each window of the given width.
+     */
+    public static double[] until(double[] left, double[] right, int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int n = Math.max(0, right.length-width+1);
+        double[] result = new double[n];
+        double[] suffixUntil = new double[width];
+        double[] suffixMax = new double[width];
+        for (int start = 0; start < n; start += width) {
+            int end = start+width;
+            double until = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = end-1; j >= start; j--) {
+                until = Math.min(Math.max(right[j], 0.0), Math.max((j < end-1 ? left[j] : Double.NEGATIVE_INFINITY), until));
+                max = (j < left.length ? Math.max(max, left[j]) : max);
+                suffixUntil[j-start] = until;
+                suffixMax[j-start] = max;
+            }
+            result[start] = suffixUntil[0];
+            double prefixUntil = Double.POSITIVE_INFINITY;
+            double prefixMax = 0.0;
+            for (int j = start+1; (j < end)&&(j < n); j++) {
+                int i = j+width-1;
+                if (i > end) {
+                    prefixMax = Math.max(prefixMax, left[i-1]);
+                }
+                prefixUntil = Math.min(prefixUntil, Math.max(right[i], prefixMax));
+                result[j] = Math.min(suffixUntil[j-start], Math.max(suffixMax[j-start], prefixUntil));
+            }
+        }
+        return result;
+    }
+
+}
@@ -26,6 +26,8 @@ import it.unicam.quasylab.jspear.EvolutionSequence;
 import it.unicam.quasylab.jspear.ds.RelationOperator;
 import org.apache.commons.math3.random.RandomGenerator;
 
+import java.util.stream.DoubleStream;
+
 /**
  * Class ThresholdDistanceExpression implements conditional distance expressions.
  */
@@ -66,6 +68,11 @@ public final class ThresholdDistanceExpression implements DistanceExpression {
         return (relop.eval(expression.compute(step, seq1, seq2),threshold)?0.0:1.0);
     }
 
+    @Override
+    public double[] compute(int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
+        return DoubleStream.of(expression.compute(from, to, seq1, seq2)).map(v -> (relop.eval(v,threshold)?0.0:1.0)).toArray();
+    }
+
     /**
      * @inheritDoc
      *
@@ -90,4 +97,9 @@ public final class ThresholdDistanceExpression implements DistanceExpression {
         return res;
     }
 
+    @Override
+    public int getTimeHorizon() {
+        return expression.getTimeHorizon();
+    }
+
 }
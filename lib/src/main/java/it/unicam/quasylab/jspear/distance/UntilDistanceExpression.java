@@ -26,7 +26,6 @@ import it.unicam.quasylab.jspear.EvolutionSequence;
 import org.apache.commons.math3.random.RandomGenerator;
 
 import java.util.Objects;
-import java.util.stream.IntStream;
 
 /**
  * Class UntilDistanceExpression implements the quantitative version of the bounded until operator
@@ -76,28 +75,42 @@ public final class UntilDistanceExpression implements DistanceExpression {
         if (step<0) {
             throw new IllegalArgumentException();
         }
-        /*
-        return IntStream.range(from+step, to+step).parallel()
-                .mapToDouble(i -> Math.max(rightExpression.compute(i, seq1, seq2),
-                        IntStream.range(from+step,i).parallel()
-                                .mapToDouble(j-> leftExpression.compute(j,seq1,seq2)).max().orElse(Double.NaN)))
-                .min().orElse(Double.NaN);
-
-         */
         double res = 1.0;
         double resL = 0.0;
         for(int i = from+step; i<to+step; i++) {
-            double resR = rightExpression.compute(i, seq1, seq2);
-            //double resL = leftExpression.compute(i,seq1,seq2);
-            for(int j =from+step; j<i; j++) {
-                double partialL = leftExpression.compute(j,seq1,seq2);
-                resL = Math.max(resL, partialL);
+            if (i>from+step) {
+                resL = Math.max(resL, leftExpression.compute(i-1, seq1, seq2));
             }
-            res = Math.min(res,Math.max(resR,resL));
+            res = Math.min(res, Math.max(rightExpression.compute(i, seq1, seq2), resL));
         }
         return res;
     }
 
+    /**
+     * @inheritDoc
+     *
+     * The evaluations of the left and right expressions are computed once on the interval
+     * <code>[from+this.from, to+this.to-1]</code>, then the until over each shifted interval is obtained via
+     * {@link SlidingWindow#until(double[], double[], int)} in linear time.
+     */
+    @Override
+    public double[] compute(int from, int to, EvolutionSequence seq1, EvolutionSequence seq2) {
+        if (from<0) {
+            throw new IllegalArgumentException();
+        }
+        if (to<from) {
+            return new double[0];
+        }
+        int first = from+this.from;
+        double[] valuesL = leftExpression.compute(first, to+this.to-2, seq1, seq2);
+        double[] valuesR = rightExpression.compute(first, to+this.to-1, seq1, seq2);
+        double[] result = SlidingWindow.until(valuesL, valuesR, this.to-this.from);
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Math.min(1.0, result[i]);
+        }
+        return result;
+    }
+
     /**
      * @inheritDoc
      *
@@ -111,15 +124,13 @@ public final class UntilDistanceExpression implements DistanceExpression {
             throw new IllegalArgumentException();
         }
         double[] res = {1.0,1.0,1.0};
+        double[] resL = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
         for(int i = from+step; i<to+step; i++) {
             double[] resR = rightExpression.evalCI(rg, i, seq1, seq2, m, z);
-            double[] resL = leftExpression.evalCI(rg, i,seq1,seq2,m,z);
-            for(int j =from+step; j<i; j++) {
-                double[] partialL = leftExpression.evalCI(rg, j,seq1,seq2,m,z);
-                resL[0] = Math.max(resL[0], partialL[0]);
-                resL[1] = Math.max(resL[1], partialL[1]);
-                resL[2] = Math.max(resL[2], partialL[2]);
-            }
+            double[] partialL = leftExpression.evalCI(rg, i,seq1,seq2,m,z);
+            resL[0] = Math.max(resL[0], partialL[0]);
+            resL[1] = Math.max(resL[1], partialL[1]);
+            resL[2] = Math.max(resL[2], partialL[2]);
             res[0] = Math.min(res[0],Math.max(resR[0],resL[0]));
             res[1] = Math.min(res[1],Math.max(resR[1],resL[1]));
             res[2] = Math.min(res[2],Math.max(resR[2],resL[2]));
@@ -127,4 +138,9 @@ public final class UntilDistanceExpression implements DistanceExpression {
         return res;
     }
 
+    @Override
+    public int getTimeHorizon() {
+        return to-1+Math.max(leftExpression.getTimeHorizon(), rightExpression.getTimeHorizon());
+    }
+
 }
@@ -24,6 +24,8 @@ package it.unicam.quasylab.jspear.distl;
 
 import it.unicam.quasylab.jspear.EvolutionSequence;
 
+import java.util.function.IntFunction;
+
 /**
  * This functional interface represents an interpretation function of RobTL formulas.
  *
@@ -45,4 +47,25 @@ public interface DisTLFunction<T> {
      */
     T eval(int sampleSize, int step, EvolutionSequence sequence);
 
+    /**
+     * Returns the evaluations of this function to the given <code>sequence</code> at each of the given
+     * <code>steps</code> and using the given <code>sampleSize</code>. Functions obtained from the semantics
+     * visitors tabulate the evaluations of their subformulae, so that the work shared by the evaluations at
+     * different steps is done only once.
+     *
+     * @param sampleSize size of the sample set used to inter statistical values.
+     * @param steps computational steps at which the formula is evaluated.
+     * @param sequence evolution sequence to evaluate.
+     * @param generator function used to allocate the returned array.
+     * @return the array containing, in position <code>i</code>, the evaluation of this function at
+     * step <code>steps[i]</code>.
+     */
+    default T[] eval(int sampleSize, int[] steps, EvolutionSequence sequence, IntFunction<T[]> generator) {
+        T[] result = generator.apply(steps.length);
+        for (int i = 0; i < steps.length; i++) {
+            result[i] = eval(sampleSize, steps[i], sequence);
+        }
+        return result;
+    }
+
 }
@@ -23,20 +23,33 @@
 package it.unicam.quasylab.jspear.distl;
 
 import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
 import it.unicam.quasylab.jspear.SampleSet;
 import it.unicam.quasylab.jspear.SystemState;
+import it.unicam.quasylab.jspear.distance.SlidingWindow;
 import it.unicam.quasylab.jspear.penalty.*;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.jfr.FormulaEvaluationEvent;
+import it.unicam.quasylab.jspear.udistl.UDisTLFormula;
 import org.apache.commons.math3.random.AbstractRandomGenerator;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntFunction;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import java.util.Optional;
 
 public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
 
     private final boolean parallel;
     private final AbstractRandomGenerator rg;
+    private final Map<DisTLFormula, TargetSampleCache> sampleCaches = new ConcurrentHashMap<>();
 
     public DoubleSemanticsVisitor(boolean parallel) {
         this.parallel = parallel;
@@ -47,25 +60,70 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
         this(false);
     }
 
+    /**
+     * Sets the seed of the random generator used to sample the distributions of target and brink formulae.
+     * The distributions sampled with the previous seed are discarded.
+     *
+     * @param seed the seed.
+     */
     public void setRandomGeneratorSeed(int seed){
         rg.setSeed(seed);
+        sampleCaches.values().forEach(TargetSampleCache::invalidate);
+    }
+
+    /**
+     * Returns the cache of the samples of the distribution of the given target, or brink, formula. Samples
+     * are shared by all the evaluations of the formula performed by this visitor.
+     *
+     * @param formula a target or a brink formula.
+     * @return the cache of the samples of the distribution of the given formula.
+     */
+    TargetSampleCache getSampleCache(DisTLFormula formula) {
+        return sampleCaches.computeIfAbsent(formula, f -> new TargetSampleCache());
     }
 
     @Override
     public DisTLFunction<Double> eval(DisTLFormula formula) {
-        return formula.eval(this);
+        return instrument(formula);
+    }
+
+    /**
+     * Returns the function evaluating the given formula. Each evaluation of the returned function that is not
+     * found in its table, namely each cache miss, is recorded as a {@link FormulaEvaluationEvent} when the event
+     * is enabled. No event is created when it is disabled (see {@link Tabulated}).
+     *
+     * @param formula a formula.
+     * @return the function evaluating the given formula.
+     */
+    private DisTLFunction<Double> instrument(UDisTLFormula formula) {
+        return new Tabulated(formula.getClass().getSimpleName(), formula.eval(this));
+    }
+
+    /**
+     * Returns the evaluations of the given formula at each step in the interval <code>[from, to]</code>.
+     * Since the evaluation of each subformula at each step is tabulated, subformulas are evaluated at most
+     * once for each step even when they are shared by the evaluations at different steps. Always and
+     * eventually operators are evaluated on the whole interval with {@link SlidingWindow}, in time linear in
+     * the number of steps regardless of the width of their intervals.
+     *
+     * @param formula a formula.
+     * @param sampleSize size of the sample set used to inter statistical values.
+     * @param from first step.
+     * @param to last step.
+     * @param sequence evolution sequence to evaluate.
+     * @return the evaluations of the given formula at each step in the interval <code>[from, to]</code>.
+     */
+    public double[] eval(DisTLFormula formula, int sampleSize, int from, int to, EvolutionSequence sequence) {
+        Double[] values = eval(formula).eval(sampleSize, IntStream.rangeClosed(from, to).toArray(), sequence, Double[]::new);
+        return Stream.of(values).mapToDouble(Double::doubleValue).toArray();
     }
 
     @Override
     public DisTLFunction<Double> evalAlways(AlwaysDisTLFormula alwaysDisTLFormula) {
-        DisTLFunction<Double> argumentFunction = alwaysDisTLFormula.getArgument().eval(this);
+        DisTLFunction<Double> argumentFunction = instrument(alwaysDisTLFormula.getArgument());
         int from = alwaysDisTLFormula.getFrom();
         int to = alwaysDisTLFormula.getTo();
-        return (sampleSize, step, sequence) ->
-                maybeParallelize(IntStream.range(from, to+1))
-                        .mapToDouble(i ->
-                                argumentFunction.eval(sampleSize, step+i, sequence))
-                        .min().orElse(Double.NaN);
+        return new Windowed(argumentFunction, from, to, Math::min, SlidingWindow::min);
     }
 
     @Override
@@ -75,11 +133,12 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
         Penalty P = brinkDisTLFormula.getP();
         double q = brinkDisTLFormula.getThreshold();
         if (brinkDisTLFormula.getSampledDistribution().size() ==0) {
+        TargetSampleCache cache = getSampleCache(brinkDisTLFormula);
         return rho.<DisTLFunction<Double>>map(
                 dataStateExpression -> (sampleSize, step, sequence)
-                -> sequence.get(step).distanceLeq(dataStateExpression, sequence.get(step).replica(sampleSize).applyDistribution(rg, mu, parallel)) - q)
+                -> sequence.get(step).distanceLeq(dataStateExpression, sampleDistribution(cache, sequence.get(step), sampleSize, mu)) - q)
                 .orElseGet(() -> (sampleSize, step, sequence)
-                -> sequence.get(step).distanceLeq(P, sequence.get(step).replica(sampleSize).applyDistribution(rg, mu, parallel), step) - q);
+                -> sequence.get(step).distanceLeq(P, sampleDistribution(cache, sequence.get(step), sampleSize, mu), step) - q);
         } else {
             SampleSet<SystemState> muSample = brinkDisTLFormula.getSampledDistribution();
             return rho.<DisTLFunction<Double>>map(dataStateExpression -> (sampleSize, step, sequence)
@@ -97,26 +156,24 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
 
     @Override
     public DisTLFunction<Double> evalConjunction(ConjunctionDisTLFormula conjunctionDisTLFormula) {
-        DisTLFunction<Double> leftFunction = conjunctionDisTLFormula.getLeftFormula().eval(this);
-        DisTLFunction<Double> rightFunction = conjunctionDisTLFormula.getRightFormula().eval(this);
-        return (sampleSize, step, sequence) -> Math.min(leftFunction.eval(sampleSize, step, sequence), rightFunction.eval(sampleSize, step, sequence));
+        DisTLFunction<Double> leftFunction = instrument(conjunctionDisTLFormula.getLeftFormula());
+        DisTLFunction<Double> rightFunction = instrument(conjunctionDisTLFormula.getRightFormula());
+        return pointwise(leftFunction, rightFunction, Math::min);
     }
 
     @Override
     public DisTLFunction<Double> evalDisjunction(DisjunctionDisTLFormula disjunctionDisTLFormula) {
-        DisTLFunction<Double> leftFunction = disjunctionDisTLFormula.getLeftFormula().eval(this);
-        DisTLFunction<Double> rightFunction = disjunctionDisTLFormula.getRightFormula().eval(this);
-        return (sampleSize, step, sequence) -> Math.max(leftFunction.eval(sampleSize, step, sequence),rightFunction.eval(sampleSize, step, sequence));
+        DisTLFunction<Double> leftFunction = instrument(disjunctionDisTLFormula.getLeftFormula());
+        DisTLFunction<Double> rightFunction = instrument(disjunctionDisTLFormula.getRightFormula());
+        return pointwise(leftFunction, rightFunction, Math::max);
     }
 
     @Override
     public DisTLFunction<Double> evalEventually(EventuallyDisTLFormula eventuallyDisTLFormula) {
-        DisTLFunction<Double> argumentFunction = eventuallyDisTLFormula.getArgument().eval(this);
+        DisTLFunction<Double> argumentFunction = instrument(eventuallyDisTLFormula.getArgument());
         int from = eventuallyDisTLFormula.getFrom();
         int to = eventuallyDisTLFormula.getTo();
-        return (sampleSize, step, sequence) -> maybeParallelize(IntStream.range(from, to+1))
-                .mapToDouble(i -> argumentFunction.eval(sampleSize, step+i, sequence)).max().orElse(Double.NaN);
-
+        return new Windowed(argumentFunction, from, to, Math::max, SlidingWindow::max);
     }
 
     @Override
@@ -126,15 +183,15 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
 
     @Override
     public DisTLFunction<Double> evalImplication(ImplicationDisTLFormula implicationDisTLFormula) {
-        DisTLFunction<Double> leftFunction = implicationDisTLFormula.getLeftFormula().eval(this);
-        DisTLFunction<Double> rightFunction = implicationDisTLFormula.getRightFormula().eval(this);
-        return (sampleSize, step, sequence) -> Math.max(-leftFunction.eval(sampleSize, step, sequence), rightFunction.eval(sampleSize, step, sequence));
+        DisTLFunction<Double> leftFunction = instrument(implicationDisTLFormula.getLeftFormula());
+        DisTLFunction<Double> rightFunction = instrument(implicationDisTLFormula.getRightFormula());
+        return pointwise(leftFunction, rightFunction, (left, right) -> Math.max(-left, right));
     }
 
     @Override
     public DisTLFunction<Double> evalNegation(NegationDisTLFormula negationDisTLFormula) {
-        DisTLFunction<Double> argumentFunction = (negationDisTLFormula.getArgument()).eval(this);
-        return (sampleSize, step, sequence) -> - argumentFunction.eval(sampleSize, step, sequence);
+        DisTLFunction<Double> argumentFunction = instrument(negationDisTLFormula.getArgument());
+        return pointwise(argumentFunction, value -> -value);
     }
 
     @Override
@@ -144,13 +201,14 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
         Penalty P = targetDisTLFormula.getP();
         double q = targetDisTLFormula.getThreshold();
         if (targetDisTLFormula.getSampledDistribution().size() ==0) {
+            TargetSampleCache cache = getSampleCache(targetDisTLFormula);
             return rho.<DisTLFunction<Double>>map(dataStateExpression -> (sampleSize, step, sequence)
                     -> {
-                SampleSet<SystemState> muSample = sequence.get(step).replica(sampleSize).applyDistribution(rg, mu, parallel);
+                SampleSet<SystemState> muSample = sampleDistribution(cache, sequence.get(step), sampleSize, mu);
                 return q - sequence.get(step).distanceGeq(dataStateExpression, muSample);
             }).orElseGet(() -> (sampleSize, step, sequence)
                     -> {
-                SampleSet<SystemState> muSample = sequence.get(step).replica(sampleSize).applyDistribution(rg, mu, parallel);
+                SampleSet<SystemState> muSample = sampleDistribution(cache, sequence.get(step), sampleSize, mu);
                 return q - sequence.get(step).distanceGeq(P, muSample, step);
             });
         } else {
@@ -174,23 +232,220 @@ public class DoubleSemanticsVisitor implements DisTLFormulaVisitor<Double> {
 
     @Override
     public DisTLFunction<Double> evalUntil(UntilDisTLFormula untilDisTLFormula) {
-        DisTLFunction<Double> leftFunction = untilDisTLFormula.getLeftFormula().eval(this);
-        DisTLFunction<Double> rightFunction = untilDisTLFormula.getRightFormula().eval(this);
+        DisTLFunction<Double> leftFunction = instrument(untilDisTLFormula.getLeftFormula());
+        DisTLFunction<Double> rightFunction = instrument(untilDisTLFormula.getRightFormula());
         int from = untilDisTLFormula.getFrom();
         int to = untilDisTLFormula.getTo();
 
-        return(sampleSize, step, sequence) ->
-                maybeParallelize(IntStream.range(step+from, step+to+1)).mapToDouble(
-                        tauPrime -> {
-                            if (tauPrime == from + step){
-                                return rightFunction.eval(sampleSize, tauPrime, sequence);
-                            } else {
-                                return Math.min(
-                                        rightFunction.eval(sampleSize, tauPrime, sequence),
-                                        maybeParallelize(IntStream.range(from+step, tauPrime)).mapToDouble(tauPrimePrime -> leftFunction.eval(sampleSize, tauPrimePrime, sequence))
-                                                .min().orElse(Double.NaN));
-                            }
-                        }).max().orElse(Double.NaN);
+        return (sampleSize, step, sequence) -> {
+            if (parallel) {
+                IntStream.rangeClosed(step+from, step+to).parallel().forEach(tau -> {
+                    rightFunction.eval(sampleSize, tau, sequence);
+                    if (tau < step+to) {
+                        leftFunction.eval(sampleSize, tau, sequence);
+                    }
+                });
+            }
+            double result = Double.NaN;
+            double leftMin = Double.POSITIVE_INFINITY;
+            for (int tau = step+from; tau <= step+to; tau++) {
+                double right = rightFunction.eval(sampleSize, tau, sequence);
+                result = (tau == step+from ? right : Math.max(result, Math.min(right, leftMin)));
+                if (tau < step+to) {
+                    leftMin = Math.min(leftMin, leftFunction.eval(sampleSize, tau, sequence));
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Returns the sample of the distribution <code>mu</code> obtained from the given sample set, reusing the one
+     * stored in the given cache when available.
+     */
+    private SampleSet<SystemState> sampleDistribution(TargetSampleCache cache, SampleSet<SystemState> source, int sampleSize, DataStateFunction mu) {
+        return cache.get(source, sampleSize, () -> source.replica(sampleSize).applyDistribution(rg, mu, parallel));
+    }
+
+    /**
+     * Returns the function applying, step by step, the given operator to the values of the given function.
+     * Evaluations on many steps are propagated to the function.
+     */
+    private static DisTLFunction<Double> pointwise(DisTLFunction<Double> argument, DoubleUnaryOperator operator) {
+        return new DisTLFunction<>() {
+            @Override
+            public Double eval(int sampleSize, int step, EvolutionSequence sequence) {
+                return operator.applyAsDouble(argument.eval(sampleSize, step, sequence));
+            }
+
+            @Override
+            public Double[] eval(int sampleSize, int[] steps, EvolutionSequence sequence, IntFunction<Double[]> generator) {
+                Double[] values = argument.eval(sampleSize, steps, sequence, Double[]::new);
+                Double[] result = generator.apply(steps.length);
+                for (int i = 0; i < steps.length; i++) {
+                    result[i] = operator.applyAsDouble(values[i]);
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Returns the function combining, step by step, the values of the two given functions with the given
+     * operator. Evaluations on many steps are propagated to both functions.
+     */
+    private static DisTLFunction<Double> pointwise(DisTLFunction<Double> left, DisTLFunction<Double> right, DoubleBinaryOperator operator) {
+        return new DisTLFunction<>() {
+            @Override
+            public Double eval(int sampleSize, int step, EvolutionSequence sequence) {
+                return operator.applyAsDouble(left.eval(sampleSize, step, sequence), right.eval(sampleSize, step, sequence));
+            }
+
+            @Override
+            public Double[] eval(int sampleSize, int[] steps, EvolutionSequence sequence, IntFunction<Double[]> generator) {
+                Double[] leftValues = left.eval(sampleSize, steps, sequence, Double[]::new);
+                Double[] rightValues = right.eval(sampleSize, steps, sequence, Double[]::new);
+                Double[] result = generator.apply(steps.length);
+                for (int i = 0; i < steps.length; i++) {
+                    result[i] = operator.applyAsDouble(leftValues[i], rightValues[i]);
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * The function evaluating an always or an eventually operator, namely the minimum or the maximum of the
+     * values of its argument in the steps of a bounded interval. A single step is evaluated by scanning the
+     * interval, while many steps are evaluated together on all the windows of the covered steps.
+     */
+    private final class Windowed implements DisTLFunction<Double> {
+
+        private final DisTLFunction<Double> argument;
+        private final int from;
+        private final int to;
+        private final DoubleBinaryOperator operator;
+        private final BiFunction<double[], Integer, double[]> window;
+
+        private Windowed(DisTLFunction<Double> argument, int from, int to, DoubleBinaryOperator operator, BiFunction<double[], Integer, double[]> window) {
+            this.argument = argument;
+            this.from = from;
+            this.to = to;
+            this.operator = operator;
+            this.window = window;
+        }
+
+        @Override
+        public Double eval(int sampleSize, int step, EvolutionSequence sequence) {
+            return maybeParallelize(IntStream.range(from, to+1))
+                    .mapToDouble(i -> argument.eval(sampleSize, step+i, sequence))
+                    .reduce(operator).orElse(Double.NaN);
+        }
+
+        /**
+         * The argument is evaluated once on all the steps covered by the windows of the given steps. When the
+         * given steps are sparse, namely they span more than twice their number, they are evaluated one by one.
+         */
+        @Override
+        public Double[] eval(int sampleSize, int[] steps, EvolutionSequence sequence, IntFunction<Double[]> generator) {
+            int first = IntStream.of(steps).min().orElse(0);
+            int last = IntStream.of(steps).max().orElse(-1);
+            if ((to < from)||(last-first+1 > 2*steps.length)) {
+                return DisTLFunction.super.eval(sampleSize, steps, sequence, generator);
+            }
+            int[] covered = IntStream.rangeClosed(first+from, last+to).toArray();
+            Double[] values = argument.eval(sampleSize, covered, sequence, Double[]::new);
+            double[] windows = window.apply(Stream.of(values).mapToDouble(Double::doubleValue).toArray(), to-from+1);
+            Double[] result = generator.apply(steps.length);
+            for (int i = 0; i < steps.length; i++) {
+                result[i] = windows[steps[i]-first];
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * A function that tabulates its values, so that it is evaluated at most once for each step. Values are
+     * tabulated for the last evolution sequence and sample size the function has been evaluated with. The
+     * sequence is weakly referenced, so that the function does not prevent it from being collected. Each
+     * evaluation of a single step that is not found in the table, namely each cache miss, is recorded as a
+     * {@link FormulaEvaluationEvent} when the event is enabled; when it is, the missing steps of an evaluation on
+     * many steps are evaluated one by one.
+     */
+    private static final class Tabulated implements DisTLFunction<Double> {
+
+        private final String name;
+
+        private final DisTLFunction<Double> function;
+
+        private volatile Table table;
+
+        private Tabulated(String name, DisTLFunction<Double> function) {
+            this.name = name;
+            this.function = function;
+        }
+
+        @Override
+        public Double eval(int sampleSize, int step, EvolutionSequence sequence) {
+            Table current = getTable(sampleSize, sequence);
+            Double value = current.values.get(step);
+            if (value == null) {
+                value = compute(sampleSize, step, sequence);
+                current.values.putIfAbsent(step, value);
+            }
+            return value;
+        }
+
+        @Override
+        public Double[] eval(int sampleSize, int[] steps, EvolutionSequence sequence, IntFunction<Double[]> generator) {
+            Table current = getTable(sampleSize, sequence);
+            int[] missing = IntStream.of(steps).filter(step -> !current.values.containsKey(step)).distinct().toArray();
+            if (FormulaEvaluationEvent.TYPE.isEnabled()) {
+                for (int step : missing) {
+                    current.values.putIfAbsent(step, compute(sampleSize, step, sequence));
+                }
+            } else if (missing.length > 0) {
+                Double[] values = function.eval(sampleSize, missing, sequence, Double[]::new);
+                for (int i = 0; i < missing.length; i++) {
+                    current.values.putIfAbsent(missing[i], values[i]);
+                }
+            }
+            Double[] result = generator.apply(steps.length);
+            for (int i = 0; i < steps.length; i++) {
+                result[i] = current.values.get(steps[i]);
+            }
+            return result;
+        }
+
+        private Table getTable(int sampleSize, EvolutionSequence sequence) {
+            Table current = table;
+            if ((current == null)||(current.sequence.get() != sequence)||(current.sampleSize != sampleSize)) {
+                current = new Table(new WeakReference<>(sequence), sampleSize, new ConcurrentHashMap<>());
+                table = current;
+            }
+            return current;
+        }
+
+        private double compute(int sampleSize, int step, EvolutionSequence sequence) {
+            if (!FormulaEvaluationEvent.TYPE.isEnabled()) {
+                return function.eval(sampleSize, step, sequence);
+            }
+            FormulaEvaluationEvent event = new FormulaEvaluationEvent();
+            event.begin();
+            double value = function.eval(sampleSize, step, sequence);
+            event.end();
+            if (event.shouldCommit()) {
+                event.formula = name;
+                event.step = step;
+                event.sampleSize = sampleSize;
+                event.value = value;
+                event.commit();
+            }
+            return value;
+        }
+
+        private record Table(WeakReference<EvolutionSequence> sequence, int sampleSize, Map<Integer, Double> values) {}
 
     }
 
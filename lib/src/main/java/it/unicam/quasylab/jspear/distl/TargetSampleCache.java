@@ -0,0 +1,80 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distl;
+
+import it.unicam.quasylab.jspear.SampleSet;
+import it.unicam.quasylab.jspear.SystemState;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the samples of the distribution of a target, or brink, formula. A sample is associated with the
+ * sample set it has been obtained from and with the size of the replica used to obtain it, so that repeated
+ * evaluations of the same atomic formula at the same step, as in nested temporal formulas, reuse the same sample.
+ * Since sample sets cache the sorted evaluations of penalty functions, also the penalty values of the sample are
+ * computed only once. Sample sets are weakly referenced, hence cached samples are discarded together with the
+ * steps they have been obtained from. Caches are owned by the objects sampling the distributions, namely the
+ * semantics visitors and the monitors, so that samples obtained with different random generators are never shared.
+ */
+public final class TargetSampleCache {
+
+    private final Map<SampleSet<?>, Map<Integer, SampleSet<?>>> samples = new WeakHashMap<>();
+
+    /**
+     * Returns the sample associated with the given sample set and size. If no sample is cached, the given
+     * supplier is used to compute it.
+     *
+     * @param source the sample set the sample is obtained from.
+     * @param sampleSize size of the replica used to obtain the sample.
+     * @param sampler supplier used to compute the sample when it is not cached.
+     * @return the sample associated with the given sample set and size.
+     * @param <T> type of the elements of the sample.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends SystemState> SampleSet<T> get(SampleSet<T> source, int sampleSize, Supplier<SampleSet<T>> sampler) {
+        synchronized (samples) {
+            SampleSet<?> sample = samples.getOrDefault(source, Map.of()).get(sampleSize);
+            if (sample != null) {
+                return (SampleSet<T>) sample;
+            }
+        }
+        SampleSet<T> sample = sampler.get();
+        synchronized (samples) {
+            SampleSet<?> previous = samples.computeIfAbsent(source, s -> new HashMap<>()).putIfAbsent(sampleSize, sample);
+            return (previous != null ? (SampleSet<T>) previous : sample);
+        }
+    }
+
+    /**
+     * Removes all the cached samples, so that the following evaluations sample again the distribution.
+     */
+    public void invalidate() {
+        synchronized (samples) {
+            samples.clear();
+        }
+    }
+
+}
@@ -24,7 +24,6 @@ package it.unicam.quasylab.jspear.ds;
 
 import java.util.Arrays;
 import java.util.stream.DoubleStream;
-import java.util.stream.IntStream;
 
 /**
  * We use this record to assign a range to each value stored in a data state.
@@ -34,6 +33,11 @@ import java.util.stream.IntStream;
  */
 public record DataRange(double minValue, double maxValue) {
 
+    /**
+     * The default range. Since ranges are immutable, this instance is shared by all the default range arrays.
+     */
+    private static final DataRange UNBOUNDED = new DataRange();
+
     /**
      * If the range is not specified, the default range interval
      * <code>[-infinity,+infinity]</code> is used.
@@ -49,7 +53,9 @@ public record DataRange(double minValue, double maxValue) {
      * @return the array with <code>size</code> default data ranges.
      */
     public static DataRange[] getDefaultRangeArray(int size) {
-        return IntStream.range(0, size).mapToObj(i -> new DataRange()).toArray(DataRange[]::new);
+        DataRange[] ranges = new DataRange[size];
+        Arrays.fill(ranges, UNBOUNDED);
+        return ranges;
     }
 
     /**
@@ -61,7 +67,11 @@ public record DataRange(double minValue, double maxValue) {
      * @return the array with the values to be stored in each cell once they comply with the range.
      */
     public static double[] apply(DataRange[] dataRanges, double[] data) {
-        return IntStream.range(0, dataRanges.length).mapToDouble(i -> dataRanges[i].apply(data[i])).toArray();
+        double[] result = new double[dataRanges.length];
+        for (int i = 0; i < dataRanges.length; i++) {
+            result[i] = dataRanges[i].apply(data[i]);
+        }
+        return result;
     }
 
     /**
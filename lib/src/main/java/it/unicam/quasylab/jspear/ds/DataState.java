@@ -24,6 +24,7 @@ package it.unicam.quasylab.jspear.ds;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.function.IntToDoubleFunction;
 import java.util.function.Predicate;
 import java.util.stream.IntStream;
@@ -44,6 +45,12 @@ public class DataState {
 
     private int step = 0;
 
+    /**
+     * The buffer owning this data state, if any. Only the owner of a data state can update it in place (see
+     * {@link DataStateBuffer}).
+     */
+    private Object owner;
+
     /**
      * Creates a new data state with the given number of cells.
      * By default, all the values are set to 0.0.
@@ -63,7 +70,7 @@ public class DataState {
      * @param data values in the data state.
      */
     public DataState(double[] data) {
-        this(IntStream.range(0, data.length).mapToObj(i -> new DataRange()).toArray(DataRange[]::new), data);
+        this(DataRange.getDefaultRangeArray(data.length), data);
     }
 
     /**
@@ -77,7 +84,7 @@ public class DataState {
      * @param Tdelta initial value for time delta.
      */
     public DataState(double[] data, double gran, double Tstep, double Treal, double Tdelta) {
-        this(IntStream.range(0, data.length).mapToObj(i -> new DataRange()).toArray(DataRange[]::new), data);
+        this(DataRange.getDefaultRangeArray(data.length), data);
         this.granularity = gran;
         this.timeStep = Tstep;
         this.timeReal = Treal;
@@ -92,7 +99,7 @@ public class DataState {
      * @param Tstep initial time step value.
      */
     public DataState(double[] data, int Tstep) {
-        this(IntStream.range(0, data.length).mapToObj(i -> new DataRange()).toArray(DataRange[]::new), data);
+        this(DataRange.getDefaultRangeArray(data.length), data);
         this.step = Tstep;
     }
 
@@ -186,10 +193,24 @@ public class DataState {
      * @throws IllegalArgumentException if <code>dataRanges.length != data.length</code>.
      */
     public DataState(DataRange[] dataRanges, double[] data) {
+        this(dataRanges, data, true);
+    }
+
+    /**
+     * Creates a new data state with <code>dataRanges.length</code> cells that are initialised with the given
+     * values <code>data</code>. When <code>clamp</code> is <code>false</code> the values are neither copied nor
+     * checked against their data ranges, and the created data state is backed by <code>data</code>.
+     *
+     * @param dataRanges data ranges for the values in the cells in the created data state.
+     * @param data data state values.
+     * @param clamp <code>true</code> if values are mapped into their data ranges.
+     * @throws IllegalArgumentException if <code>dataRanges.length != data.length</code>.
+     */
+    private DataState(DataRange[] dataRanges, double[] data, boolean clamp) {
         if (dataRanges.length != data.length) {
             throw new IllegalArgumentException();
         }
-        this.data = DataRange.apply(dataRanges, data);
+        this.data = (clamp ? DataRange.apply(dataRanges, data) : data);
         this.dataRanges = dataRanges;
     }
 
@@ -259,6 +280,22 @@ public class DataState {
         this.timeDelta = Tdelta;
     }
 
+    /**
+     * Creates a copy of the given data state. Values are copied as they are, since they already belong to
+     * their data ranges.
+     *
+     * @param other the copied data state.
+     */
+    private DataState(DataState other) {
+        this.data = other.data.clone();
+        this.dataRanges = other.dataRanges;
+        this.timeStep = other.timeStep;
+        this.granularity = other.granularity;
+        this.timeReal = other.timeReal;
+        this.timeDelta = other.timeDelta;
+        this.step = other.step;
+    }
+
     /**
      * Returns the evaluation of the relation <code>></code> between
      * the value in a given cell and a given value.
@@ -431,6 +468,39 @@ public class DataState {
         return dataRanges[i];
     }
 
+    /**
+     * Returns the data ranges associated with the cells of this data state.
+     *
+     * @return the data ranges associated with the cells of this data state.
+     */
+    DataRange[] getDataRanges() {
+        return dataRanges;
+    }
+
+    /**
+     * Copies the values of this data state into the given array, starting from the given position.
+     *
+     * @param target array where values are copied.
+     * @param offset position of the first copied value.
+     */
+    void store(double[] target, int offset) {
+        System.arraycopy(this.data, 0, target, offset, this.data.length);
+    }
+
+    /**
+     * Returns a new data state backed by the given array of values. Values are not checked against data ranges,
+     * hence this method must only be used with values that have been previously obtained from a data state with
+     * the same ranges.
+     *
+     * @param dataRanges data ranges of the cells.
+     * @param data array containing the values.
+     * @return a new data state backed by <code>data</code>.
+     * @throws IllegalArgumentException if <code>dataRanges.length != data.length</code>.
+     */
+    static DataState unchecked(DataRange[] dataRanges, double[] data) {
+        return new DataState(dataRanges, data, false);
+    }
+
     /**
      * Returns a new data state with the same data as this data state plus the updates applied.
      *
@@ -438,14 +508,106 @@ public class DataState {
      * @return the data state obtained from this data state by applying the given updates.
      */
     public DataState apply(List<DataStateUpdate> updates) {
-        DataState newDataState = new DataState(this.dataRanges, data);
-        updates.forEach(newDataState::apply);
-        newDataState.setGranularity(this.getGranularity());
-        newDataState.setTimeStep(this.getTimeStep());
-        newDataState.setTimeReal(this.getTimeReal());
-        newDataState.setTimeDelta(this.getTimeDelta());
-        newDataState.setStep(this.getStep());
-        return newDataState;
+        DataState result = new DataState(this);
+        result.applyUpdates(updates);
+        return result;
+    }
+
+    /**
+     * Returns a copy of the given data state owned by the given buffer.
+     *
+     * @param owner the buffer owning the copy.
+     * @param source the copied data state.
+     * @return a copy of <code>source</code> owned by <code>owner</code>.
+     */
+    static DataState copyOwnedBy(Object owner, DataState source) {
+        DataState result = new DataState(source);
+        result.owner = owner;
+        return result;
+    }
+
+    /**
+     * Returns true if this data state is owned by the given buffer.
+     *
+     * @param owner a buffer.
+     * @return true if this data state is owned by <code>owner</code>.
+     */
+    boolean isOwnedBy(Object owner) {
+        return (owner != null) && (this.owner == owner);
+    }
+
+    /**
+     * Returns true if the values of the given data state can be loaded in this data state, namely if the two
+     * data states have the same data ranges.
+     *
+     * @param other a data state.
+     * @return true if the values of <code>other</code> can be loaded in this data state.
+     */
+    boolean canLoad(DataState other) {
+        return (this.dataRanges == other.dataRanges) || Arrays.equals(this.dataRanges, other.dataRanges);
+    }
+
+    /**
+     * Replaces the values, including time variables, of this data state with the ones of the given data state.
+     *
+     * @param owner the buffer owning this data state.
+     * @param source the data state whose values are loaded.
+     * @throws IllegalStateException if this data state is not owned by <code>owner</code>.
+     */
+    void load(Object owner, DataState source) {
+        checkOwner(owner);
+        System.arraycopy(source.data, 0, this.data, 0, this.data.length);
+        this.timeStep = source.timeStep;
+        this.granularity = source.granularity;
+        this.timeReal = source.timeReal;
+        this.timeDelta = source.timeDelta;
+        this.step = source.step;
+    }
+
+    /**
+     * Applies the given updates to this data state, without copying it. Since data states are shared, only the
+     * buffer owning a data state can update it in place.
+     *
+     * @param owner the buffer owning this data state.
+     * @param updates list of updates to apply.
+     * @return this data state.
+     * @throws IllegalStateException if this data state is not owned by <code>owner</code>.
+     */
+    DataState update(Object owner, List<DataStateUpdate> updates) {
+        checkOwner(owner);
+        applyUpdates(updates);
+        return this;
+    }
+
+    /**
+     * Makes this data state no longer owned by the given buffer, so that it cannot be updated in place anymore.
+     *
+     * @param owner the buffer owning this data state.
+     * @throws IllegalStateException if this data state is not owned by <code>owner</code>.
+     */
+    void release(Object owner) {
+        checkOwner(owner);
+        this.owner = null;
+    }
+
+    private void checkOwner(Object owner) {
+        if (!isOwnedBy(owner)) {
+            throw new IllegalStateException("The data state is not owned by the given buffer!");
+        }
+    }
+
+    private void applyUpdates(List<DataStateUpdate> updates) {
+        if (updates instanceof DataStateUpdateBuffer buffer) {
+            buffer.applyTo(this);
+        } else if (updates instanceof RandomAccess) {
+            for (int i = 0; i < updates.size(); i++) {
+                apply(updates.get(i));
+            }
+        } else {
+            for (DataStateUpdate update : updates) {
+                apply(update);
+            }
+        }
     }
 
     /**
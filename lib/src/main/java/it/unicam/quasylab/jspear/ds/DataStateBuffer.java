@@ -0,0 +1,92 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import java.util.List;
+
+/**
+ * A pair of data states used to apply updates without allocating a new data state at each step, when the
+ * states that are updated are not retained. Data states are produced in the two buffers alternately: the
+ * values of the updated state are copied in the buffer that does not contain it, and then updates are applied
+ * in place. Hence, the state passed to {@link #apply(DataState, List)} is never overwritten by that invocation,
+ * while the data states returned by this buffer are overwritten by the following ones. A data state that must
+ * be retained is obtained via {@link #detach(DataState)}.
+ * Instances of this class are not thread safe.
+ */
+public final class DataStateBuffer {
+
+    private final DataState[] buffers = new DataState[2];
+
+    /**
+     * Returns the data state obtained from the given one by applying the given updates. The result is stored in
+     * this buffer, and the given data state is left unchanged.
+     *
+     * @param state a data state.
+     * @param updates list of updates to apply.
+     * @return the data state obtained from <code>state</code> by applying <code>updates</code>.
+     */
+    public DataState apply(DataState state, List<DataStateUpdate> updates) {
+        int target = (buffers[0] == state ? 1 : 0);
+        DataState result = buffers[target];
+        if ((result == null) || !result.canLoad(state)) {
+            result = DataState.copyOwnedBy(this, state);
+            buffers[target] = result;
+        } else {
+            result.load(this, state);
+        }
+        return result.update(this, updates);
+    }
+
+    /**
+     * Applies the given updates to the given data state. When the data state is stored in this buffer, updates
+     * are applied in place, otherwise this method behaves like {@link #apply(DataState, List)}.
+     *
+     * @param state a data state.
+     * @param updates list of updates to apply.
+     * @return the data state obtained from <code>state</code> by applying <code>updates</code>.
+     */
+    public DataState update(DataState state, List<DataStateUpdate> updates) {
+        if (state.isOwnedBy(this)) {
+            return state.update(this, updates);
+        }
+        return apply(state, updates);
+    }
+
+    /**
+     * Removes the given data state from this buffer, so that it is not overwritten by the following uses of the
+     * buffer and can be retained. Data states not stored in this buffer are returned as they are.
+     *
+     * @param state a data state.
+     * @return the given data state, no longer stored in this buffer.
+     */
+    public DataState detach(DataState state) {
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == state) {
+                buffers[i] = null;
+                state.release(this);
+            }
+        }
+        return state;
+    }
+
+}
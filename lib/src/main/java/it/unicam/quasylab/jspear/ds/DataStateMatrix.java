@@ -0,0 +1,437 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Instances of this class store a collection of data states in a single primitive matrix.
+ * Matrices created from a list of data states are stored in the heap row by row: the value of the variable
+ * <code>j</code> of the data state in position <code>i</code> is found in position <code>i*dimension()+j</code>.
+ * Matrices created with {@link #direct(List)} or {@link #mapped(List)}, or read from a mapped file with {@link #readFrom(ByteBuffer)},
+ * are instead stored outside the heap column by column. Evaluating a penalty function on all the
+ * stored data states does not require any pointer chasing, and the data states are only materialised
+ * when explicitly requested.
+ *
+ * <p>Storing a matrix outside the heap does not make evaluations faster than on a heap matrix: it only
+ * reduces the memory scanned and copied by the garbage collector, hence the length of its pauses.</p>
+ */
+public final class DataStateMatrix {
+
+    /**
+     * Number of rows evaluated by the same worker when penalty functions are evaluated in parallel.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Size in bytes from which the matrices created with {@link #direct(List)} are stored in a mapped
+     * temporary file instead of in a direct buffer.
+     */
+    public static final int MAPPED_THRESHOLD = 64 << 20;
+
+    private static final int TIME_STEP = 0;
+    private static final int GRANULARITY = 1;
+    private static final int TIME_REAL = 2;
+    private static final int TIME_DELTA = 3;
+    private static final int TIME_FIELDS = 4;
+
+    private final int size;
+    private final int dimension;
+    private final DataRange[] dataRanges;
+    private final DoubleBuffer values;
+    private final DoubleBuffer times;
+    private final IntBuffer steps;
+    private final boolean columnar;
+
+    /**
+     * Creates a matrix containing the given data states. All the data states must have the same size and the
+     * same data ranges, since ranges are stored once for the whole matrix.
+     *
+     * @param states the data states to store.
+     * @throws IllegalArgumentException if the data states do not have the same size or the same data ranges.
+     */
+    public DataStateMatrix(List<DataState> states) {
+        this(states, null);
+    }
+
+    /**
+     * Creates a matrix containing the given data states. When the given allocator is not null, the matrix is
+     * stored column by column in the buffer it returns for the number of needed bytes.
+     */
+    private DataStateMatrix(List<DataState> states, IntFunction<ByteBuffer> allocator) {
+        this.size = states.size();
+        this.dimension = (states.isEmpty() ? 0 : states.get(0).size());
+        this.dataRanges = (states.isEmpty() ? new DataRange[0] : states.get(0).getDataRanges());
+        this.columnar = (allocator != null);
+        if (columnar) {
+            ByteBuffer buffer = allocator.apply(Math.multiplyExact(size, (dimension + TIME_FIELDS) * Double.BYTES + Integer.BYTES))
+                    .order(ByteOrder.nativeOrder());
+            this.values = slice(buffer, 0, size * dimension * Double.BYTES).asDoubleBuffer();
+            this.times = slice(buffer, size * dimension * Double.BYTES, size * TIME_FIELDS * Double.BYTES).asDoubleBuffer();
+            this.steps = slice(buffer, size * (dimension + TIME_FIELDS) * Double.BYTES, size * Integer.BYTES).asIntBuffer();
+        } else {
+            this.values = DoubleBuffer.wrap(new double[size * dimension]);
+            this.times = DoubleBuffer.wrap(new double[size * TIME_FIELDS]);
+            this.steps = IntBuffer.wrap(new int[size]);
+        }
+        double[] row = new double[dimension];
+        int i = 0;
+        for (DataState state : states) {
+            if (state.size() != dimension) {
+                throw new IllegalArgumentException("Data states of different size cannot be stored in the same matrix!");
+            }
+            if ((state.getDataRanges() != dataRanges)&&!Arrays.equals(state.getDataRanges(), dataRanges)) {
+                throw new IllegalArgumentException("Data states with different data ranges cannot be stored in the same matrix!");
+            }
+            if (columnar) {
+                state.store(row, 0);
+                for (int j = 0; j < dimension; j++) {
+                    values.put(valueIndex(i, j), row[j]);
+                }
+            } else {
+                state.store(values.array(), i * dimension);
+            }
+            times.put(timeIndex(i, TIME_STEP), state.getTimeStep());
+            times.put(timeIndex(i, GRANULARITY), state.getGranularity());
+            times.put(timeIndex(i, TIME_REAL), state.getTimeReal());
+            times.put(timeIndex(i, TIME_DELTA), state.getTimeDelta());
+            steps.put(i, state.getStep());
+            i++;
+        }
+    }
+
+    private DataStateMatrix(int size, int dimension, DataRange[] dataRanges, DoubleBuffer values, DoubleBuffer times, IntBuffer steps) {
+        this.size = size;
+        this.dimension = dimension;
+        this.dataRanges = dataRanges;
+        this.values = values;
+        this.times = times;
+        this.steps = steps;
+        this.columnar = true;
+    }
+
+    /**
+     * Creates a matrix containing the given data states that is stored outside the heap. All the data states
+     * must have the same size and the same data ranges. The memory used by the returned matrix is not scanned by
+     * the garbage collector, and it is released when the matrix is no longer reachable. Matrices requiring at
+     * least {@link #MAPPED_THRESHOLD} bytes are stored as in {@link #mapped(List)}, so that they are not limited
+     * by the maximum amount of direct memory of the virtual machine.
+     *
+     * @param states the data states to store.
+     * @return a matrix containing the given data states that is stored outside the heap.
+     * @throws IllegalArgumentException if the data states do not have the same size or the same data ranges.
+     * @throws ArithmeticException if the matrix is too large to be stored in a single buffer.
+     * @throws UncheckedIOException if the temporary file storing a large matrix cannot be created.
+     */
+    public static DataStateMatrix direct(List<DataState> states) {
+        return new DataStateMatrix(states, bytes -> (bytes < MAPPED_THRESHOLD ? ByteBuffer.allocateDirect(bytes) : map(bytes)));
+    }
+
+    /**
+     * Creates a matrix containing the given data states that is stored in a temporary file mapped in memory.
+     * The memory used by the returned matrix is neither in the heap nor accounted as direct memory: the values
+     * are paged in and out by the operating system. The file is deleted as soon as it is mapped, when the
+     * operating system allows it, and otherwise when the virtual machine terminates.
+     *
+     * @param states the data states to store.
+     * @return a matrix containing the given data states that is stored in a mapped temporary file.
+     * @throws IllegalArgumentException if the data states do not have the same size or the same data ranges.
+     * @throws ArithmeticException if the matrix is too large to be stored in a single buffer.
+     * @throws UncheckedIOException if the temporary file cannot be created.
+     */
+    public static DataStateMatrix mapped(List<DataState> states) {
+        return new DataStateMatrix(states, DataStateMatrix::map);
+    }
+
+    /**
+     * Returns a buffer of the given size mapped from a new temporary file.
+     */
+    private static ByteBuffer map(int bytes) {
+        try {
+            Path file = Files.createTempFile("matrix", ".bin");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            } finally {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this matrix is stored outside the heap.
+     *
+     * @return <code>true</code> if this matrix is stored outside the heap.
+     */
+    public boolean isDirect() {
+        return values.isDirect();
+    }
+
+    private int valueIndex(int row, int variable) {
+        return (columnar ? variable * size + row : row * dimension + variable);
+    }
+
+    private int timeIndex(int row, int field) {
+        return (columnar ? field * size + row : row * TIME_FIELDS + field);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int index, int length) {
+        return buffer.slice(index, length).order(buffer.order());
+    }
+
+    /**
+     * Returns the number of bytes needed to store this matrix with {@link #writeTo(ByteBuffer)}.
+     *
+     * @return the number of bytes needed to store this matrix.
+     */
+    public long byteSize() {
+        return byteSize(size, dimension);
+    }
+
+    private static long byteSize(int size, int dimension) {
+        long bytes = headerSize(dimension) + ((long) dimension + TIME_FIELDS) * size * Double.BYTES + (long) size * Integer.BYTES;
+        return (bytes + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+    private static int headerSize(int dimension) {
+        return 2 * Integer.BYTES + 2 * dimension * Double.BYTES;
+    }
+
+    /**
+     * Writes this matrix in the given buffer, starting from its current position. Values are stored column by
+     * column: the values of each variable, and of each time variable, in all the data states are stored
+     * contiguously. The position of the buffer is advanced by {@link #byteSize()} bytes.
+     *
+     * @param buffer the buffer where the matrix is written.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(size);
+        buffer.putInt(dimension);
+        for (DataRange range : dataRanges) {
+            buffer.putDouble(range.minValue());
+            buffer.putDouble(range.maxValue());
+        }
+        for (int j = 0; j < dimension; j++) {
+            for (int i = 0; i < size; i++) {
+                buffer.putDouble(values.get(valueIndex(i, j)));
+            }
+        }
+        for (int j = 0; j < TIME_FIELDS; j++) {
+            for (int i = 0; i < size; i++) {
+                buffer.putDouble(times.get(timeIndex(i, j)));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            buffer.putInt(steps.get(i));
+        }
+        buffer.position(start + (int) byteSize());
+    }
+
+    /**
+     * Reads a matrix from the given buffer, starting from its current position. The matrix must have been
+     * written with {@link #writeTo(ByteBuffer)}. Values are not copied: the returned matrix is a view of the
+     * buffer, hence when the buffer is mapped from a file the values are loaded in memory only when they are
+     * accessed. The position of the buffer is advanced after the matrix.
+     *
+     * @param buffer the buffer where the matrix is read.
+     * @return the matrix read from the buffer.
+     * @throws IllegalArgumentException if the buffer does not contain a valid matrix.
+     */
+    public static DataStateMatrix readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        int size = buffer.getInt();
+        int dimension = buffer.getInt();
+        if ((size < 0)||(dimension < 0)||(byteSize(size, dimension) > buffer.limit() - start)) {
+            throw new IllegalArgumentException("Invalid data state matrix!");
+        }
+        DataRange[] dataRanges = new DataRange[dimension];
+        for (int j = 0; j < dimension; j++) {
+            dataRanges[j] = new DataRange(buffer.getDouble(), buffer.getDouble());
+        }
+        int offset = start + headerSize(dimension);
+        DoubleBuffer values = slice(buffer, offset, size * dimension * Double.BYTES).asDoubleBuffer();
+        offset += size * dimension * Double.BYTES;
+        DoubleBuffer times = slice(buffer, offset, size * TIME_FIELDS * Double.BYTES).asDoubleBuffer();
+        offset += size * TIME_FIELDS * Double.BYTES;
+        IntBuffer steps = slice(buffer, offset, size * Integer.BYTES).asIntBuffer();
+        buffer.position(start + (int) byteSize(size, dimension));
+        return new DataStateMatrix(size, dimension, dataRanges, values, times, steps);
+    }
+
+    /**
+     * Returns the number of data states stored in this matrix.
+     *
+     * @return the number of data states stored in this matrix.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of variables of the data states stored in this matrix.
+     *
+     * @return the number of variables of the data states stored in this matrix.
+     */
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the value of the given variable in the data state in the given row.
+     *
+     * @param row index of the data state.
+     * @param variable index of the variable.
+     * @return the value of the variable <code>variable</code> in the data state in position <code>row</code>.
+     * @throws IndexOutOfBoundsException if either <code>row</code> or <code>variable</code> are out of bounds.
+     */
+    public double get(int row, int variable) {
+        if ((variable < 0)||(variable >= dimension)) {
+            throw new IndexOutOfBoundsException(variable);
+        }
+        if ((row < 0)||(row >= size)) {
+            throw new IndexOutOfBoundsException(row);
+        }
+        return values.get(valueIndex(row, variable));
+    }
+
+    /**
+     * Returns the array containing the values of the given variable in all the stored data states.
+     *
+     * @param variable index of the variable.
+     * @return the array containing the values of <code>variable</code> in all the stored data states.
+     */
+    public double[] column(int variable) {
+        if ((variable < 0)||(variable >= dimension)) {
+            throw new IndexOutOfBoundsException(variable);
+        }
+        double[] result = new double[size];
+        if (columnar) {
+            values.get(variable * size, result);
+        } else {
+            for (int i = 0, j = variable; i < size; i++, j += dimension) {
+                result[i] = values.get(j);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new data state containing the values in the given row.
+     *
+     * @param row index of the data state.
+     * @return a new data state containing the values in the given row.
+     */
+    public DataState getDataState(int row) {
+        double[] data = new double[dimension];
+        loadRow(data, row);
+        DataState state = DataState.unchecked(dataRanges, data);
+        load(state, row);
+        return state;
+    }
+
+    /**
+     * Returns the evaluation of the given expression on each data state stored in this matrix.
+     * Rows are evaluated on a view that is reused for all the rows evaluated by the same worker, so that
+     * no data state is allocated for each row: <code>f</code> must neither retain nor modify the data states
+     * it receives. Data states that can be retained are obtained with {@link #getDataState(int)}.
+     *
+     * @param f an expression over data states.
+     * @return the array containing, in position <code>i</code>, the evaluation of <code>f</code> on the data state in row <code>i</code>.
+     */
+    public double[] eval(DataStateExpression f) {
+        double[] result = new double[size];
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream chunkStream = IntStream.range(0, chunks);
+        if (chunks > 1) {
+            chunkStream = chunkStream.parallel();
+        }
+        chunkStream.forEach(c -> {
+            double[] data = new double[dimension];
+            DataState view = DataState.unchecked(dataRanges, data);
+            int end = Math.min(size, (c + 1) * CHUNK_SIZE);
+            for (int row = c * CHUNK_SIZE; row < end; row++) {
+                loadRow(data, row);
+                load(view, row);
+                result[row] = f.eval(view);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Given a penalty function returns a sorted array containing its evaluation on each data state stored in
+     * this matrix.
+     *
+     * @param f a penalty function.
+     * @return a sorted array containing all the evaluations of <code>f</code> over the stored data states.
+     */
+    public double[] evalPenaltyFunction(DataStateExpression f) {
+        double[] result = eval(f);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Copies the values of the data state in the given row into the given array.
+     */
+    private void loadRow(double[] data, int row) {
+        if (columnar) {
+            for (int j = 0, i = row; j < dimension; j++, i += size) {
+                data[j] = values.get(i);
+            }
+        } else {
+            values.get(row * dimension, data);
+        }
+    }
+
+    /**
+     * Copies the time variables of the data state in the given row into the given data state.
+     */
+    private void load(DataState state, int row) {
+        state.setTimeStep(times.get(timeIndex(row, TIME_STEP)));
+        state.setGranularity(times.get(timeIndex(row, GRANULARITY)));
+        state.setTimeReal(times.get(timeIndex(row, TIME_REAL)));
+        state.setTimeDelta(times.get(timeIndex(row, TIME_DELTA)));
+        state.setStep(steps.get(row));
+    }
+
+}
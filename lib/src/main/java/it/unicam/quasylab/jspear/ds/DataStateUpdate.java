@@ -56,7 +56,8 @@ public final class DataStateUpdate {
      * @return a one element list containing the data state update for the datum at index <code>idx</code> with value <code>value</code>.
      */
     public static BiFunction<RandomGenerator, DataState, List<DataStateUpdate>> set(int idx, double value) {
-        return (rg, ds) -> List.of(new DataStateUpdate(idx, value));
+        DataStateUpdateBuffer update = DataStateUpdateBuffer.of(idx, value);
+        return (rg, ds) -> update;
     }
 
     /**
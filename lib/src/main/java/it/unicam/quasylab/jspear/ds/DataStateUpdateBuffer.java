@@ -0,0 +1,262 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable sequence of data state updates that can be concatenated without copying.
+ * Updates are stored either in the list they have been created with or in two primitive arrays containing
+ * the indexes and the values of the updates. The concatenation of two buffers simply refers to both of them,
+ * and the updates are only visited when the buffer is applied to a data state.
+ * Buffers are lists of updates, so they can be used wherever a <code>List&lt;DataStateUpdate&gt;</code> is expected.
+ */
+public abstract sealed class DataStateUpdateBuffer extends AbstractList<DataStateUpdate> {
+
+    /**
+     * The buffer containing no update.
+     */
+    public static final DataStateUpdateBuffer EMPTY = new Primitive(new int[0], new double[0]);
+
+    /**
+     * Returns a buffer containing the given updates. If <code>updates</code> is already a buffer, it is
+     * returned as it is. Lists with random access are wrapped without copying them, hence they must not be
+     * modified after this invocation, while the updates of other lists are copied once in a primitive buffer.
+     *
+     * @param updates a list of updates.
+     * @return a buffer containing the given updates.
+     */
+    public static DataStateUpdateBuffer of(List<DataStateUpdate> updates) {
+        if (updates instanceof DataStateUpdateBuffer buffer) {
+            return buffer;
+        }
+        if (updates.isEmpty()) {
+            return EMPTY;
+        }
+        if (updates instanceof RandomAccess) {
+            return new Wrapped(updates);
+        }
+        Builder builder = new Builder(updates.size());
+        for (DataStateUpdate update : updates) {
+            builder.add(update.getIndex(), update.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a buffer containing, for each <code>i</code>, the update of the variable <code>indexes[i]</code>
+     * with the value <code>values[i]</code>. The arrays are not copied, hence they must not be modified after
+     * this invocation.
+     *
+     * @param indexes indexes of the updated variables.
+     * @param values assigned values.
+     * @return a buffer containing the updates of <code>indexes</code> with <code>values</code>.
+     * @throws IllegalArgumentException if the two arrays do not have the same length.
+     */
+    public static DataStateUpdateBuffer of(int[] indexes, double[] values) {
+        if (indexes.length != values.length) {
+            throw new IllegalArgumentException("Indexes and values must have the same length!");
+        }
+        return new Primitive(indexes, values);
+    }
+
+    /**
+     * Returns a buffer containing the update of the variable <code>index</code> with the given value.
+     *
+     * @param index index of the updated variable.
+     * @param value assigned value.
+     * @return a buffer containing the update of <code>index</code> with <code>value</code>.
+     */
+    public static DataStateUpdateBuffer of(int index, double value) {
+        return new Primitive(new int[]{index}, new double[]{value});
+    }
+
+    /**
+     * Returns the buffer containing the updates of this buffer followed by the ones of the given buffer.
+     * Neither of the buffers is copied.
+     *
+     * @param other a buffer.
+     * @return the buffer containing the updates of this buffer followed by the ones of <code>other</code>.
+     */
+    public DataStateUpdateBuffer concat(DataStateUpdateBuffer other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (this.isEmpty()) {
+            return other;
+        }
+        return new Concatenation(this, other);
+    }
+
+    /**
+     * Applies, in order, the updates of this buffer to the given data state.
+     *
+     * @param state the updated data state.
+     */
+    abstract void applyTo(DataState state);
+
+    /**
+     * A builder of buffers whose updates are stored in primitive arrays, growing as updates are added.
+     */
+    public static final class Builder {
+
+        private int[] indexes;
+        private double[] values;
+        private int size;
+
+        /**
+         * Creates a builder with room for a few updates.
+         */
+        public Builder() {
+            this(8);
+        }
+
+        /**
+         * Creates a builder with room for the given number of updates.
+         *
+         * @param capacity the expected number of updates.
+         */
+        public Builder(int capacity) {
+            this.indexes = new int[Math.max(1, capacity)];
+            this.values = new double[indexes.length];
+        }
+
+        /**
+         * Adds the update of the variable <code>index</code> with the given value.
+         *
+         * @param index index of the updated variable.
+         * @param value assigned value.
+         * @return this builder.
+         */
+        public Builder add(int index, double value) {
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            indexes[size] = index;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * Returns the buffer containing the updates added so far, in the order they have been added.
+         *
+         * @return the buffer containing the updates added so far.
+         */
+        public DataStateUpdateBuffer build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new Primitive(Arrays.copyOf(indexes, size), Arrays.copyOf(values, size));
+        }
+    }
+
+    private static final class Wrapped extends DataStateUpdateBuffer {
+
+        private final List<DataStateUpdate> updates;
+
+        private Wrapped(List<DataStateUpdate> updates) {
+            this.updates = updates;
+        }
+
+        @Override
+        void applyTo(DataState state) {
+            for (int i = 0; i < updates.size(); i++) {
+                DataStateUpdate update = updates.get(i);
+                state.set(update.getIndex(), update.getValue());
+            }
+        }
+
+        @Override
+        public DataStateUpdate get(int index) {
+            return updates.get(index);
+        }
+
+        @Override
+        public int size() {
+            return updates.size();
+        }
+    }
+
+    private static final class Primitive extends DataStateUpdateBuffer {
+
+        private final int[] indexes;
+        private final double[] values;
+
+        private Primitive(int[] indexes, double[] values) {
+            this.indexes = indexes;
+            this.values = values;
+        }
+
+        @Override
+        void applyTo(DataState state) {
+            for (int i = 0; i < indexes.length; i++) {
+                state.set(indexes[i], values[i]);
+            }
+        }
+
+        @Override
+        public DataStateUpdate get(int index) {
+            return new DataStateUpdate(indexes[index], values[index]);
+        }
+
+        @Override
+        public int size() {
+            return indexes.length;
+        }
+    }
+
+    private static final class Concatenation extends DataStateUpdateBuffer {
+
+        private final DataStateUpdateBuffer first;
+        private final DataStateUpdateBuffer second;
+        private final int size;
+
+        private Concatenation(DataStateUpdateBuffer first, DataStateUpdateBuffer second) {
+            this.first = first;
+            this.second = second;
+            this.size = first.size() + second.size();
+        }
+
+        @Override
+        void applyTo(DataState state) {
+            first.applyTo(state);
+            second.applyTo(state);
+        }
+
+        @Override
+        public DataStateUpdate get(int index) {
+            int firstSize = first.size();
+            return (index < firstSize ? first.get(index) : second.get(index - firstSize));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
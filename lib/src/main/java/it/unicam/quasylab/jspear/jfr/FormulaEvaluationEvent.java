@@ -0,0 +1,60 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Event recorded each time a DisTL formula is evaluated at a given step of an evolution sequence. Since the
+ * evaluations of the formulas and of their subformulas are tabulated, an event is recorded only the first time a
+ * formula is evaluated at a given step, namely when its value is not found in the table.
+ */
+@Name("jspear.FormulaEvaluation")
+@Label("Formula Evaluation")
+@Category({"jSpear", "Logic"})
+@Description("Evaluation of a DisTL formula at a step of an evolution sequence")
+public final class FormulaEvaluationEvent extends Event {
+
+    /**
+     * The type of this event, used to check whether the event is enabled before creating it.
+     */
+    public static final EventType TYPE = EventType.getEventType(FormulaEvaluationEvent.class);
+
+    @Label("Formula")
+    public String formula;
+
+    @Label("Step")
+    public int step;
+
+    @Label("Sample Size")
+    public int sampleSize;
+
+    @Label("Value")
+    public double value;
+
+}
@@ -0,0 +1,49 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Event recorded each time a monitor is evaluated on a new sample set.
+ */
+@Name("jspear.MonitorEvaluation")
+@Label("Monitor Evaluation")
+@Category({"jSpear", "Monitoring"})
+@Description("Evaluation of a monitor on the next sample set of a sequence")
+public final class MonitorEvaluationEvent extends Event {
+
+    @Label("Monitor")
+    public String monitor;
+
+    @Label("Samples")
+    public int samples;
+
+    @Label("Observed Sample Sets")
+    public int observed;
+
+}
@@ -89,6 +89,19 @@ public sealed interface Penalty permits
     }
 
 
+    /**
+     * Returns the effect of this penalty at the given step, namely <code>effectUpTo(step).get(step)</code>.
+     * Effects are cached, so that equal penalties return the same expression for the same step, and the
+     * evaluations of the expression cached by sample sets are reused by subsequent invocations.
+     *
+     * @param step a step.
+     * @return the effect of this penalty at the given step.
+     */
+    default DataStateExpression effectAt(int step) {
+        return PenaltyEffects.get(this, step);
+    }
+
+
     default double apply(DataState state, int step) {
         DataStateExpression effect = totalEffect().get(step);
         return effect.eval(state);
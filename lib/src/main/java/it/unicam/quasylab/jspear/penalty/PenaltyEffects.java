@@ -0,0 +1,84 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.penalty;
+
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The cache of the effects of penalties at given steps (see {@link Penalty#effectAt(int)}). At most
+ * {@link #CACHE_SIZE} effects are cached, and the least recently used one is evicted when a new one is added.
+ */
+final class PenaltyEffects {
+
+    /**
+     * Maximum number of cached effects.
+     */
+    static final int CACHE_SIZE = 256;
+
+    private static final Map<Key, DataStateExpression> effects = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, DataStateExpression> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private PenaltyEffects() {
+    }
+
+    /**
+     * Returns the effect of the given penalty at the given step.
+     *
+     * @param penalty a penalty.
+     * @param step a step.
+     * @return the effect of <code>penalty</code> at <code>step</code>.
+     * @throws IndexOutOfBoundsException if <code>step &lt; 0</code>.
+     */
+    static DataStateExpression get(Penalty penalty, int step) {
+        if (step < 0) {
+            throw new IndexOutOfBoundsException(step);
+        }
+        Key key = new Key(penalty, step);
+        synchronized (effects) {
+            DataStateExpression effect = effects.get(key);
+            if (effect != null) {
+                return effect;
+            }
+        }
+        Penalty current = penalty;
+        for (int i = 0; i < step; i++) {
+            current = current.next();
+        }
+        DataStateExpression effect = current.effect();
+        synchronized (effects) {
+            DataStateExpression previous = effects.putIfAbsent(key, effect);
+            return (previous != null ? previous : effect);
+        }
+    }
+
+    private record Key(Penalty penalty, int step) {
+    }
+
+}
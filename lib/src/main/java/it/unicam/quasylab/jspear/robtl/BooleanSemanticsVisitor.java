@@ -45,12 +45,12 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
 
     @Override
     public RobustnessFunction<Boolean> eval(RobustnessFormula formula) {
-        return formula.eval(this);
+        return new TabulatedRobustnessFunction<>(formula.eval(this));
     }
 
     @Override
     public RobustnessFunction<Boolean> evalAlways(AlwaysRobustnessFormula alwaysRobustnessFormula) {
-        RobustnessFunction<Boolean> argumentFunction = alwaysRobustnessFormula.getArgument().eval(this);
+        RobustnessFunction<Boolean> argumentFunction = eval(alwaysRobustnessFormula.getArgument());
         int from = alwaysRobustnessFormula.getFrom();
         int to = alwaysRobustnessFormula.getTo();
         if (parallel) {
@@ -77,21 +77,21 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
 
     @Override
     public RobustnessFunction<Boolean> evalConjunction(ConjunctionRobustnessFormula conjunctionRobustnessFormula) {
-        RobustnessFunction<Boolean> leftFunction = conjunctionRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<Boolean> rightFunction = conjunctionRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFunction<Boolean> leftFunction = eval(conjunctionRobustnessFormula.getLeftFormula());
+        RobustnessFunction<Boolean> rightFunction = eval(conjunctionRobustnessFormula.getRightFormula());
         return (sampleSize, step, sequence) -> leftFunction.eval(sampleSize, step, sequence)&&rightFunction.eval(sampleSize, step, sequence);
     }
 
     @Override
     public RobustnessFunction<Boolean> evalDisjunction(DisjunctionRobustnessFormula disjunctionRobustnessFormula) {
-        RobustnessFunction<Boolean> leftFunction = disjunctionRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<Boolean> rightFunction = disjunctionRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFunction<Boolean> leftFunction = eval(disjunctionRobustnessFormula.getLeftFormula());
+        RobustnessFunction<Boolean> rightFunction = eval(disjunctionRobustnessFormula.getRightFormula());
         return (sampleSize, step, sequence) -> leftFunction.eval(sampleSize, step, sequence)||rightFunction.eval(sampleSize, step, sequence);
     }
 
     @Override
     public RobustnessFunction<Boolean> evalEventually(EventuallyRobustnessFormula eventuallyRobustnessFormula) {
-        RobustnessFunction<Boolean> argumentFunction = eventuallyRobustnessFormula.getArgument().eval(this);
+        RobustnessFunction<Boolean> argumentFunction = eval(eventuallyRobustnessFormula.getArgument());
         int from = eventuallyRobustnessFormula.getFrom();
         int to = eventuallyRobustnessFormula.getTo();
         if (parallel) {
@@ -110,15 +110,15 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
 
     @Override
     public RobustnessFunction<Boolean> evalImplication(ImplicationRobustnessFormula implicationRobustnessFormula) {
-        RobustnessFunction<Boolean> leftFunction = implicationRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<Boolean> rightFunction = implicationRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFunction<Boolean> leftFunction = eval(implicationRobustnessFormula.getLeftFormula());
+        RobustnessFunction<Boolean> rightFunction = eval(implicationRobustnessFormula.getRightFormula());
         return (sampleSize, step, sequence) ->
                 (!leftFunction.eval(sampleSize, step, sequence))||rightFunction.eval(sampleSize, step, sequence);
     }
 
     @Override
     public RobustnessFunction<Boolean> evalNegation(NegationRobustnessFormula negationRobustnessFormula) {
-        RobustnessFunction<Boolean> argumentFunction = negationRobustnessFormula.getArgument().eval(this);
+        RobustnessFunction<Boolean> argumentFunction = eval(negationRobustnessFormula.getArgument());
         return (sampleSize, step, sequence) -> !argumentFunction.eval(sampleSize, step, sequence);
     }
 
@@ -129,8 +129,8 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
 
     @Override
     public RobustnessFunction<Boolean> evalUntil(UntilRobustnessFormula untilRobustnessFormula) {
-        RobustnessFunction<Boolean> leftFunction = untilRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<Boolean> rightFunction = untilRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFunction<Boolean> leftFunction = eval(untilRobustnessFormula.getLeftFormula());
+        RobustnessFunction<Boolean> rightFunction = eval(untilRobustnessFormula.getRightFormula());
         int from = untilRobustnessFormula.getFrom();
         int to = untilRobustnessFormula.getTo();
         if (parallel) {
@@ -139,10 +139,17 @@ public class BooleanSemanticsVisitor implements RobustnessFormulaVisitor<Boolean
                             IntStream.range(from+step, i).allMatch(j -> leftFunction.eval(sampleSize, j, sequence))
             );
         } else {
-            return (sampleSize, step, sequence) -> IntStream.range(from+step, to+step).sequential().anyMatch(
-                    i -> rightFunction.eval(sampleSize, i, sequence) &&
-                            IntStream.range(from+step, i).allMatch(j -> leftFunction.eval(sampleSize, j, sequence))
-            );
+            return (sampleSize, step, sequence) -> {
+                for (int i = from+step; i < to+step; i++) {
+                    if (rightFunction.eval(sampleSize, i, sequence)) {
+                        return true;
+                    }
+                    if (!leftFunction.eval(sampleSize, i, sequence)) {
+                        return false;
+                    }
+                }
+                return false;
+            };
         }
     }
 
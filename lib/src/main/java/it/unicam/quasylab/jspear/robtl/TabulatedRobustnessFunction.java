@@ -0,0 +1,65 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.robtl;
+
+import it.unicam.quasylab.jspear.EvolutionSequence;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A robustness function that tabulates its values, so that it is evaluated at most once for each step. Values
+ * are tabulated for the last evolution sequence and sample size the function has been evaluated with. Tabulated
+ * functions are used by the semantics visitors for all the subformulae, so that the evaluations of a formula at
+ * different steps, and of nested temporal operators, share the evaluations of the common subformulae.
+ *
+ * @param <T> formulae interpretation domain.
+ */
+final class TabulatedRobustnessFunction<T> implements RobustnessFunction<T> {
+
+    private final RobustnessFunction<T> function;
+
+    private volatile Table<T> table;
+
+    TabulatedRobustnessFunction(RobustnessFunction<T> function) {
+        this.function = function;
+    }
+
+    @Override
+    public T eval(int sampleSize, int step, EvolutionSequence sequence) {
+        Table<T> current = table;
+        if ((current == null)||(current.sequence != sequence)||(current.sampleSize != sampleSize)) {
+            current = new Table<>(sequence, sampleSize, new ConcurrentHashMap<>());
+            table = current;
+        }
+        T value = current.values.get(step);
+        if (value == null) {
+            value = function.eval(sampleSize, step, sequence);
+            current.values.putIfAbsent(step, value);
+        }
+        return value;
+    }
+
+    private record Table<T>(EvolutionSequence sequence, int sampleSize, Map<Integer, T> values) {}
+
+}
@@ -33,20 +33,23 @@ import org.apache.commons.math3.random.RandomGenerator;
  */
 public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<TruthValues> {
 
-    private final RandomGenerator rg;
+    private final long seed;
     private final int m;
     private final double z;
 
     /**
      * As the evaluation of confidence intervals is necessary to determine the three-valued semantics,
-     * the class takes the following two parameters:
+     * the class takes the following two parameters. A single seed is sampled from the given random generator,
+     * and the confidence intervals of the atomic formulae at each step are computed with the stream derived
+     * from this seed and from the step (see {@link DefaultRandomGenerator#streamOf(long, int)}), so that the
+     * evaluation of a formula at a step does not depend on the evaluations performed before.
      *
      * @param rg random generator
      * @param m number of repetitions for the bootstrap method
      * @param z the quantile of the normal distribution encoding the desired coverage probability.
      */
     public ThreeValuedSemanticsVisitor(RandomGenerator rg, int m, double z) {
-        this.rg = rg;
+        this.seed = rg.nextLong();
         this.m = m;
         this.z = z;
     }
@@ -61,12 +64,12 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
 
     @Override
     public RobustnessFunction<TruthValues> eval(RobustnessFormula formula) {
-        return formula.eval(this);
+        return new TabulatedRobustnessFunction<>(formula.eval(this));
     }
 
     @Override
     public RobustnessFunction<TruthValues> evalAlways(AlwaysRobustnessFormula alwaysRobustnessFormula) {
-        RobustnessFunction<TruthValues> argumentFunction = alwaysRobustnessFormula.getArgument().eval(this);
+        RobustnessFunction<TruthValues> argumentFunction = eval(alwaysRobustnessFormula.getArgument());
         int from = alwaysRobustnessFormula.getFrom();
         int to = alwaysRobustnessFormula.getTo();
         return ((sampleSize, step, sequence) -> {
@@ -88,7 +91,7 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
         RelationOperator relop = atomicRobustnessFormula.getRelationOperator();
         double value = atomicRobustnessFormula.getThreshold();
         return (sampleSize, step, sequence) -> {
-            double[] res = expr.evalCI(rg, step, sequence, sequence.apply(perturbation, step, sampleSize), m, z);
+            double[] res = expr.evalCI(DefaultRandomGenerator.streamOf(seed, step), step, sequence, sequence.apply(perturbation, step, sampleSize), m, z);
             if(res[1] < value && value < res[2]){return TruthValues.UNKNOWN;}
             if(relop.eval(res[0],value)){return TruthValues.TRUE;}
             return TruthValues.FALSE;
@@ -97,23 +100,23 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
 
     @Override
     public RobustnessFunction<TruthValues> evalConjunction(ConjunctionRobustnessFormula conjunctionRobustnessFormula) {
-        RobustnessFunction<TruthValues> leftFunction = conjunctionRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<TruthValues> rightFunction = conjunctionRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFunction<TruthValues> leftFunction = eval(conjunctionRobustnessFormula.getLeftFormula());
+        RobustnessFunction<TruthValues> rightFunction = eval(conjunctionRobustnessFormula.getRightFormula());
         return (sampleSize, step, sequence) ->
                 TruthValues.and(leftFunction.eval(sampleSize, step, sequence), rightFunction.eval(sampleSize, step, sequence));
     }
 
     @Override
     public RobustnessFunction<TruthValues> evalDisjunction(DisjunctionRobustnessFormula disjunctionRobustnessFormula) {
-        RobustnessFunction<TruthValues> leftFunction = disjunctionRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<TruthValues> rightFunction = disjunctionRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFunction<TruthValues> leftFunction = eval(disjunctionRobustnessFormula.getLeftFormula());
+        RobustnessFunction<TruthValues> rightFunction = eval(disjunctionRobustnessFormula.getRightFormula());
         return (sampleSize, step, sequence) ->
                 TruthValues.or(leftFunction.eval(sampleSize, step, sequence), rightFunction.eval(sampleSize, step, sequence));
     }
 
     @Override
     public RobustnessFunction<TruthValues> evalEventually(EventuallyRobustnessFormula eventuallyRobustnessFormula) {
-        RobustnessFunction<TruthValues> argumentFunction = eventuallyRobustnessFormula.getArgument().eval(this);
+        RobustnessFunction<TruthValues> argumentFunction = eval(eventuallyRobustnessFormula.getArgument());
         int from = eventuallyRobustnessFormula.getFrom();
         int to = eventuallyRobustnessFormula.getTo();
         return ((sampleSize, step, sequence) -> {
@@ -133,15 +136,15 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
 
     @Override
     public RobustnessFunction<TruthValues> evalImplication(ImplicationRobustnessFormula implicationRobustnessFormula) {
-        RobustnessFunction<TruthValues> leftFunction = implicationRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<TruthValues> rightFunction = implicationRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFunction<TruthValues> leftFunction = eval(implicationRobustnessFormula.getLeftFormula());
+        RobustnessFunction<TruthValues> rightFunction = eval(implicationRobustnessFormula.getRightFormula());
         return (sampleSize, step, sequence) ->
                 TruthValues.imply(leftFunction.eval(sampleSize, step, sequence),rightFunction.eval(sampleSize, step, sequence));
     }
 
     @Override
     public RobustnessFunction<TruthValues> evalNegation(NegationRobustnessFormula negationRobustnessFormula) {
-        RobustnessFunction<TruthValues> argumentFunction = negationRobustnessFormula.getArgument().eval(this);
+        RobustnessFunction<TruthValues> argumentFunction = eval(negationRobustnessFormula.getArgument());
         return (sampleSize, step, sequence) ->
                 TruthValues.neg(argumentFunction.eval(sampleSize, step, sequence));
     }
@@ -153,8 +156,8 @@ public class ThreeValuedSemanticsVisitor implements RobustnessFormulaVisitor<Tru
 
     @Override
     public RobustnessFunction<TruthValues> evalUntil(UntilRobustnessFormula untilRobustnessFormula) {
-        RobustnessFunction<TruthValues> leftFunction = untilRobustnessFormula.getLeftFormula().eval(this);
-        RobustnessFunction<TruthValues> rightFunction = untilRobustnessFormula.getRightFormula().eval(this);
+        RobustnessFunction<TruthValues> leftFunction = eval(untilRobustnessFormula.getLeftFormula());
+        RobustnessFunction<TruthValues> rightFunction = eval(untilRobustnessFormula.getRightFormula());
         int from = untilRobustnessFormula.getFrom();
         int to = untilRobustnessFormula.getTo();
         return ((sampleSize, step, sequence) -> {
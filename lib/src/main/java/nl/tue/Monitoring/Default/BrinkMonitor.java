@@ -70,7 +70,7 @@ public class BrinkMonitor extends DefaultUDisTLMonitor {
 
         SampleSet<PerceivedSystemState> muSample;
         if (formula.getSampledDistribution().size() == 0) {
-            muSample = sample.replica(sampleSize).applyDistribution(rg, mu, parallel);
+            muSample = sampleCache.get(sample, sampleSize, () -> sample.replica(sampleSize).applyDistribution(rg, mu, parallel));
         } else {
             // Turn system states into perceived system states
             muSample = new SampleSet<>(
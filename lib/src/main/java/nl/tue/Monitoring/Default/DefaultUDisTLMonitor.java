@@ -24,6 +24,7 @@ package nl.tue.Monitoring.Default;
 
 import it.unicam.quasylab.jspear.DefaultRandomGenerator;
 import it.unicam.quasylab.jspear.SampleSet;
+import it.unicam.quasylab.jspear.distl.TargetSampleCache;
 import nl.tue.Monitoring.PerceivedSystemState;
 import nl.tue.Monitoring.UDisTLMonitor;
 
@@ -37,6 +38,7 @@ public abstract class DefaultUDisTLMonitor implements UDisTLMonitor<OptionalDoub
     protected boolean parallel;
     protected final int semanticsEvaluationStep;
     protected final DefaultRandomGenerator rg;
+    protected final TargetSampleCache sampleCache = new TargetSampleCache();
 
     public DefaultUDisTLMonitor(int semanticsEvaluationStep, int sampleSize, boolean parallel) {
         this.sampleSize = sampleSize;
@@ -68,8 +70,15 @@ public abstract class DefaultUDisTLMonitor implements UDisTLMonitor<OptionalDoub
     @Override
     abstract public OptionalDouble evalNext(SampleSet<PerceivedSystemState> sample);
 
+    /**
+     * Sets the seed of the random generator of this monitor. The distributions sampled with the previous seed
+     * are discarded.
+     *
+     * @param seed the seed.
+     */
     public void setRandomGeneratorSeed(int seed){
         rg.setSeed(seed);
+        sampleCache.invalidate();
     }
 
     protected <P> Stream<P> maybeParallelize(Stream<P> s){
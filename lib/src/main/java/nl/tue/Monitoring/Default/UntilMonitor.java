@@ -24,13 +24,14 @@ package nl.tue.Monitoring.Default;
 
 import it.unicam.quasylab.jspear.SampleSet;
 import it.unicam.quasylab.jspear.distl.UntilDisTLFormula;
+import it.unicam.quasylab.jspear.jfr.MonitorEvaluationEvent;
+import it.unicam.quasylab.jspear.udistl.UDisTLFormula;
 import nl.tue.Monitoring.PerceivedSystemState;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.OptionalDouble;
 import java.util.OptionalInt;
-import java.util.stream.Stream;
 
 public class UntilMonitor extends DefaultUDisTLMonitor {
     UntilDisTLFormula formula;
@@ -38,8 +39,20 @@ public class UntilMonitor extends DefaultUDisTLMonitor {
     private OptionalDouble prevResult;
     private int computationsCounter;
     private final DefaultMonitorBuilder builder;
-    protected ArrayList<DefaultUDisTLMonitor> submonitors2;
-    protected ArrayList<DefaultUDisTLMonitor> submonitors1;
+    // Submonitors whose output may still change, or whose output has not been aggregated yet.
+    // The head of submonitors2 (resp. submonitors1) corresponds to tau = retired.
+    protected final ArrayDeque<Submonitor> submonitors2;
+    protected final ArrayDeque<Submonitor> submonitors1;
+    private final int finalizationStep1;
+    private final int finalizationStep2;
+    // number of values of tau for which submonitors have been created
+    private int created;
+    // number of values of tau whose submonitors have been retired
+    private int retired;
+    // min of the outputs of the retired submonitors for the left formula
+    private double retiredMin1 = Double.POSITIVE_INFINITY;
+    // max of mins computed for the retired values of tau
+    private double retiredMax = Double.NEGATIVE_INFINITY;
 
 
      public UntilMonitor(UntilDisTLFormula formula, int semanticEvaluationTimestep, int sampleSize, boolean parallel) {
@@ -49,13 +62,40 @@ public class UntilMonitor extends DefaultUDisTLMonitor {
         computationsCounter = 0;
 
         builder = new DefaultMonitorBuilder(sampleSize, parallel);
-        submonitors2 = new ArrayList<>();
-        submonitors1 = new ArrayList<>();
+        submonitors2 = new ArrayDeque<>();
+        submonitors1 = new ArrayDeque<>();
+        finalizationStep1 = finalizationStep(formula.getLeftFormula());
+        finalizationStep2 = finalizationStep(formula.getRightFormula());
+    }
 
+    /**
+     * Returns the number of observations after which the output of a monitor for the given formula
+     * does not change anymore, or <code>Integer.MAX_VALUE</code> if the formula has no time horizon.
+     */
+    private static int finalizationStep(UDisTLFormula formula) {
+        OptionalInt hrz = formula.getTimeHorizon();
+        if (hrz.isEmpty() || hrz.getAsInt() < 0) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(hrz.getAsInt(), formula.getFES());
     }
 
     @Override
     public OptionalDouble evalNext(SampleSet<PerceivedSystemState> sample) {
+        MonitorEvaluationEvent event = new MonitorEvaluationEvent();
+        event.begin();
+        OptionalDouble result = doEvalNext(sample);
+        event.end();
+        if (event.shouldCommit()) {
+            event.monitor = "until";
+            event.samples = sample.size();
+            event.observed = distSeqSizeCounter;
+            event.commit();
+        }
+        return result;
+    }
+
+    private OptionalDouble doEvalNext(SampleSet<PerceivedSystemState> sample) {
         distSeqSizeCounter += 1;
         int fes = formula.getFES();
         OptionalInt hrz = formula.getTimeHorizon();
@@ -100,45 +140,95 @@ public class UntilMonitor extends DefaultUDisTLMonitor {
          // assumes a  semEvalTimestep = 0, so it must be subtracted
          int lengthS = distSeqSizeCounter - semanticsEvaluationStep;
          int tb = Math.min(b, a + lengthS - formula.getFES());
+         int tauRange = tb - a;
 
         // 1. create monitors
         // For each new sample, distSeqSizeCounter (a proxy for |S|) is incremented by one, and thus tau and tau' have their
-        // ranges increased by one. This means a new submonitor for both formulae is needed.
+        // ranges increased by one. This means a new submonitor for both formulae is needed, as long as tau (resp. tau')
+        // can still be in the range [0, b-a] (resp. [0, b-a)).
         // semanticsEvaluationTimestep must be 0 for the submonitors because this monitor already discounts it in evalNext,
         // and submonitors only are fed after semanticsEvaluationTimestep has passed.
-
-        submonitors2.add(builder.build(formula.getRightFormula(), 0));
-        submonitors1.add(builder.build(formula.getLeftFormula(), 0));
+        if (created <= b - a) {
+            submonitors2.add(new Submonitor(builder.build(formula.getRightFormula(), 0)));
+        }
+        if (created < b - a) {
+            submonitors1.add(new Submonitor(builder.build(formula.getLeftFormula(), 0)));
+        }
+        created++;
 
         // 2. feed monitors
-        // The monitor submonitor1.get(i) corresponds to m[phi1](S[tau:]) for tau = semEvalTimestep + formula.getFrom() + i
-        // The monitor submonitor2.get(i) corresponds to m[phi2](S[tau:]) for tau = semEvalTimestep + formula.getFrom() + i
-
-        Stream<OptionalDouble> evals2stream = maybeParallelize(submonitors2.stream()).map((submonitor) -> submonitor.evalNext(sample));
-        Stream<OptionalDouble> evals1stream = maybeParallelize(submonitors1.stream()).map((submonitor) -> submonitor.evalNext(sample));
-
-        List<OptionalDouble> evals2 = evals2stream.toList();
-        List<OptionalDouble> evals1 = evals1stream.toList();
+        // The i-th monitor in submonitors1 corresponds to m[phi1](S[tau:]) for tau = semEvalTimestep + formula.getFrom() + retired + i
+        // The i-th monitor in submonitors2 corresponds to m[phi2](S[tau:]) for tau = semEvalTimestep + formula.getFrom() + retired + i
+        maybeParallelize(submonitors2.stream()).forEach(submonitor -> submonitor.evalNext(sample));
+        maybeParallelize(submonitors1.stream()).forEach(submonitor -> submonitor.evalNext(sample));
+
+        // 3. retire the submonitors whose output cannot change anymore
+        retire(b - a, tauRange);
+        if (tauRange < 0) {
+            return OptionalDouble.empty();
+        }
 
-        // 3. compute the max of mins
-        int tauRange = tb - a;
-        return maybeParallelizedIntRange(0,tauRange + 1).mapToDouble((tau) -> {
-            OptionalDouble eval2 = evals2.get(tau);
+        // 4. compute the max of mins, where the values for the retired taus are already aggregated
+        double min1 = retiredMin1;
+        double result = retiredMax;
+        Iterator<Submonitor> iterator2 = submonitors2.iterator();
+        Iterator<Submonitor> iterator1 = submonitors1.iterator();
+        for (int tau = retired; tau <= tauRange; tau++) {
+            OptionalDouble eval2 = iterator2.next().value;
             if (eval2.isEmpty()){
                 throw new RuntimeException("Until monitor feeds and asks but submonitors (2) cannot respond yet!");
             }
-            if (tau == 0){
-                return eval2.getAsDouble();
-            } else {
-                OptionalDouble eval1 = maybeParallelizedIntRange(0, tau).mapToDouble((tauprime) -> evals1.get(tauprime).orElse(Double.NaN)).min();
-                if (eval1.isEmpty() || Double.isNaN(eval1.getAsDouble())) {
-                    throw new RuntimeException("Until monitor feeds and asks but submonitors (2) cannot respond yet!");
-                }
-                return Math.min(eval2.getAsDouble(), eval1.getAsDouble());
+            if ((tau > 0) && Double.isNaN(min1)) {
+                throw new RuntimeException("Until monitor feeds and asks but submonitors (2) cannot respond yet!");
+            }
+            result = Math.max(result, Math.min(eval2.getAsDouble(), min1));
+            if (tau < tauRange) {
+                min1 = Math.min(min1, iterator1.next().value.orElse(Double.NaN));
             }
-        } ).max();
+        }
+        return OptionalDouble.of(result);
     }
 
+    /**
+     * Retires the submonitors, at the head of the queues, whose outputs do not change anymore. The contribution
+     * of each retired tau to the max of mins is accumulated in <code>retiredMax</code>, while the output of the
+     * retired submonitor for the left formula is accumulated in <code>retiredMin1</code>.
+     */
+    private void retire(int lastTau, int tauRange) {
+        while ((retired <= tauRange) && !submonitors2.isEmpty() && submonitors2.peekFirst().isFinal(finalizationStep2)) {
+            boolean last = (retired == lastTau);
+            if (!last && (submonitors1.isEmpty() || !submonitors1.peekFirst().isFinal(finalizationStep1))) {
+                return;
+            }
+            retiredMax = Math.max(retiredMax, Math.min(submonitors2.pollFirst().value.getAsDouble(), retiredMin1));
+            if (!last) {
+                retiredMin1 = Math.min(retiredMin1, submonitors1.pollFirst().value.getAsDouble());
+            }
+            retired++;
+        }
+    }
+
+    /**
+     * A submonitor together with the number of observations it received and its last output.
+     */
+    protected static class Submonitor {
+
+        private final DefaultUDisTLMonitor monitor;
+        private int observations;
+        private OptionalDouble value = OptionalDouble.empty();
 
+        Submonitor(DefaultUDisTLMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        void evalNext(SampleSet<PerceivedSystemState> sample) {
+            value = monitor.evalNext(sample);
+            observations++;
+        }
+
+        boolean isFinal(int finalizationStep) {
+            return (observations >= finalizationStep) && value.isPresent();
+        }
+    }
 
 }
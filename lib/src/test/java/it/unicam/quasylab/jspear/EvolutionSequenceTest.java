@@ -0,0 +1,382 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.distance.DistanceExpression;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateBooleanExpression;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.perturbation.AtomicPerturbation;
+import it.unicam.quasylab.jspear.perturbation.Perturbation;
+import nl.tue.Monitoring.PerceivedSystemState;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static it.unicam.quasylab.jspear.RandomWalk.x;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvolutionSequenceTest {
+
+    static final int SIZE = 100;
+    static final DistanceExpression EXPR = RandomWalk.maxDistance(0, 5);
+
+    static EvolutionSequence saveAndLoad(EvolutionSequence sequence) {
+        try {
+            Path file = Files.createTempFile("sequence", ".bin");
+            file.toFile().deleteOnExit();
+            sequence.save(file);
+            return EvolutionSequence.load(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Stream<UnaryOperator<EvolutionSequence>> getVariants() {
+        return Stream.of(
+                sequence -> {
+                    sequence.setWindow(EXPR.getTimeHorizon() + 1);
+                    return sequence;
+                },
+                sequence -> {
+                    sequence.setLookahead(4);
+                    return sequence;
+                },
+                sequence -> {
+                    sequence.generateUpTo(40);
+                    return saveAndLoad(sequence);
+                }
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getVariants")
+    void variantGivesSameDistances(UnaryOperator<EvolutionSequence> variant) {
+        EvolutionSequence sequence = RandomWalk.sequence(11, SIZE);
+        EvolutionSequence other = RandomWalk.sequence(13, SIZE);
+        EvolutionSequence modified = variant.apply(RandomWalk.sequence(11, SIZE));
+        for (int i = 0; i < 30; i++) {
+            assertEquals(EXPR.compute(i, sequence, other), EXPR.compute(i, modified, other));
+        }
+    }
+
+    @Test
+    void sameSeedGivesSameEvolutionSequence() {
+        EvolutionSequence first = RandomWalk.sequence(7, SIZE);
+        EvolutionSequence second = RandomWalk.sequence(7, SIZE);
+        assertArrayEquals(first.get(20).evalPenaltyFunction(ds -> ds.get(x)), second.get(20).evalPenaltyFunction(ds -> ds.get(x)));
+    }
+
+    @Test
+    void windowedSequenceReleasesOldSteps() {
+        EvolutionSequence sequence = RandomWalk.sequence(11, SIZE);
+        sequence.setWindow(10);
+        sequence.generateUpTo(34);
+        assertEquals(25, sequence.getFirstAvailableStep());
+        assertThrows(IllegalStateException.class, () -> sequence.get(0));
+    }
+
+    @Test
+    void stepsAreGeneratedInBackground() {
+        EvolutionSequence sequence = RandomWalk.sequence(11, SIZE);
+        assertSame(sequence.get(40), sequence.getAsync(40).join());
+        sequence.generateUpToAsync(50).join();
+        assertTrue(sequence.length() > 50);
+    }
+
+    @Test
+    void concurrentReadsGiveSameDistances() {
+        EvolutionSequence sequential = RandomWalk.sequence(23, SIZE);
+        EvolutionSequence concurrent = RandomWalk.sequence(23, SIZE);
+        EvolutionSequence other = RandomWalk.sequence(29, SIZE);
+        double[] expected = IntStream.range(0, 100).mapToDouble(i -> EXPR.compute(i, sequential, other)).toArray();
+        double[] actual = IntStream.range(0, 100).parallel().mapToDouble(i -> EXPR.compute(i, concurrent, other)).toArray();
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    void loadedSequenceKeepsTheAvailableSteps() {
+        EvolutionSequence sequence = RandomWalk.sequence(31, SIZE);
+        sequence.setWindow(20);
+        sequence.generateUpTo(39);
+        EvolutionSequence loaded = saveAndLoad(sequence);
+        assertEquals(sequence.length(), loaded.length());
+        assertEquals(sequence.getFirstAvailableStep(), loaded.getFirstAvailableStep());
+        assertArrayEquals(sequence.get(39).evalPenaltyFunction(ds -> ds.get(x)), loaded.get(39).evalPenaltyFunction(ds -> ds.get(x)));
+        assertTrue(loaded.get(39).getDataStateMatrix().isDirect());
+        assertThrows(IllegalStateException.class, () -> loaded.get(0));
+    }
+
+    @Test
+    void loadedSequenceKeepsTheMultiplicities() {
+        EvolutionSequence sequence = RandomWalk.sequence(37, SIZE);
+        Perturbation delayed = new AtomicPerturbation(1, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(x, ds.get(x) + 1.0))));
+        EvolutionSequence perturbed = sequence.apply(delayed, 10, 3);
+        perturbed.generateUpTo(12);
+        EvolutionSequence loaded = saveAndLoad(perturbed);
+        assertEquals(3, loaded.get(10).getMultiplicity());
+        assertEquals(3 * SIZE, loaded.get(10).size());
+        assertEquals(3 * SIZE, loaded.get(12).size());
+        assertArrayEquals(perturbed.get(10).evalPenaltyFunction(ds -> ds.get(x)), loaded.get(10).evalPenaltyFunction(ds -> ds.get(x)));
+        assertEquals(perturbed.get(12).distance(ds -> ds.get(x), sequence.get(12)), loaded.get(12).distance(ds -> ds.get(x), sequence.get(12)));
+    }
+
+    @Test
+    void perceivedStatesAreSharedAndKeepTheMultiplicities() {
+        EvolutionSequence sequence = RandomWalk.sequence(7, SIZE);
+        Perturbation delayed = new AtomicPerturbation(1, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(x, ds.get(x) + 1.0))));
+        EvolutionSequence perturbed = sequence.apply(delayed, 10, 3);
+        SampleSet<PerceivedSystemState> perceived = perturbed.getAsPerceivedSystemStates(10);
+        assertSame(perceived, perturbed.getAsPerceivedSystemStates(10));
+        assertEquals(3, perceived.getMultiplicity());
+        assertEquals(3 * SIZE, perceived.size());
+        assertArrayEquals(perturbed.get(10).evalPenaltyFunction(ds -> ds.get(x)), perceived.evalPenaltyFunction(ds -> ds.get(x)));
+    }
+
+    @Test
+    void perturbedSequencesShareThePrefixAndAreCached() {
+        EvolutionSequence sequence = RandomWalk.sequence(5, SIZE);
+        Perturbation perturbation = new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(x, ds.get(x) + 1.0))));
+        EvolutionSequence perturbed = sequence.apply(perturbation, 10, 2);
+        assertSame(sequence.get(9), perturbed.get(9));
+        assertEquals(2 * SIZE, perturbed.get(10).size());
+        assertEquals(2 * SIZE, perturbed.get(15).size());
+        assertNotSame(perturbed, sequence.apply(perturbation, 10, 2));
+        sequence.setPerturbationCacheSize(4);
+        EvolutionSequence cached = sequence.apply(perturbation, 10, 2);
+        assertSame(cached, sequence.apply(perturbation, 10, 2));
+        assertNotSame(cached, sequence.apply(perturbation, 11, 2));
+    }
+
+    @Test
+    void perturbedSequencesAreIndependentUnlessCommonRandomNumbersAreUsed() {
+        Perturbation perturbation = new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(x, ds.get(x) + rg.nextDouble()))));
+        EvolutionSequence sequence = RandomWalk.sequence(23, SIZE);
+        double[] first = sequence.apply(perturbation, 5, 1).get(10).evalPenaltyFunction(ds -> ds.get(x));
+        double[] second = sequence.apply(perturbation, 5, 1).get(10).evalPenaltyFunction(ds -> ds.get(x));
+        assertFalse(Arrays.equals(first, second));
+        sequence.setCommonRandomNumbers(true);
+        double[] common = sequence.apply(perturbation, 5, 1).get(10).evalPenaltyFunction(ds -> ds.get(x));
+        assertArrayEquals(common, sequence.apply(perturbation, 5, 1).get(10).evalPenaltyFunction(ds -> ds.get(x)));
+    }
+
+    @Test
+    void perturbedSequencesDoNotDependOnTheGenerationOrder() {
+        Perturbation perturbation = new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(x, ds.get(x) + rg.nextDouble()))));
+        EvolutionSequence sequence = RandomWalk.sequence(17, SIZE);
+        EvolutionSequence perturbed = sequence.apply(perturbation, 5, 1);
+        EvolutionSequence other = RandomWalk.sequence(17, SIZE);
+        other.setLookahead(8);
+        EvolutionSequence otherPerturbed = other.apply(perturbation, 5, 1);
+        otherPerturbed.setLookahead(8);
+        otherPerturbed.get(30);
+        for (int i = 30; i >= 0; i--) {
+            assertArrayEquals(perturbed.get(i).evalPenaltyFunction(ds -> ds.get(x)), otherPerturbed.get(i).evalPenaltyFunction(ds -> ds.get(x)));
+            assertArrayEquals(sequence.get(i).evalPenaltyFunction(ds -> ds.get(x)), other.get(i).evalPenaltyFunction(ds -> ds.get(x)));
+        }
+    }
+
+    @Test
+    void failuresInBackgroundAreRaisedByTheNextAccess() throws InterruptedException {
+        Thread caller = Thread.currentThread();
+        CountDownLatch failed = new CountDownLatch(1);
+        SimulationMonitor monitor = new SimulationMonitor() {
+            @Override
+            public void startSamplingsOfStep(int step) {
+                if ((step >= 3) && (Thread.currentThread() != caller)) {
+                    failed.countDown();
+                    throw new IllegalStateException("failed in background");
+                }
+            }
+
+            @Override
+            public void endSamplingsOfStep(int step) {
+            }
+
+            @Override
+            public boolean hasBeenCancelled() {
+                return false;
+            }
+        };
+        EvolutionSequence sequence = new EvolutionSequence(monitor, new DefaultRandomGenerator(0), rg -> RandomWalk.initialState(), SIZE);
+        sequence.setLookahead(5);
+        sequence.get(0);
+        failed.await();
+        IllegalStateException raised = assertThrows(IllegalStateException.class, () -> sequence.generateUpTo(1));
+        assertEquals("failed in background", raised.getMessage());
+        sequence.get(0);
+        sequence.setLookahead(0);
+        EvolutionSequence expected = new EvolutionSequence(new DefaultRandomGenerator(0), rg -> RandomWalk.initialState(), SIZE);
+        assertArrayEquals(expected.get(5).evalPenaltyFunction(ds -> ds.get(x)), sequence.get(5).evalPenaltyFunction(ds -> ds.get(x)));
+    }
+
+    @Test
+    void batchSystemsAreAdvancedInBlocks() {
+        int size = 2 * SampleSet.BATCH_SIZE + 1;
+        EvolutionSequence sequence = new EvolutionSequence(new DefaultRandomGenerator(0), rg -> new Counter(new DataState(new double[]{0.0})), size);
+        SampleSet<SystemState> reached = sequence.get(3);
+        assertEquals(size, reached.size());
+        assertTrue(reached.stream().allMatch(s -> s.getDataState().get(x) == 3.0));
+    }
+
+    /**
+     * A model that can only be advanced in blocks.
+     */
+    record Counter(DataState state) implements BatchSystem {
+
+        @Override
+        public void sampleNext(RandomGenerator rg, SystemState[] states, int from, int to) {
+            for (int i = from; i < to; i++) {
+                DataState current = states[i].getDataState();
+                states[i] = new Counter(current.apply(List.of(new DataStateUpdate(x, current.get(x) + 1))));
+            }
+        }
+
+        @Override
+        public DataState getDataState() {
+            return state;
+        }
+
+        @Override
+        public SystemState sampleNext(RandomGenerator rg) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SystemState sampleNextCond(RandomGenerator rg, DataStateBooleanExpression cond) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SystemState setDataState(DataState dataState) {
+            return new Counter(dataState);
+        }
+    }
+
+    @Test
+    void cancelledGenerationStopsAndReportsProgress() {
+        List<SimulationProgress> reported = new ArrayList<>();
+        SimulationMonitor monitor = new SimulationMonitor() {
+            @Override
+            public void startSamplingsOfStep(int step) {
+            }
+
+            @Override
+            public void endSamplingsOfStep(int step) {
+            }
+
+            @Override
+            public boolean hasBeenCancelled() {
+                return reported.size() >= 3;
+            }
+
+            @Override
+            public void progressOfSampling(SimulationProgress progress) {
+                reported.add(progress);
+            }
+        };
+        EvolutionSequence sequence = new EvolutionSequence(monitor, new DefaultRandomGenerator(0), rg -> RandomWalk.initialState(), SIZE);
+        assertThrows(CancellationException.class, () -> sequence.generateUpTo(10));
+        assertEquals(4, sequence.length());
+        assertEquals(3, reported.get(2).step());
+        assertEquals(3 * SIZE, reported.get(2).samples());
+        assertEquals(10, reported.get(2).targetStep());
+        assertTrue(reported.get(0).allocatedBytes() >= -1);
+        assertTrue(reported.get(0).allocatedBytes() <= reported.get(2).allocatedBytes());
+    }
+
+    @Test
+    void cancelledEvaluationStops() {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        SimulationMonitor monitor = new SimulationMonitor() {
+            @Override
+            public void startSamplingsOfStep(int step) {
+            }
+
+            @Override
+            public void endSamplingsOfStep(int step) {
+            }
+
+            @Override
+            public boolean hasBeenCancelled() {
+                return cancelled.get();
+            }
+        };
+        EvolutionSequence sequence = new EvolutionSequence(monitor, new DefaultRandomGenerator(0), rg -> RandomWalk.initialState(), SIZE);
+        sequence.generateUpTo(10);
+        EvolutionSequence other = RandomWalk.sequence(1, SIZE);
+        double[] expected = EXPR.compute(0, 5, sequence, other);
+        cancelled.set(true);
+        assertThrows(CancellationException.class, () -> EXPR.compute(0, 5, sequence, other));
+        assertThrows(CancellationException.class, () -> EXPR.compute(3, other, sequence));
+        cancelled.set(false);
+        assertArrayEquals(expected, EXPR.compute(0, 5, sequence, other));
+    }
+
+    @Test
+    void conditionalSamplingReachesTheStatesOfSingleSteps() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doAction((rg, ds) -> List.of(new DataStateUpdate(x, ds.get(x) + rg.nextDouble())), registry.reference("Ctrl")));
+        List<SystemState> systems = List.of(RandomWalk.initialState(),
+                new ControlledSystem(registry.reference("Ctrl"), (rg, ds) -> ds, new DataState(new double[]{0.0})));
+        for (SystemState system: systems) {
+            DataStateBooleanExpression condition = ds -> ds.getStep() == 10;
+            SystemState reached = system.sampleNextCond(new DefaultRandomGenerator(5), condition);
+            RandomGenerator rg = new DefaultRandomGenerator(5);
+            SystemState expected = system;
+            for (int i = 0; i < 10; i++) {
+                expected = expected.sampleNext(rg);
+            }
+            assertEquals(10, reached.getDataState().getStep());
+            assertEquals(expected.getDataState().get(x), reached.getDataState().get(x));
+            DataState state = reached.getDataState();
+            double value = state.get(x);
+            reached.sampleNextCond(new DefaultRandomGenerator(5), ds -> ds.getStep() == 15);
+            assertEquals(value, state.get(x));
+        }
+    }
+
+}
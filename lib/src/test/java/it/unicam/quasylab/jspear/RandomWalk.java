@@ -0,0 +1,81 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.controller.Controller;
+import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.distance.AtomicDistanceExpression;
+import it.unicam.quasylab.jspear.distance.DistanceExpression;
+import it.unicam.quasylab.jspear.distance.MaxIntervalDistanceExpression;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateFunction;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+
+import java.util.List;
+
+/**
+ * Model shared by tests: a single variable <code>x</code> performing a random walk whose increments are
+ * uniformly distributed in <code>[-0.5,0.5]</code>.
+ */
+public final class RandomWalk {
+
+    public static final int x = 0;
+
+    private RandomWalk() {
+    }
+
+    /**
+     * Returns the initial state of the random walk, where <code>x</code> is <code>0</code>.
+     *
+     * @return the initial state of the random walk.
+     */
+    public static SystemState initialState() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Ctrl", Controller.doTick(registry.get("Ctrl")));
+        DataStateFunction environment = (rg, ds) -> ds.apply(List.of(new DataStateUpdate(x, ds.get(x) + rg.nextDouble() - 0.5)));
+        return new ControlledSystem(registry.reference("Ctrl"), environment, new DataState(new double[]{0.0}));
+    }
+
+    /**
+     * Returns an evolution sequence of the random walk.
+     *
+     * @param seed seed of the random generator.
+     * @param size number of samplings at each time step.
+     * @return an evolution sequence of the random walk.
+     */
+    public static EvolutionSequence sequence(long seed, int size) {
+        return new EvolutionSequence(new DefaultRandomGenerator(seed), rg -> initialState(), size);
+    }
+
+    /**
+     * Returns the maximal distance between the values of <code>x</code> in the interval <code>[from,to]</code>.
+     *
+     * @param from left bound of the interval.
+     * @param to right bound of the interval.
+     * @return the maximal distance between the values of <code>x</code> in the interval <code>[from,to]</code>.
+     */
+    public static DistanceExpression maxDistance(int from, int to) {
+        return new MaxIntervalDistanceExpression(new AtomicDistanceExpression(ds -> ds.get(x), (v1, v2) -> Math.abs(v2 - v1)), from, to);
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *                Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear;
+
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import it.unicam.quasylab.jspear.penalty.AtomicPenalty;
+import nl.tue.Monitoring.PerceivedSystemState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static it.unicam.quasylab.jspear.RandomWalk.x;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleSetTest {
+
+    static final int SIZE = 100;
+
+    static SampleSet<SystemState> sample(long seed, int size) {
+        return SampleSet.generate(new DefaultRandomGenerator(seed), rg -> RandomWalk.initialState(), size)
+                .apply(new DefaultRandomGenerator(seed + 1), (r, s) -> s.sampleNext(r), false);
+    }
+
+    @Test
+    void sameSeedGivesSameSampleSetInParallelAndSequentialEvolution() {
+        SampleSet<SystemState> initial = SampleSet.generate(new DefaultRandomGenerator(0), rg -> RandomWalk.initialState(), SIZE);
+        SampleSet<SystemState> parallel = initial;
+        SampleSet<SystemState> sequential = initial;
+        DefaultRandomGenerator rgParallel = new DefaultRandomGenerator(42);
+        DefaultRandomGenerator rgSequential = new DefaultRandomGenerator(42);
+        for (int i = 0; i < 10; i++) {
+            parallel = parallel.apply(rgParallel, (r, s) -> s.sampleNext(r), true);
+            sequential = sequential.apply(rgSequential, (r, s) -> s.sampleNext(r), false);
+        }
+        assertArrayEquals(
+                sequential.stream().mapToDouble(s -> s.getDataState().get(x)).toArray(),
+                parallel.stream().mapToDouble(s -> s.getDataState().get(x)).toArray());
+    }
+
+    static Stream<UnaryOperator<SampleSet<SystemState>>> getBackends() {
+        return Stream.of(
+                sample -> SampleSet.<SystemState>of(sample.getDataStateMatrix(), PerceivedSystemState::new),
+                SampleSet::toDirect
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getBackends")
+    void backendGivesSameDistances(UnaryOperator<SampleSet<SystemState>> backend) {
+        EvolutionSequence sequence = RandomWalk.sequence(3, SIZE);
+        SampleSet<SystemState> objects = sequence.get(5);
+        SampleSet<SystemState> other = sequence.get(10);
+        SampleSet<SystemState> stored = backend.apply(objects);
+        assertArrayEquals(objects.getDataStateMatrix().column(x), stored.getDataStateMatrix().column(x));
+        assertArrayEquals(objects.evalPenaltyFunction(ds -> ds.get(x)), stored.evalPenaltyFunction(ds -> ds.get(x)));
+        double expected = new SampleSet<>(objects.stream().toList()).distance(ds -> ds.get(x), other);
+        assertEquals(expected, stored.distance(ds -> ds.get(x), backend.apply(other)));
+    }
+
+    @Test
+    void directSampleSetKeepsItsElements() {
+        SampleSet<SystemState> objects = RandomWalk.sequence(3, SIZE).get(5);
+        SampleSet<SystemState> direct = objects.toDirect();
+        assertTrue(direct.getDataStateMatrix().isDirect());
+        assertEquals(objects.stream().toList(), direct.stream().toList());
+    }
+
+    @Test
+    void replicatedSampleSetGivesSameDistances() {
+        SampleSet<SystemState> small = sample(5, 30);
+        SampleSet<SystemState> replica = small.replica(4);
+        SampleSet<SystemState> copy = new SampleSet<>(replica.stream().toList());
+        SampleSet<SystemState> other = RandomWalk.sequence(3, SIZE).get(1).replica(6);
+        assertEquals(4, replica.getMultiplicity());
+        assertEquals(120, replica.size());
+        assertArrayEquals(small.evalPenaltyFunction(ds -> ds.get(x)), replica.evalPenaltyFunction(ds -> ds.get(x)));
+        assertEquals(30, replica.getDataStateMatrix().size());
+        assertEquals(Arrays.stream(copy.evalPenaltyFunction(ds -> ds.get(x))).average().orElseThrow(),
+                Arrays.stream(replica.evalPenaltyFunction(ds -> ds.get(x))).average().orElseThrow(), 1.0E-12);
+        assertThrows(UnsupportedOperationException.class, () -> replica.add(small.stream().findFirst().orElseThrow()));
+        double expected = copy.distance(ds -> ds.get(x), other);
+        assertEquals(expected, replica.distance(ds -> ds.get(x), other), 1.0E-12);
+        double expectedLeq = copy.distanceLeq(ds -> ds.get(x), other);
+        assertEquals(expectedLeq, replica.distanceLeq(ds -> ds.get(x), other), 1.0E-12);
+        double expectedGeq = copy.distanceGeq(ds -> ds.get(x), other);
+        assertEquals(expectedGeq, replica.distanceGeq(ds -> ds.get(x), other), 1.0E-12);
+    }
+
+    @Test
+    void distanceIsDefinedForSampleSetsOfAnySize() {
+        SampleSet<SystemState> first = sample(5, 30);
+        SampleSet<SystemState> second = sample(7, 45);
+        SampleSet<SystemState> firstCopy = new SampleSet<>(first.replica(3).stream().toList());
+        SampleSet<SystemState> secondCopy = new SampleSet<>(second.replica(2).stream().toList());
+        double expected = firstCopy.distance(ds -> ds.get(x), secondCopy);
+        assertEquals(expected, first.distance(ds -> ds.get(x), second), 1.0E-12);
+        assertEquals(expected, second.distance(ds -> ds.get(x), first), 1.0E-12);
+        double expectedLeq = firstCopy.distanceLeq(ds -> ds.get(x), secondCopy);
+        assertEquals(expectedLeq, first.distanceLeq(ds -> ds.get(x), second), 1.0E-12);
+        double expectedGeq = firstCopy.distanceGeq(ds -> ds.get(x), secondCopy);
+        assertEquals(expectedGeq, first.distanceGeq(ds -> ds.get(x), second), 1.0E-12);
+    }
+
+    @Test
+    void cachedPenaltiesAreNotExposed() {
+        SampleSet<SystemState> sample = RandomWalk.sequence(17, SIZE).get(4);
+        DataStateExpression f = ds -> ds.get(x);
+        double[] values = sample.evalPenaltyFunction(f);
+        double[] expected = values.clone();
+        values[0] = Double.NaN;
+        assertArrayEquals(expected, sample.evalPenaltyFunction(f));
+        assertEquals(0.0, sample.distance(f, sample));
+    }
+
+    @Test
+    void bootstrapIsReproducibleAndBracketsTheDistance() {
+        EvolutionSequence sequence = RandomWalk.sequence(19, SIZE);
+        DataStateExpression f = ds -> (ds.get(x) + 5.0) / 10.0;
+        SampleSet<SystemState> first = sequence.get(5);
+        SampleSet<SystemState> second = sequence.get(25);
+        double[] ci = first.bootstrapDistance(new DefaultRandomGenerator(1), f, second, 500, 1.96);
+        assertArrayEquals(ci, first.bootstrapDistance(new DefaultRandomGenerator(1), f, second, 500, 1.96));
+        double distance = first.distance(f, second);
+        assertTrue((ci[0] <= distance) && (distance <= ci[1]));
+    }
+
+    @Test
+    void penaltiesAreEvaluatedOnceForEachStep() {
+        SampleSet<SystemState> first = sample(5, 30);
+        SampleSet<SystemState> second = sample(7, 45);
+        AtomicInteger evaluations = new AtomicInteger();
+        DataStateExpression f = ds -> {
+            evaluations.incrementAndGet();
+            return ds.get(x);
+        };
+        double expected = first.distanceLeq(ds -> ds.get(x), second);
+        assertEquals(expected, first.distanceLeq(new AtomicPenalty(2, f), second, 2));
+        assertEquals(expected, first.distanceLeq(new AtomicPenalty(2, f), second, 2));
+        assertEquals(first.distanceGeq(ds -> ds.get(x), second), first.distanceGeq(new AtomicPenalty(2, f), second, 2));
+        assertEquals(75, evaluations.get());
+        assertEquals(0.0, first.distanceLeq(new AtomicPenalty(2, f), second, 1));
+    }
+
+    @Test
+    void leastRecentlyUsedPenaltiesAreEvicted() {
+        SampleSet<SystemState> sample = sample(5, 30);
+        AtomicInteger evaluations = new AtomicInteger();
+        DataStateExpression f = ds -> {
+            evaluations.incrementAndGet();
+            return ds.get(x);
+        };
+        sample.evalPenaltyFunction(f);
+        for (int i = 0; i < 2 * SampleSet.PENALTY_CACHE_SIZE; i++) {
+            double shift = i;
+            sample.evalPenaltyFunction(ds -> ds.get(x) + shift);
+            sample.evalPenaltyFunction(f);
+        }
+        assertEquals(30, evaluations.get());
+    }
+
+}
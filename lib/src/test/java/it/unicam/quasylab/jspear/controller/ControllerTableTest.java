@@ -0,0 +1,132 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.controller;
+
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControllerTableTest {
+
+    static final int x = 0;
+    static final int y = 1;
+
+    static Controller controller(ControllerRegistry registry) {
+        registry.set("Up", Controller.ifThenElse(
+                ds -> ds.get(x) < 10,
+                Controller.doAction((rg, ds) -> List.of(new DataStateUpdate(x, ds.get(x) + 1)), registry.reference("Up")),
+                new StepController((rg, ds) -> rg.nextInt(3), registry.reference("Down"))
+        ));
+        registry.set("Down", new GenerativeChoiceController(0.5,
+                Controller.doAction((rg, ds) -> List.of(new DataStateUpdate(x, ds.get(x) - 2)), registry.reference("Up")),
+                new StepController(2, registry.reference("Down"))
+        ));
+        registry.set("Noise", Controller.doAction((rg, ds) -> List.of(new DataStateUpdate(y, rg.nextDouble())), registry.reference("Noise")));
+        return new ParallelController(registry.reference("Up"), new ProbabilisticInterleavingController(0.3, registry.reference("Noise"), registry.reference("Down")));
+    }
+
+    static double[][] run(Controller controller, int steps) {
+        DefaultRandomGenerator rg = new DefaultRandomGenerator(7);
+        DataState state = new DataState(new double[2]);
+        double[][] result = new double[steps][];
+        for (int i = 0; i < steps; i++) {
+            EffectStep<Controller> step = controller.next(rg, state);
+            state = state.apply(step.effect());
+            controller = step.next();
+            result[i] = new double[]{state.get(x), state.get(y)};
+        }
+        return result;
+    }
+
+    @Test
+    void compiledControllersBehaveAsTheOriginalOnes() {
+        Controller original = controller(new ControllerRegistry());
+        ControllerTable table = new ControllerTable();
+        Controller compiled = table.compile(controller(new ControllerRegistry()));
+        assertArrayEquals(run(original, 200), run(compiled, 200));
+        int size = table.size();
+        run(compiled, 200);
+        assertEquals(size, table.size());
+    }
+
+    @Test
+    void referencesExecuteCompiledRegistries() {
+        ControllerRegistry registry = new ControllerRegistry();
+        Controller original = controller(registry);
+        double[][] expected = run(original, 100);
+        registry.compile(new ControllerTable());
+        assertArrayEquals(expected, run(original, 100));
+        assertSame(registry.reference("Up"), registry.reference("Up"));
+    }
+
+    @Test
+    void longStepsDoNotGrowTheTable() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Wait", new StepController((rg, ds) -> Integer.MAX_VALUE, registry.reference("Wait")));
+        registry.set("Tick", Controller.doAction((rg, ds) -> List.of(new DataStateUpdate(x, ds.get(x) + 1)), new StepController(3, registry.reference("Tick"))));
+        ControllerTable table = new ControllerTable();
+        Controller compiled = table.compile(new ParallelController(registry.reference("Wait"), registry.reference("Tick")));
+        double[][] result = run(compiled, 20);
+        int size = table.size();
+        assertTrue(size < ControllerTable.MAX_COUNTDOWN);
+        run(compiled, 20);
+        assertEquals(size, table.size());
+        assertEquals(4.0, result[19][0]);
+        assertArrayEquals(run(new ParallelController(registry.reference("Wait"), registry.reference("Tick")), 20), result);
+    }
+
+    @Test
+    void countdownsAndTheirCompositionsAreStatesOfTheTable() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Slow", Controller.doAction((rg, ds) -> List.of(new DataStateUpdate(x, ds.get(x) + 1)), new StepController((rg, ds) -> 1 + rg.nextInt(5), registry.reference("Slow"))));
+        registry.set("Fast", Controller.doAction((rg, ds) -> List.of(new DataStateUpdate(y, ds.get(y) + 1)), new StepController(2, registry.reference("Fast"))));
+        ControllerTable table = new ControllerTable();
+        Controller compiled = table.compile(new ParallelController(registry.reference("Slow"), new ProbabilisticInterleavingController(0.5, registry.reference("Fast"), registry.reference("Slow"))));
+        DefaultRandomGenerator rg = new DefaultRandomGenerator(11);
+        DataState state = new DataState(new double[2]);
+        Controller controller = compiled;
+        for (int i = 0; i < 500; i++) {
+            EffectStep<Controller> step = controller.next(rg, state);
+            assertSame(step.next(), table.compile(step.next()));
+            state = state.apply(step.effect());
+            controller = step.next();
+        }
+    }
+
+    @Test
+    void unguardedRecursionIsRejected() {
+        ControllerRegistry registry = new ControllerRegistry();
+        registry.set("Loop", new ExecController(registry.reference("Loop")));
+        assertThrows(IllegalArgumentException.class, () -> new ControllerTable().compile(registry.reference("Loop")));
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distance;
+
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.RandomWalk;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static it.unicam.quasylab.jspear.RandomWalk.x;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class DistanceExpressionTest {
+
+    static void assertRangeEvaluationIsPointwise(DistanceExpression expr) {
+        EvolutionSequence seq1 = RandomWalk.sequence(1, 50);
+        EvolutionSequence seq2 = RandomWalk.sequence(2, 50);
+        assertArrayEquals(
+                IntStream.rangeClosed(3, 20).mapToDouble(i -> expr.compute(i, seq1, seq2)).toArray(),
+                expr.compute(3, 20, seq1, seq2));
+    }
+
+    @Test
+    void rangeEvaluationOfIntervalExpressions() {
+        DistanceExpression atomic = new AtomicDistanceExpression(ds -> ds.get(x) / 10.0, (v1, v2) -> Math.abs(v2 - v1));
+        assertRangeEvaluationIsPointwise(new MaxIntervalDistanceExpression(atomic, 2, 7));
+        assertRangeEvaluationIsPointwise(new MinIntervalDistanceExpression(new MaxIntervalDistanceExpression(atomic, 0, 3), 1, 5));
+    }
+
+    @Test
+    void rangeEvaluationOfUntilExpressions() {
+        DistanceExpression left = new AtomicDistanceExpression(ds -> ds.get(x) / 10.0, (v1, v2) -> Math.abs(v2 - v1));
+        DistanceExpression right = new ThresholdDistanceExpression(new AtomicDistanceExpressionLeq(ds -> ds.get(x) / 10.0), RelationOperator.LESS_THAN, 0.05);
+        assertRangeEvaluationIsPointwise(new UntilDistanceExpression(left, 1, 6, right));
+        assertRangeEvaluationIsPointwise(new UntilDistanceExpression(right, 0, 1, left));
+        assertRangeEvaluationIsPointwise(new UntilDistanceExpression(new AtomicDistanceExpression(ds -> ds.get(x) / 20.0, (v1, v2) -> Math.abs(v2 - v1)), 2, 9, left));
+        assertRangeEvaluationIsPointwise(new ConvexCombinationDistanceExpression(new double[]{0.5, 0.5},
+                new DistanceExpression[]{new UntilDistanceExpression(left, 0, 4, new MaxIntervalDistanceExpression(right, 0, 2)), new MinDistanceExpression(left, right)}));
+    }
+
+}
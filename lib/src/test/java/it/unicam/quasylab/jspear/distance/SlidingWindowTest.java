@@ -0,0 +1,61 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.distance;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class SlidingWindowTest {
+
+    static double[] until(double[] left, double[] right, int width) {
+        double[] result = new double[right.length-width+1];
+        for (int k = 0; k < result.length; k++) {
+            double res = Double.POSITIVE_INFINITY;
+            double resL = 0.0;
+            for (int i = k; i < k+width; i++) {
+                if (i > k) {
+                    resL = Math.max(resL, left[i-1]);
+                }
+                res = Math.min(res, Math.max(right[i], resL));
+            }
+            result[k] = res;
+        }
+        return result;
+    }
+
+    @Test
+    void untilIsEvaluatedOnAllWindows() {
+        Random random = new Random(0);
+        for (int width = 1; width < 10; width++) {
+            for (int n = 1; n < 30; n++) {
+                double[] right = random.doubles(n+width-1, -0.1, 1.1).toArray();
+                double[] left = random.doubles(n+width-2, -0.1, 1.1).toArray();
+                assertArrayEquals(until(left, right, width), SlidingWindow.until(left, right, width));
+            }
+        }
+    }
+
+}
@@ -33,9 +33,15 @@ import org.apache.commons.math3.random.RandomGenerator;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DoubleSemanticsVisitorTest {
 
@@ -124,4 +130,101 @@ public class DoubleSemanticsVisitorTest {
         double parEvaluation = parallelSemanticsEvaluator.eval(phi).eval(SAMPLE_SIZE, semanticsEvalTimestep, sequence);
         assertEquals( -0.09090909090909091, parEvaluation);
     }
+
+    @Test
+    void tabulatedEvaluationOnAnIntervalGivesSameValues() {
+        EvolutionSequence sequence = getTestES1();
+        DataStateFunction mu = (rg, ds) -> ds.apply(
+                List.of(new DataStateUpdate(t, 0),
+                        new DataStateUpdate(x, 0.0)
+                ));
+        DisTLFormula target = new TargetDisTLFormula(mu, ds -> ds.get(x), 0.0);
+        DisTLFormula phi = new AlwaysDisTLFormula(
+                new UntilDisTLFormula(new NegationDisTLFormula(target), 1, 4, new EventuallyDisTLFormula(target, 0, 3)), 0, 5);
+
+        DisTLFunction<Double> targetFunction = new DoubleSemanticsVisitor().eval(target);
+        double[] atoms = IntStream.rangeClosed(0, 10 + 5 + 4 + 3).mapToDouble(step -> targetFunction.eval(SAMPLE_SIZE, step, sequence)).toArray();
+        DoubleSemanticsVisitor semanticsEvaluator = new DoubleSemanticsVisitor();
+        double[] evaluations = semanticsEvaluator.eval(phi, SAMPLE_SIZE, 0, 10, sequence);
+        for (int step = 0; step <= 10; step++) {
+            assertEquals(always(until(atoms, step), 5), evaluations[step]);
+            double single = new DoubleSemanticsVisitor().eval(phi).eval(SAMPLE_SIZE, step, sequence);
+            assertEquals(evaluations[step], single);
+        }
+        DisTLFormula psi = new EventuallyDisTLFormula(new AlwaysDisTLFormula(target, 1, 2), 0, 3);
+        double[] windowed = new DoubleSemanticsVisitor().eval(psi, SAMPLE_SIZE, 0, 10, sequence);
+        for (int step = 0; step <= 10; step++) {
+            double expected = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i <= 3; i++) {
+                expected = Math.max(expected, Math.min(atoms[step + i + 1], atoms[step + i + 2]));
+            }
+            assertEquals(expected, windowed[step]);
+        }
+    }
+
+    /**
+     * Reference evaluation of the minimum of the given function on <code>0, ..., width</code>.
+     */
+    private static double always(IntToDoubleFunction argument, int width) {
+        double result = Double.POSITIVE_INFINITY;
+        for (int i = 0; i <= width; i++) {
+            result = Math.min(result, argument.applyAsDouble(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the reference evaluation of <code>until[1, 4](!target, eventually[0, 3] target)</code> at the
+     * steps following the given one.
+     */
+    private static IntToDoubleFunction until(double[] atoms, int step) {
+        return i -> {
+            double result = Double.NEGATIVE_INFINITY;
+            for (int tau = step + i + 1; tau <= step + i + 4; tau++) {
+                double right = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j <= 3; j++) {
+                    right = Math.max(right, atoms[tau + j]);
+                }
+                double left = Double.POSITIVE_INFINITY;
+                for (int u = step + i + 1; u < tau; u++) {
+                    left = Math.min(left, -atoms[u]);
+                }
+                result = Math.max(result, Math.min(right, left));
+            }
+            return result;
+        };
+    }
+
+    @Test
+    void targetSamplesAreSharedByTheEvaluationsOfAVisitor() {
+        EvolutionSequence sequence = getTestES1();
+        AtomicInteger samplings = new AtomicInteger();
+        DataStateFunction mu = (rg, ds) -> {
+            samplings.incrementAndGet();
+            return ds.apply(List.of(new DataStateUpdate(x, rg.nextDouble())));
+        };
+        TargetDisTLFormula target = new TargetDisTLFormula(mu, ds -> ds.get(x), 0.0);
+        DisTLFormula phi = new AlwaysDisTLFormula(new EventuallyDisTLFormula(target, 0, 3), 0, 3);
+
+        DoubleSemanticsVisitor semanticsEvaluator = new DoubleSemanticsVisitor();
+        semanticsEvaluator.setRandomGeneratorSeed(seed);
+        double first = semanticsEvaluator.eval(phi).eval(SAMPLE_SIZE, 0, sequence);
+        int sampled = samplings.get();
+        assertTrue(sampled > 0);
+        semanticsEvaluator.eval(new EventuallyDisTLFormula(target, 0, 6)).eval(SAMPLE_SIZE, 0, sequence);
+        assertEquals(sampled, samplings.get());
+        SampleSet<SystemState> source = sequence.get(2);
+        SampleSet<SystemState> sample = semanticsEvaluator.getSampleCache(target).get(source, SAMPLE_SIZE, () -> null);
+        assertNotNull(sample);
+
+        DoubleSemanticsVisitor otherEvaluator = new DoubleSemanticsVisitor();
+        otherEvaluator.setRandomGeneratorSeed(seed);
+        double second = otherEvaluator.eval(phi).eval(SAMPLE_SIZE, 0, sequence);
+        assertEquals(first, second);
+        assertEquals(2 * sampled, samplings.get());
+        assertNotSame(sample, otherEvaluator.getSampleCache(target).get(source, SAMPLE_SIZE, () -> null));
+
+        semanticsEvaluator.setRandomGeneratorSeed(seed + 1);
+        assertNotSame(sample, semanticsEvaluator.getSampleCache(target).get(source, SAMPLE_SIZE, SampleSet::new));
+    }
 }
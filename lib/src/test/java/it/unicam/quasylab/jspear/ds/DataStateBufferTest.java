@@ -0,0 +1,88 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataStateBufferTest {
+
+    private final DataRange[] ranges = new DataRange[]{new DataRange(0.0, 10.0), new DataRange()};
+
+    @Test
+    void applyNeverOverwritesItsArgument() {
+        DataStateBuffer buffer = new DataStateBuffer();
+        DataState state = new DataState(ranges, new double[]{1.0, 1.0});
+        DataState first = buffer.apply(state, List.of(new DataStateUpdate(0, 2.0)));
+        DataState second = buffer.apply(first, List.of(new DataStateUpdate(0, 20.0)));
+        DataState third = buffer.apply(second, List.of(new DataStateUpdate(1, 3.0)));
+        assertNotSame(first, second);
+        assertSame(first, third);
+        assertEquals(1.0, state.get(0));
+        assertEquals(10.0, second.get(0));
+        assertEquals(10.0, third.get(0));
+        assertEquals(3.0, third.get(1));
+    }
+
+    @Test
+    void updateWorksInPlaceOnBufferedStates() {
+        DataStateBuffer buffer = new DataStateBuffer();
+        DataState state = new DataState(ranges, new double[]{1.0, 1.0});
+        DataState first = buffer.update(state, List.of(new DataStateUpdate(0, 2.0)));
+        assertNotSame(state, first);
+        assertEquals(1.0, state.get(0));
+        assertSame(first, buffer.update(first, List.of(new DataStateUpdate(1, 4.0))));
+        assertEquals(2.0, first.get(0));
+        assertEquals(4.0, first.get(1));
+    }
+
+    @Test
+    void detachedStatesAreNotOverwritten() {
+        DataStateBuffer buffer = new DataStateBuffer();
+        DataState state = new DataState(ranges, new double[]{1.0, 1.0});
+        DataState first = buffer.apply(state, List.of(new DataStateUpdate(0, 2.0)));
+        assertSame(first, buffer.detach(first));
+        DataState second = buffer.update(first, List.of(new DataStateUpdate(0, 5.0)));
+        assertNotSame(first, second);
+        assertEquals(2.0, first.get(0));
+        assertEquals(5.0, second.get(0));
+        assertSame(state, buffer.detach(state));
+    }
+
+    @Test
+    void timeVariablesAreCopied() {
+        DataStateBuffer buffer = new DataStateBuffer();
+        DataState state = new DataState(ranges, new double[]{1.0, 1.0}, 0.5, 2.0, 3.0, 0.25);
+        state.setStep(7);
+        DataState next = buffer.apply(buffer.apply(state, List.of()), List.of());
+        assertEquals(7, next.getStep());
+        assertEquals(0.5, next.getGranularity());
+        assertEquals(2.0, next.getTimeStep());
+        assertEquals(3.0, next.getTimeReal());
+        assertEquals(0.25, next.getTimeDelta());
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataStateMatrixTest {
+
+    @Test
+    void dataStatesWithDifferentRangesAreRejected() {
+        DataState bounded = new DataState(new DataRange[]{new DataRange(0.0, 1.0)}, new double[]{0.5});
+        DataState unbounded = new DataState(new double[]{2.0});
+        assertThrows(IllegalArgumentException.class, () -> new DataStateMatrix(List.of(bounded, unbounded)));
+        assertThrows(IllegalArgumentException.class, () -> DataStateMatrix.direct(List.of(unbounded, bounded)));
+    }
+
+    @Test
+    void rowsAreEvaluatedOnAReusedView() {
+        List<DataState> states = List.of(new DataState(new double[]{1.0}), new DataState(new double[]{2.0}, 4), new DataState(new double[]{3.0}));
+        List<DataState> received = new ArrayList<>();
+        double[] values = DataStateMatrix.direct(states).eval(ds -> {
+            received.add(ds);
+            return ds.get(0) + ds.getStep();
+        });
+        assertArrayEquals(new double[]{1.0, 6.0, 3.0}, values);
+        assertTrue(received.stream().allMatch(ds -> ds == received.get(0)));
+        List<DataState> retained = List.of(new DataStateMatrix(states).getDataState(0), new DataStateMatrix(states).getDataState(1));
+        assertArrayEquals(new double[]{1.0, 2.0}, retained.stream().mapToDouble(ds -> ds.get(0)).toArray());
+        assertEquals(4, retained.get(1).getStep());
+    }
+
+    @Test
+    void mappedMatricesStoreTheDataStates() {
+        List<DataState> states = List.of(new DataState(new double[]{1.0, 4.0}), new DataState(new double[]{2.0, 5.0}), new DataState(new double[]{3.0, 6.0}));
+        DataStateMatrix mapped = DataStateMatrix.mapped(states);
+        assertTrue(mapped.isDirect());
+        assertArrayEquals(new DataStateMatrix(states).column(1), mapped.column(1));
+        assertArrayEquals(new double[]{2.0, 5.0}, new double[]{mapped.getDataState(1).get(0), mapped.getDataState(1).get(1)});
+    }
+
+}
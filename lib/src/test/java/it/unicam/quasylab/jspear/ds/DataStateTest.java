@@ -0,0 +1,61 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataStateTest {
+
+    @Test
+    void applyLeavesTheStateUnchanged() {
+        DataState state = new DataState(new DataRange[]{new DataRange(0.0, 1.0), new DataRange()}, new double[]{0.5, 0.5});
+        DataState next = state.apply(List.of(new DataStateUpdate(0, 2.0), new DataStateUpdate(1, 2.0)));
+        assertNotSame(state, next);
+        assertEquals(0.5, state.get(0));
+        assertEquals(1.0, next.get(0));
+        assertEquals(2.0, next.get(1));
+    }
+
+    @Test
+    void onlyTheOwnerUpdatesAStateInPlace() {
+        DataState state = new DataState(new DataRange[]{new DataRange(0.0, 1.0), new DataRange()}, new double[]{0.5, 0.5});
+        List<DataStateUpdate> updates = new LinkedList<>(List.of(new DataStateUpdate(0, -1.0), new DataStateUpdate(1, -1.0)));
+        Object owner = new Object();
+        assertThrows(IllegalStateException.class, () -> state.update(owner, updates));
+        DataState owned = DataState.copyOwnedBy(owner, state);
+        assertSame(owned, owned.update(owner, updates));
+        assertEquals(0.0, owned.get(0));
+        assertEquals(-1.0, owned.get(1));
+        assertSame(owned, owned.update(owner, DataStateUpdateBuffer.of(new int[]{1}, new double[]{3.0})));
+        assertEquals(3.0, owned.get(1));
+        assertEquals(0.5, state.get(1));
+        assertThrows(IllegalStateException.class, () -> owned.update(new Object(), updates));
+        owned.release(owner);
+        assertThrows(IllegalStateException.class, () -> owned.update(owner, updates));
+    }
+}
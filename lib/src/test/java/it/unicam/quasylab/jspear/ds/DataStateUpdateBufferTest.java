@@ -0,0 +1,71 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DataStateUpdateBufferTest {
+
+    @Test
+    void concatenatedBuffersAreAppliedInOrder() {
+        DataStateUpdateBuffer first = DataStateUpdateBuffer.of(List.of(new DataStateUpdate(0, 1.0), new DataStateUpdate(1, 2.0)));
+        DataStateUpdateBuffer second = DataStateUpdateBuffer.of(new int[]{1, 2}, new double[]{3.0, 4.0});
+        DataStateUpdateBuffer buffer = first.concat(second);
+        assertEquals(4, buffer.size());
+        assertEquals(3.0, buffer.get(2).getValue());
+        DataState state = new DataState(new double[3]).apply(buffer);
+        assertEquals(1.0, state.get(0));
+        assertEquals(3.0, state.get(1));
+        assertEquals(4.0, state.get(2));
+        assertSame(first, first.concat(DataStateUpdateBuffer.EMPTY));
+        assertSame(second, DataStateUpdateBuffer.EMPTY.concat(second));
+    }
+
+    @Test
+    void sequentialListsAreCopiedOnWrap() {
+        List<DataStateUpdate> updates = new LinkedList<>(List.of(new DataStateUpdate(0, 1.0), new DataStateUpdate(1, 2.0)));
+        DataStateUpdateBuffer buffer = DataStateUpdateBuffer.of(updates);
+        updates.add(new DataStateUpdate(2, 3.0));
+        assertEquals(2, buffer.size());
+        assertEquals(2.0, buffer.get(1).getValue());
+    }
+
+    @Test
+    void builtBuffersKeepTheOrderOfUpdates() {
+        DataStateUpdateBuffer.Builder builder = new DataStateUpdateBuffer.Builder(1);
+        assertSame(DataStateUpdateBuffer.EMPTY, builder.build());
+        builder.add(0, 1.0).add(1, 2.0).add(0, 3.0);
+        DataStateUpdateBuffer buffer = builder.build();
+        assertEquals(3, buffer.size());
+        DataState state = new DataState(new double[2]).apply(buffer);
+        assertEquals(3.0, state.get(0));
+        assertEquals(2.0, state.get(1));
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.robtl;
+
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.RandomWalk;
+import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
+import it.unicam.quasylab.jspear.perturbation.AtomicPerturbation;
+import it.unicam.quasylab.jspear.perturbation.Perturbation;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static it.unicam.quasylab.jspear.RandomWalk.x;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class BooleanSemanticsVisitorTest {
+
+    static final int SIZE = 50;
+    static final int STEPS = 10;
+
+    static final Perturbation SHIFT = new AtomicPerturbation(0, (rg, ds) -> ds.apply(List.of(new DataStateUpdate(x, ds.get(x) + 0.5))));
+
+    /**
+     * Returns the atomic formula comparing with the given threshold the distance between the random walk and
+     * the one shifted by <code>0.5</code>.
+     */
+    static RobustnessFormula distance(RelationOperator relop, double threshold) {
+        return new AtomicRobustnessFormula(SHIFT, RandomWalk.maxDistance(0, 3), relop, threshold);
+    }
+
+    /**
+     * Returns formulae built from the two given atomic formulae with all the operators.
+     */
+    static Stream<RobustnessFormula> getFormulae(RobustnessFormula close, RobustnessFormula far) {
+        return Stream.of(
+                close,
+                new AlwaysRobustnessFormula(close, 0, 3),
+                new EventuallyRobustnessFormula(far, 1, 4),
+                new UntilRobustnessFormula(close, 0, 5, far),
+                new UntilRobustnessFormula(new NegationRobustnessFormula(far), 1, 4, new EventuallyRobustnessFormula(far, 0, 2)),
+                new ImplicationRobustnessFormula(new DisjunctionRobustnessFormula(far, close), new ConjunctionRobustnessFormula(close, new AlwaysRobustnessFormula(close, 1, 2)))
+        );
+    }
+
+    static Stream<RobustnessFormula> getFormulae() {
+        return getFormulae(distance(RelationOperator.LESS_THAN, 0.6), distance(RelationOperator.GREATER_THAN, 0.57));
+    }
+
+    static Boolean[] evalEachStep(RobustnessFormula formula, EvolutionSequence sequence) {
+        return IntStream.rangeClosed(0, STEPS)
+                .mapToObj(step -> new BooleanSemanticsVisitor().eval(formula).eval(1, step, sequence))
+                .toArray(Boolean[]::new);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getFormulae")
+    void rangeEvaluationGivesTheValuesOfEachStep(RobustnessFormula formula) {
+        EvolutionSequence sequence = RandomWalk.sequence(41, SIZE);
+        sequence.setCommonRandomNumbers(true);
+        int[] steps = IntStream.rangeClosed(0, STEPS).toArray();
+        Boolean[] expected = evalEachStep(formula, sequence);
+        assertArrayEquals(expected, new BooleanSemanticsVisitor().eval(formula).eval(1, steps, sequence, Boolean[]::new));
+        assertArrayEquals(expected, new BooleanSemanticsVisitor(true).eval(formula).eval(1, steps, sequence, Boolean[]::new));
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.robtl;
+
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.EvolutionSequence;
+import it.unicam.quasylab.jspear.RandomWalk;
+import it.unicam.quasylab.jspear.ds.RelationOperator;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ThreeValuedSemanticsVisitorTest {
+
+    static final int STEPS = 10;
+
+    static Stream<RobustnessFormula> getFormulae() {
+        return BooleanSemanticsVisitorTest.getFormulae(
+                BooleanSemanticsVisitorTest.distance(RelationOperator.LESS_THAN, 0.8),
+                BooleanSemanticsVisitorTest.distance(RelationOperator.GREATER_THAN, 0.75));
+    }
+
+    static ThreeValuedSemanticsVisitor visitor() {
+        return new ThreeValuedSemanticsVisitor(new DefaultRandomGenerator(3), 20, 1.96);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getFormulae")
+    void rangeEvaluationGivesTheValuesOfEachStep(RobustnessFormula formula) {
+        EvolutionSequence sequence = RandomWalk.sequence(41, BooleanSemanticsVisitorTest.SIZE);
+        sequence.setCommonRandomNumbers(true);
+        int[] steps = IntStream.rangeClosed(0, STEPS).toArray();
+        TruthValues[] expected = IntStream.of(steps)
+                .mapToObj(step -> visitor().eval(formula).eval(1, step, sequence))
+                .toArray(TruthValues[]::new);
+        assertArrayEquals(expected, visitor().eval(formula).eval(1, steps, sequence, TruthValues[]::new));
+    }
+
+}
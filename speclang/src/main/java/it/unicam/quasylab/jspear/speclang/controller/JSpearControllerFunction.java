@@ -24,6 +24,7 @@ package it.unicam.quasylab.jspear.speclang.controller;
 
 import it.unicam.quasylab.jspear.controller.Controller;
 import it.unicam.quasylab.jspear.controller.EffectStep;
+import it.unicam.quasylab.jspear.ds.DataStateUpdateBuffer;
 import it.unicam.quasylab.jspear.speclang.semantics.JSpearExpressionEvaluationFunction;
 import it.unicam.quasylab.jspear.speclang.values.JSpearValue;
 import it.unicam.quasylab.jspear.speclang.variables.JSpearStore;
@@ -55,7 +56,7 @@ public interface JSpearControllerFunction {
 
     static JSpearControllerFunction sequential(List<JSpearControllerFunction> functions) {
         return (rg, s) -> {
-            EffectStep<Controller> effect = new EffectStep<>(List.of(), null);
+            EffectStep<Controller> effect = new EffectStep<>(DataStateUpdateBuffer.EMPTY, null);
             for (JSpearControllerFunction function : functions) {
                 effect = effect.applyAfter(function.apply(rg, s));
                 if (effect.isCompleted()) return effect;
@@ -26,6 +26,7 @@ import it.unicam.quasylab.jspear.controller.Controller;
 import it.unicam.quasylab.jspear.controller.ControllerRegistry;
 import it.unicam.quasylab.jspear.controller.EffectStep;
 import it.unicam.quasylab.jspear.ds.DataStateUpdate;
+import it.unicam.quasylab.jspear.ds.DataStateUpdateBuffer;
 import it.unicam.quasylab.jspear.speclang.JSpearSpecificationLanguageBaseVisitor;
 import it.unicam.quasylab.jspear.speclang.JSpearSpecificationLanguageParser;
 import it.unicam.quasylab.jspear.speclang.controller.JSpearControllerFunction;
@@ -81,13 +82,19 @@ public class JSpearControllerStateGenerator extends JSpearSpecificationLanguageB
         BiFunction<RandomGenerator, JSpearStore, Optional<DataStateUpdate>> assignment = getVariableAssignment(ctx);
         return (rg, ds) -> {
             Optional<DataStateUpdate> result = assignment.apply(rg, ds);
-            return result.<EffectStep<Controller>>map(dataStateUpdate -> new EffectStep<>(List.of(dataStateUpdate))).orElseGet(EffectStep::new);
+            return result.<EffectStep<Controller>>map(dataStateUpdate -> new EffectStep<>(DataStateUpdateBuffer.of(dataStateUpdate.getIndex(), dataStateUpdate.getValue()))).orElseGet(EffectStep::new);
         };
     }
 
     private BiFunction<RandomGenerator, JSpearStore, List<DataStateUpdate>> getVariableAssignments(List<JSpearSpecificationLanguageParser.ControllerVariableAssignmentContext> statements) {
         List<BiFunction<RandomGenerator, JSpearStore, Optional<DataStateUpdate>>> assignments = statements.stream().map(this::getVariableAssignment).toList();
-        return (rg, store) -> assignments.stream().map(a -> a.apply(rg, store)).filter(Optional::isPresent).map(Optional::get).toList();
+        return (rg, store) -> {
+            DataStateUpdateBuffer.Builder updates = new DataStateUpdateBuffer.Builder(assignments.size());
+            for (BiFunction<RandomGenerator, JSpearStore, Optional<DataStateUpdate>> assignment : assignments) {
+                assignment.apply(rg, store).ifPresent(u -> updates.add(u.getIndex(), u.getValue()));
+            }
+            return updates.build();
+        };
     }
 
     @Override
@@ -99,16 +106,16 @@ public class JSpearControllerStateGenerator extends JSpearSpecificationLanguageB
     @Override
     public JSpearControllerFunction visitControllerLetAssignment(JSpearSpecificationLanguageParser.ControllerLetAssignmentContext ctx) {
         JSpearVariable variable = registry.getOrRegister(ctx.name.getText());
-        JSpearExpressionEvaluationFunction valueFunction = JSpearExpressionEvaluator.eval(context, registry, ctx.value);
+        JSpearExpressionEvaluationFunction valueFunction = JSpearExpressionEvaluator.eval(allocation, context, registry, ctx.value);
         JSpearControllerFunction letBody = ctx.body.accept(this);
         return (rg, store) -> letBody.apply(rg, JSpearStore.let(variable, valueFunction.eval(rg, store), store));
     }
 
     public BiFunction<RandomGenerator, JSpearStore, Optional<DataStateUpdate>> getVariableAssignment(JSpearSpecificationLanguageParser.ControllerVariableAssignmentContext ctx) {
-        JSpearExpressionEvaluationFunction valueFunction = JSpearExpressionEvaluator.eval(context, registry, ctx.value);
+        JSpearExpressionEvaluationFunction valueFunction = JSpearExpressionEvaluator.eval(allocation, context, registry, ctx.value);
         JSpearVariable variable = registry.get(JSpearVariable.getTargetVariableName(ctx.target.name.getText()));
         if (ctx.guard != null) {
-            JSpearExpressionEvaluationFunction guardFunction = JSpearExpressionEvaluator.eval(context, registry, ctx.guard);
+            JSpearExpressionEvaluationFunction guardFunction = JSpearExpressionEvaluator.eval(allocation, context, registry, ctx.guard);
             return (rg, s) -> {
                 if (JSpearValue.isTrue(guardFunction.eval(rg, s))) {
                     return allocation.set(variable, valueFunction.eval(rg, s));
@@ -139,15 +146,15 @@ public class JSpearControllerStateGenerator extends JSpearSpecificationLanguageB
         String referencedName = ctx.target.getText();
         Controller controller = controllerRegistry.reference(referencedName);
         if (ctx.steps == null) {
-            return (rg, store) -> new EffectStep<>(List.of(), controller);
+            return (rg, store) -> new EffectStep<>(DataStateUpdateBuffer.EMPTY, controller);
         } else {
-            JSpearExpressionEvaluationFunction steps = JSpearExpressionEvaluator.eval(context, registry, ctx.steps);
+            JSpearExpressionEvaluationFunction steps = JSpearExpressionEvaluator.eval(allocation, context, registry, ctx.steps);
             return (rg, store) -> {
                 int k = (int) steps.eval(rg, store).toDouble();
                 if (k<1) {
-                    return new EffectStep<>(List.of(), controller);
+                    return new EffectStep<>(DataStateUpdateBuffer.EMPTY, controller);
                 } else {
-                    return new EffectStep<>(List.of(), Controller.doTick(k-1, controller));
+                    return new EffectStep<>(DataStateUpdateBuffer.EMPTY, Controller.doTick(k-1, controller));
                 }
             };
         }
@@ -155,7 +162,7 @@ public class JSpearControllerStateGenerator extends JSpearSpecificationLanguageB
 
     @Override
     public JSpearControllerFunction visitControllerIfThenElseBehaviour(JSpearSpecificationLanguageParser.ControllerIfThenElseBehaviourContext ctx) {
-        return JSpearControllerFunction.ifThenElse(JSpearExpressionEvaluator.eval(context, registry, ctx.guard),
+        return JSpearControllerFunction.ifThenElse(JSpearExpressionEvaluator.eval(allocation, context, registry, ctx.guard),
                 ctx.thenBranch.accept(this),
                 ctx.elseBranch.accept(this));
     }
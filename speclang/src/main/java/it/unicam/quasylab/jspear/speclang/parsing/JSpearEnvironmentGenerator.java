@@ -58,9 +58,9 @@ public class JSpearEnvironmentGenerator extends JSpearSpecificationLanguageBaseV
 
     private BiFunction<RandomGenerator, JSpearStore, Optional<DataStateUpdate>> getEnvironmentAssignmentFunction(JSpearSpecificationLanguageParser.VariableAssignmentContext variableAssignmentContext) {
         JSpearVariable variable = registry.get(JSpearVariable.getTargetVariableName(variableAssignmentContext.target.name.getText()));
-        JSpearExpressionEvaluationFunction valueFunction = JSpearExpressionEvaluator.eval(context, registry, variableAssignmentContext.value);
+        JSpearExpressionEvaluationFunction valueFunction = JSpearExpressionEvaluator.eval(allocation, context, registry, variableAssignmentContext.value);
         if (variableAssignmentContext.guard != null) {
-            JSpearExpressionEvaluationFunction guardFunction = JSpearExpressionEvaluator.eval(context, registry, variableAssignmentContext.guard);
+            JSpearExpressionEvaluationFunction guardFunction = JSpearExpressionEvaluator.eval(allocation, context, registry, variableAssignmentContext.guard);
             return (rg, s) -> (JSpearValue.isTrue(guardFunction.eval(rg, s))?allocation.set(variable, valueFunction.eval(rg, s)):Optional.empty());
         } else {
             return (rg, s) -> allocation.set(variable, valueFunction.eval(rg, s));
@@ -73,13 +73,13 @@ public class JSpearEnvironmentGenerator extends JSpearSpecificationLanguageBaseV
         if (ctx.elseCommand != null) {
             return new JSpearEnvironmentConditionalUpdateFunction(
                     this.allocation,
-                    JSpearExpressionEvaluator.eval(context, registry, ctx.guard),
+                    JSpearExpressionEvaluator.eval(allocation, context, registry, ctx.guard),
                     ctx.thenCommand.accept(this),
                     ctx.elseCommand.accept(this));
         } else {
             return new JSpearEnvironmentConditionalUpdateFunction(
                     this.allocation,
-                    JSpearExpressionEvaluator.eval(context, registry, ctx.guard),
+                    JSpearExpressionEvaluator.eval(allocation, context, registry, ctx.guard),
                     ctx.thenCommand.accept(this));
 
         }
@@ -91,7 +91,7 @@ public class JSpearEnvironmentGenerator extends JSpearSpecificationLanguageBaseV
         JSpearExpressionEvaluationFunction[] localVariablesValues = new JSpearExpressionEvaluationFunction[variables.length];
         for(int i=0; i<variables.length; i++) {
             variables[i] = registry.getOrRegister(ctx.localVariables.get(i).name.getText());
-            localVariablesValues[i] = JSpearExpressionEvaluator.eval(context, registry, ctx.localVariables.get(i).expression());
+            localVariablesValues[i] = JSpearExpressionEvaluator.eval(allocation, context, registry, ctx.localVariables.get(i).expression());
         }
         return new JSpearEnvironmentLetUpdateFunction(allocation, variables, localVariablesValues, ctx.body.accept(this));
     }
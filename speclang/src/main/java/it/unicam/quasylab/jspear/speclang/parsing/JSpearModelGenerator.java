@@ -25,6 +25,7 @@ package it.unicam.quasylab.jspear.speclang.parsing;
 import it.unicam.quasylab.jspear.*;
 import it.unicam.quasylab.jspear.controller.Controller;
 import it.unicam.quasylab.jspear.controller.ControllerRegistry;
+import it.unicam.quasylab.jspear.controller.ControllerTable;
 import it.unicam.quasylab.jspear.controller.ParallelController;
 import it.unicam.quasylab.jspear.distance.DistanceExpression;
 import it.unicam.quasylab.jspear.ds.*;
@@ -136,8 +137,7 @@ public class JSpearModelGenerator extends JSpearSpecificationLanguageBaseVisitor
     @Override
     public Boolean visitDeclarationPenalty(JSpearSpecificationLanguageParser.DeclarationPenaltyContext ctx) {
         String penaltyName = ctx.name.getText();
-        JSpearExpressionEvaluationFunction value = JSpearExpressionEvaluator.eval(context, registry, ctx.value);
-        penalties.put(penaltyName, ds -> value.eval(JSpearStore.storeOf(allocation, ds)).toDouble());
+        penalties.put(penaltyName, JSpearExpressionEvaluator.evalToDataStateExpression(allocation, context, registry, ctx.value));
         return true;
     }
 
@@ -220,7 +220,9 @@ public class JSpearModelGenerator extends JSpearSpecificationLanguageBaseVisitor
     }
 
     private ControlledSystem getControlledSystem() {
-        return new ControlledSystem(this.controller, getEnvironment(), getDataState());
+        ControllerTable table = new ControllerTable();
+        controllerRegistry.compile(table);
+        return new ControlledSystem(table.compile(this.controller), getEnvironment(), getDataState());
     }
 
     private DataState getDataState() {
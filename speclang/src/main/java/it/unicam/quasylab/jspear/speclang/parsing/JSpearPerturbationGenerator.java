@@ -85,7 +85,7 @@ public class JSpearPerturbationGenerator extends JSpearSpecificationLanguageBase
 
     private BiFunction<RandomGenerator, JSpearStore, DataStateUpdate> getAssignment(JSpearSpecificationLanguageParser.PerturbationAssignmentContext assignment) {
         JSpearVariable variable = registry.get(assignment.name.getText());
-        JSpearExpressionEvaluationFunction value = JSpearExpressionEvaluator.eval(context, registry, assignment.value);
+        JSpearExpressionEvaluationFunction value = JSpearExpressionEvaluator.eval(allocation, context, registry, assignment.value);
         return (rg, s) -> allocation.set(variable, value.eval(rg, s)).get();
     }
 
@@ -0,0 +1,66 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.speclang.semantics;
+
+import it.unicam.quasylab.jspear.ds.DataState;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Template of the hidden classes evaluating compiled expressions. This class is never loaded as it is: its bytes
+ * are used to define a hidden class for each compiled expression, whose class data is the method handle evaluating
+ * the expression (see {@link JSpearCompiledExpression#toFunction()}). Since the handle is stored in a static final
+ * field of a hidden class, it is a constant for the just-in-time compiler, which inlines the whole expression.
+ */
+final class JSpearCompiledCode implements JSpearCompiledFunction {
+
+    private static final MethodHandle CODE = code();
+
+    private static MethodHandle code() {
+        try {
+            return MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, MethodHandle.class);
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public double eval(DataState state) {
+        return eval(null, state);
+    }
+
+    @Override
+    public double eval(RandomGenerator rg, DataState state) {
+        try {
+            return (double) CODE.invokeExact(rg, state);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,486 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.speclang.semantics;
+
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.speclang.types.JSpearType;
+import it.unicam.quasylab.jspear.speclang.values.JSPearInteger;
+import it.unicam.quasylab.jspear.speclang.values.JSpearBoolean;
+import it.unicam.quasylab.jspear.speclang.values.JSpearReal;
+import it.unicam.quasylab.jspear.speclang.values.JSpearValue;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Set;
+
+/**
+ * An expression compiled to a method handle of type <code>(RandomGenerator, DataState)T</code>, where
+ * <code>T</code> is <code>int</code>, <code>double</code> or <code>boolean</code> according to the type of the
+ * expression. Variables are read from the data state at indices resolved when the expression is compiled, and
+ * operators are applied to primitive values, so that neither values are boxed nor stores are built when the
+ * expression is evaluated. Operators have the same semantics as the corresponding operations of
+ * {@link JSpearValue}, and sub-expressions are evaluated from left to right, so that random values are drawn in
+ * the same order as by {@link JSpearExpressionEvaluator}.
+ *
+ * @param type type of the expression, either integer, real or boolean.
+ * @param handle method handle evaluating the expression.
+ */
+record JSpearCompiledExpression(JSpearType type, MethodHandle handle) {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Set<String> UNARY_FUNCTIONS = Set.of("abs", "acos", "asin", "atan", "cbrt", "ceil", "cos",
+            "cosh", "exp", "expm1", "floor", "log", "log10", "log1p", "signum", "sin", "sinh", "sqrt", "tan");
+
+    private static final Set<String> BINARY_FUNCTIONS = Set.of("atan2", "hypot", "max", "min", "pow");
+
+    private static final MethodHandle DATA_STATE_GET = find(DataState.class, "get", MethodType.methodType(double.class, int.class), false);
+
+    private static final MethodHandle NEXT_DOUBLE = find(RandomGenerator.class, "nextDouble", MethodType.methodType(double.class), false);
+
+    private static final MethodHandle NEXT_INT = find(RandomGenerator.class, "nextInt", MethodType.methodType(int.class, int.class), false);
+
+    /**
+     * The bytes of the class used as a template for the hidden classes evaluating compiled expressions.
+     */
+    private static byte[] template;
+
+    /**
+     * Returns the compiled expression always returning the given value, or <code>null</code> if the value is
+     * neither an integer, nor a real, nor a boolean.
+     */
+    static JSpearCompiledExpression constant(JSpearValue value) {
+        if (value instanceof JSPearInteger integerValue) {
+            return of(JSpearType.INTEGER_TYPE, MethodHandles.constant(int.class, integerValue.value()));
+        }
+        if (value instanceof JSpearReal realValue) {
+            return of(JSpearType.REAL_TYPE, MethodHandles.constant(double.class, realValue.value()));
+        }
+        if (value instanceof JSpearBoolean booleanValue) {
+            return of(JSpearType.BOOLEAN_TYPE, MethodHandles.constant(boolean.class, booleanValue.value()));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the compiled expression reading the value of the variable of the given type that is stored at the
+     * given index of the data state. Values are read as by {@link JSpearType#valueOf(double)}. The result is
+     * <code>null</code> if the variable is neither an integer, nor a real, nor a boolean.
+     */
+    static JSpearCompiledExpression variable(JSpearType type, int index) {
+        MethodHandle value = MethodHandles.dropArguments(MethodHandles.insertArguments(DATA_STATE_GET, 1, index), 0, RandomGenerator.class);
+        JSpearType variableType = type.deterministicType();
+        if (variableType.isReal()) {
+            return new JSpearCompiledExpression(JSpearType.REAL_TYPE, value);
+        }
+        if (variableType.isInteger()) {
+            return new JSpearCompiledExpression(JSpearType.INTEGER_TYPE, MethodHandles.explicitCastArguments(value, value.type().changeReturnType(int.class)));
+        }
+        if (variableType.isBoolean()) {
+            return new JSpearCompiledExpression(JSpearType.BOOLEAN_TYPE, MethodHandles.filterReturnValue(value, operator("isNotZero", boolean.class, double.class)));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the compiled expression sampling a real value uniformly in <code>[0,1)</code>.
+     */
+    static JSpearCompiledExpression random() {
+        return new JSpearCompiledExpression(JSpearType.REAL_TYPE, MethodHandles.dropArguments(NEXT_DOUBLE, 1, DataState.class));
+    }
+
+    /**
+     * Returns the compiled expression sampling a real value uniformly in the interval between the given ones.
+     */
+    static JSpearCompiledExpression random(JSpearCompiledExpression from, JSpearCompiledExpression to) {
+        if (!isNumerical(from, to)) {
+            return null;
+        }
+        return apply(JSpearType.REAL_TYPE, operator("sample", double.class, double.class, double.class, RandomGenerator.class), from, to);
+    }
+
+    /**
+     * Returns the compiled expression sampling a real value from the normal distribution with the given mean and
+     * variance, as done by {@link JSpearValue#sampleNormal(RandomGenerator, JSpearValue, JSpearValue)}.
+     */
+    static JSpearCompiledExpression normal(JSpearCompiledExpression mean, JSpearCompiledExpression variance) {
+        if (!isNumerical(mean, variance)) {
+            return null;
+        }
+        return apply(JSpearType.REAL_TYPE, operator("sampleNormal", double.class, double.class, double.class, RandomGenerator.class), mean, variance);
+    }
+
+    /**
+     * Returns the compiled expression evaluating one of the given expressions, selected uniformly at random.
+     * The result is <code>null</code> if the given expressions do not have the same type.
+     */
+    static JSpearCompiledExpression uniform(JSpearCompiledExpression ... elements) {
+        if ((elements.length == 0)||!haveTheSameType(elements)) {
+            return null;
+        }
+        MethodHandle selected = MethodHandles.dropArguments(elements[elements.length - 1].handle, 0, int.class);
+        for (int i = elements.length - 2; i >= 0; i--) {
+            MethodHandle test = MethodHandles.dropArguments(MethodHandles.insertArguments(operator("isEqualTo", boolean.class, int.class, int.class), 1, i),
+                    1, RandomGenerator.class, DataState.class);
+            selected = MethodHandles.guardWithTest(test, MethodHandles.dropArguments(elements[i].handle, 0, int.class), selected);
+        }
+        return new JSpearCompiledExpression(elements[0].type, MethodHandles.foldArguments(selected, MethodHandles.insertArguments(NEXT_INT, 1, elements.length)));
+    }
+
+    /**
+     * Returns the compiled expression applying the arithmetic operator with the given symbol to the given
+     * arguments. Operations on two integers give an integer, and the other ones give a real. The result is
+     * <code>null</code> if the operator is unknown or if the arguments are not numerical.
+     */
+    static JSpearCompiledExpression arithmetic(String op, JSpearCompiledExpression left, JSpearCompiledExpression right) {
+        String name = switch (op) {
+            case "+" -> "sum";
+            case "-" -> "subtraction";
+            case "*" -> "product";
+            case "/" -> "division";
+            case "%" -> "modulo";
+            default -> null;
+        };
+        if ((name == null)||!isNumerical(left, right)) {
+            return null;
+        }
+        if (left.type.isInteger()&&right.type.isInteger()) {
+            return apply(JSpearType.INTEGER_TYPE, operator(name, int.class, int.class, int.class), left, right);
+        }
+        return apply(JSpearType.REAL_TYPE, operator(name, double.class, double.class, double.class), left, right);
+    }
+
+    /**
+     * Returns the compiled expression applying the binary mathematical function with the given name to the given
+     * arguments. The result is <code>null</code> if the function is unknown or if the arguments are not numerical.
+     */
+    static JSpearCompiledExpression function(String name, JSpearCompiledExpression left, JSpearCompiledExpression right) {
+        if (!BINARY_FUNCTIONS.contains(name)||!isNumerical(left, right)) {
+            return null;
+        }
+        return apply(JSpearType.REAL_TYPE, find(Math.class, name, MethodType.methodType(double.class, double.class, double.class), true), left, right);
+    }
+
+    /**
+     * Returns the compiled expression applying the unary operator, or mathematical function, with the given name
+     * to the given argument. The result is <code>null</code> if the function is unknown or if the argument is not
+     * numerical.
+     */
+    static JSpearCompiledExpression function(String name, JSpearCompiledExpression argument) {
+        if (!isNumerical(argument)) {
+            return null;
+        }
+        MethodHandle function;
+        if (name.equals("+")) {
+            function = operator("plus", double.class, double.class);
+        } else if (name.equals("-")) {
+            function = operator("minus", double.class, double.class);
+        } else if (UNARY_FUNCTIONS.contains(name)) {
+            function = find(Math.class, name, MethodType.methodType(double.class, double.class), true);
+        } else {
+            return null;
+        }
+        return apply(JSpearType.REAL_TYPE, function, argument);
+    }
+
+    /**
+     * Returns the compiled expression comparing the given arguments with the relation with the given symbol.
+     * The result is <code>null</code> if the relation is unknown or if the arguments are not numerical.
+     */
+    static JSpearCompiledExpression relation(String op, JSpearCompiledExpression left, JSpearCompiledExpression right) {
+        String name = switch (op) {
+            case "<" -> "isLessThan";
+            case "<=" -> "isLessOrEqualThan";
+            case "==" -> "isEqualTo";
+            case ">=" -> "isGreaterOrEqualThan";
+            case ">" -> "isGreaterThan";
+            default -> null;
+        };
+        if ((name == null)||!isNumerical(left, right)) {
+            return null;
+        }
+        return apply(JSpearType.BOOLEAN_TYPE, operator(name, boolean.class, double.class, double.class), left, right);
+    }
+
+    /**
+     * Returns the compiled expression computing the conjunction of the given arguments. As in
+     * {@link JSpearValue#and(JSpearValue, JSpearValue)}, both the arguments are evaluated.
+     */
+    static JSpearCompiledExpression and(JSpearCompiledExpression left, JSpearCompiledExpression right) {
+        return (isBoolean(left, right) ? apply(JSpearType.BOOLEAN_TYPE, operator("and", boolean.class, boolean.class, boolean.class), left, right) : null);
+    }
+
+    /**
+     * Returns the compiled expression computing the disjunction of the given arguments. As in
+     * {@link JSpearValue#or(JSpearValue, JSpearValue)}, both the arguments are evaluated.
+     */
+    static JSpearCompiledExpression or(JSpearCompiledExpression left, JSpearCompiledExpression right) {
+        return (isBoolean(left, right) ? apply(JSpearType.BOOLEAN_TYPE, operator("or", boolean.class, boolean.class, boolean.class), left, right) : null);
+    }
+
+    /**
+     * Returns the compiled expression computing the negation of the given argument.
+     */
+    static JSpearCompiledExpression negate(JSpearCompiledExpression argument) {
+        return (isBoolean(argument) ? apply(JSpearType.BOOLEAN_TYPE, operator("negate", boolean.class, boolean.class), argument) : null);
+    }
+
+    /**
+     * Returns the compiled expression evaluating either the <code>thenBranch</code> or the <code>elseBranch</code>
+     * according to the given guard. The result is <code>null</code> if the guard is not boolean, or if the two
+     * branches do not have the same type.
+     */
+    static JSpearCompiledExpression ifThenElse(JSpearCompiledExpression guard, JSpearCompiledExpression thenBranch, JSpearCompiledExpression elseBranch) {
+        if (!isBoolean(guard)||!haveTheSameType(thenBranch, elseBranch)) {
+            return null;
+        }
+        return new JSpearCompiledExpression(thenBranch.type, MethodHandles.guardWithTest(guard.handle, thenBranch.handle, elseBranch.handle));
+    }
+
+    /**
+     * Returns the method handle of type <code>(RandomGenerator, DataState)double</code> evaluating this expression,
+     * where booleans are represented as <code>1.0</code> and <code>0.0</code> and integers are converted to reals.
+     *
+     * @return the method handle evaluating this expression to a double.
+     */
+    MethodHandle toDoubleHandle() {
+        if (type.isBoolean()) {
+            return MethodHandles.filterReturnValue(handle, operator("toDouble", double.class, boolean.class));
+        }
+        return handle.asType(handle.type().changeReturnType(double.class));
+    }
+
+    /**
+     * Returns the function evaluating this expression. The returned function is an instance of a hidden class
+     * whose code invokes the handle of this expression as a constant, so that the handle can be inlined by the
+     * just-in-time compiler as if the expression had been written in Java.
+     *
+     * @return the function evaluating this expression.
+     */
+    JSpearCompiledFunction toFunction() {
+        MethodHandle code = toDoubleHandle();
+        try {
+            MethodHandles.Lookup lookup = LOOKUP.defineHiddenClassWithClassData(getTemplate(), code, true);
+            return (JSpearCompiledFunction) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the value of the type of this expression represented by the given double, as computed by
+     * the handle returned by {@link #toDoubleHandle()}.
+     *
+     * @param value double representation of a value.
+     * @return the value represented by <code>value</code>.
+     */
+    JSpearValue valueOf(double value) {
+        return type.valueOf(value);
+    }
+
+    private static synchronized byte[] getTemplate() {
+        if (template == null) {
+            try (InputStream input = JSpearCompiledExpression.class.getResourceAsStream("JSpearCompiledCode.class")) {
+                if (input == null) {
+                    throw new IllegalStateException("The template of compiled expressions cannot be found!");
+                }
+                template = input.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return template;
+    }
+
+    private static JSpearCompiledExpression of(JSpearType type, MethodHandle value) {
+        return new JSpearCompiledExpression(type, MethodHandles.dropArguments(value, 0, RandomGenerator.class, DataState.class));
+    }
+
+    /**
+     * Returns the compiled expression applying the given operator to the values of the given arguments, which are
+     * evaluated from left to right. Arguments are converted to the parameter types of the operator. An operator
+     * having a parameter more than the arguments also receives the random generator, after the arguments have
+     * been evaluated.
+     */
+    private static JSpearCompiledExpression apply(JSpearType type, MethodHandle operator, JSpearCompiledExpression ... arguments) {
+        MethodHandle result = operator;
+        if (operator.type().parameterCount() > arguments.length) {
+            result = MethodHandles.dropArguments(result, arguments.length + 1, DataState.class);
+        } else {
+            result = MethodHandles.dropArguments(result, arguments.length, RandomGenerator.class, DataState.class);
+        }
+        for (int i = arguments.length - 1; i >= 0; i--) {
+            MethodHandle argument = arguments[i].handle;
+            argument = argument.asType(argument.type().changeReturnType(operator.type().parameterType(i)));
+            result = MethodHandles.foldArguments(result, i, argument);
+        }
+        return new JSpearCompiledExpression(type, result);
+    }
+
+    private static boolean isNumerical(JSpearCompiledExpression ... arguments) {
+        for (JSpearCompiledExpression argument : arguments) {
+            if ((argument == null)||!(argument.type.isInteger()||argument.type.isReal())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBoolean(JSpearCompiledExpression ... arguments) {
+        for (JSpearCompiledExpression argument : arguments) {
+            if ((argument == null)||!argument.type.isBoolean()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean haveTheSameType(JSpearCompiledExpression ... arguments) {
+        for (JSpearCompiledExpression argument : arguments) {
+            if ((argument == null)||!argument.type.equals(arguments[0].type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MethodHandle operator(String name, Class<?> result, Class<?> ... parameters) {
+        return find(JSpearCompiledExpression.class, name, MethodType.methodType(result, parameters), true);
+    }
+
+    private static MethodHandle find(Class<?> owner, String name, MethodType type, boolean isStatic) {
+        try {
+            return (isStatic ? LOOKUP.findStatic(owner, name, type) : LOOKUP.findVirtual(owner, name, type));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int sum(int x, int y) {
+        return x + y;
+    }
+
+    private static double sum(double x, double y) {
+        return x + y;
+    }
+
+    private static int subtraction(int x, int y) {
+        return x - y;
+    }
+
+    private static double subtraction(double x, double y) {
+        return x - y;
+    }
+
+    private static int product(int x, int y) {
+        return x * y;
+    }
+
+    private static double product(double x, double y) {
+        return x * y;
+    }
+
+    private static int division(int x, int y) {
+        return x / y;
+    }
+
+    private static double division(double x, double y) {
+        return x / y;
+    }
+
+    private static int modulo(int x, int y) {
+        return x % y;
+    }
+
+    private static double modulo(double x, double y) {
+        return x % y;
+    }
+
+    private static double plus(double x) {
+        return +x;
+    }
+
+    private static double minus(double x) {
+        return -x;
+    }
+
+    private static boolean isLessThan(double x, double y) {
+        return x < y;
+    }
+
+    private static boolean isLessOrEqualThan(double x, double y) {
+        return x <= y;
+    }
+
+    private static boolean isEqualTo(double x, double y) {
+        return x == y;
+    }
+
+    private static boolean isEqualTo(int x, int y) {
+        return x == y;
+    }
+
+    private static boolean isGreaterOrEqualThan(double x, double y) {
+        return x >= y;
+    }
+
+    private static boolean isGreaterThan(double x, double y) {
+        return x > y;
+    }
+
+    private static boolean and(boolean x, boolean y) {
+        return x && y;
+    }
+
+    private static boolean or(boolean x, boolean y) {
+        return x || y;
+    }
+
+    private static boolean negate(boolean x) {
+        return !x;
+    }
+
+    private static boolean isNotZero(double x) {
+        return x != 0;
+    }
+
+    private static double toDouble(boolean x) {
+        return (x ? 1.0 : 0.0);
+    }
+
+    private static double sample(double from, double to, RandomGenerator rg) {
+        return from + rg.nextDouble() * (to - from);
+    }
+
+    private static double sampleNormal(double mean, double variance, RandomGenerator rg) {
+        return rg.nextDouble() * mean + variance;
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.speclang.semantics;
+
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * A function obtained by compiling an expression (see {@link JSpearCompiledExpression#toFunction()}). The function
+ * evaluates the expression directly on the values of a data state, and booleans are represented as
+ * <code>1.0</code> and <code>0.0</code>.
+ */
+interface JSpearCompiledFunction extends DataStateExpression {
+
+    /**
+     * Returns the evaluation of the compiled expression on the given data state.
+     *
+     * @param rg random generator used to sample random values.
+     * @param state data state where variables are read.
+     * @return the evaluation of the compiled expression on the given data state.
+     */
+    double eval(RandomGenerator rg, DataState state);
+
+}
@@ -0,0 +1,189 @@
+/*
+ * STARK: Software Tool for the Analysis of Robustness in the unKnown environment
+ *
+ *              Copyright (C) 2023.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.unicam.quasylab.jspear.speclang.semantics;
+
+import it.unicam.quasylab.jspear.speclang.JSpearSpecificationLanguageBaseVisitor;
+import it.unicam.quasylab.jspear.speclang.JSpearSpecificationLanguageParser;
+import it.unicam.quasylab.jspear.speclang.types.JSpearType;
+import it.unicam.quasylab.jspear.speclang.values.JSPearInteger;
+import it.unicam.quasylab.jspear.speclang.values.JSpearBoolean;
+import it.unicam.quasylab.jspear.speclang.values.JSpearReal;
+import it.unicam.quasylab.jspear.speclang.variables.JSpearExpressionEvaluationContext;
+import it.unicam.quasylab.jspear.speclang.variables.JSpearVariable;
+import it.unicam.quasylab.jspear.speclang.variables.JSpearVariableAllocation;
+import it.unicam.quasylab.jspear.speclang.variables.JSpearVariableRegistry;
+import org.antlr.v4.runtime.tree.RuleNode;
+
+/**
+ * This visitor compiles expressions to method handles evaluated directly on data states (see
+ * {@link JSpearCompiledExpression}). Variables are resolved to their indices in the given allocation when the
+ * expression is compiled. The visitor returns <code>null</code> for the expressions that cannot be compiled: the
+ * ones referring to local variables or to functions, the ones whose evaluation gives an error value, and the
+ * ones whose type depends on the evaluation, like conditional expressions whose branches have different types.
+ * These expressions are evaluated by {@link JSpearExpressionEvaluator}.
+ */
+class JSpearExpressionCompiler extends JSpearSpecificationLanguageBaseVisitor<JSpearCompiledExpression> {
+
+    private final JSpearVariableAllocation allocation;
+
+    private final JSpearExpressionEvaluationContext context;
+
+    private final JSpearVariableRegistry registry;
+
+    JSpearExpressionCompiler(JSpearVariableAllocation allocation, JSpearExpressionEvaluationContext context, JSpearVariableRegistry registry) {
+        this.allocation = allocation;
+        this.context = context;
+        this.registry = registry;
+    }
+
+    /**
+     * Returns the compiled version of the given expression, or <code>null</code> if the expression cannot be compiled.
+     *
+     * @param allocation the allocation of the variables in the data state.
+     * @param context the evaluation context.
+     * @param registry the registry of declared variables.
+     * @param expression the expression to compile.
+     * @return the compiled version of the given expression, or <code>null</code> if it cannot be compiled.
+     */
+    static JSpearCompiledExpression compile(JSpearVariableAllocation allocation, JSpearExpressionEvaluationContext context, JSpearVariableRegistry registry, JSpearSpecificationLanguageParser.ExpressionContext expression) {
+        return expression.accept(new JSpearExpressionCompiler(allocation, context, registry));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitChildren(RuleNode node) {
+        return null;
+    }
+
+    @Override
+    public JSpearCompiledExpression visitNegationExpression(JSpearSpecificationLanguageParser.NegationExpressionContext ctx) {
+        return JSpearCompiledExpression.negate(ctx.arg.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitExponentExpression(JSpearSpecificationLanguageParser.ExponentExpressionContext ctx) {
+        return JSpearCompiledExpression.function("pow", ctx.left.accept(this), ctx.right.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitBinaryMathCallExpression(JSpearSpecificationLanguageParser.BinaryMathCallExpressionContext ctx) {
+        return JSpearCompiledExpression.function(ctx.binaryMathFunction().start.getText(), ctx.left.accept(this), ctx.right.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitTrueValue(JSpearSpecificationLanguageParser.TrueValueContext ctx) {
+        return JSpearCompiledExpression.constant(JSpearBoolean.TRUE);
+    }
+
+    @Override
+    public JSpearCompiledExpression visitRelationExpression(JSpearSpecificationLanguageParser.RelationExpressionContext ctx) {
+        return JSpearCompiledExpression.relation(ctx.op.getText(), ctx.left.accept(this), ctx.right.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitBracketExpression(JSpearSpecificationLanguageParser.BracketExpressionContext ctx) {
+        return ctx.expression().accept(this);
+    }
+
+    @Override
+    public JSpearCompiledExpression visitFalseValue(JSpearSpecificationLanguageParser.FalseValueContext ctx) {
+        return JSpearCompiledExpression.constant(JSpearBoolean.FALSE);
+    }
+
+    @Override
+    public JSpearCompiledExpression visitAndExpression(JSpearSpecificationLanguageParser.AndExpressionContext ctx) {
+        return JSpearCompiledExpression.and(ctx.left.accept(this), ctx.right.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitUnaryMathCallExpression(JSpearSpecificationLanguageParser.UnaryMathCallExpressionContext ctx) {
+        return JSpearCompiledExpression.function(ctx.unaryMathFunction().start.getText(), ctx.argument.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitUnaryExpression(JSpearSpecificationLanguageParser.UnaryExpressionContext ctx) {
+        return JSpearCompiledExpression.function(ctx.op.getText(), ctx.arg.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitReferenceExpression(JSpearSpecificationLanguageParser.ReferenceExpressionContext ctx) {
+        String name = ctx.name.getText();
+        if (context.isDefined(name)) {
+            return JSpearCompiledExpression.constant(context.get(name));
+        }
+        if (registry.isDeclared(name)) {
+            JSpearVariable variable = registry.get(name);
+            JSpearType type = allocation.getType(variable);
+            return (type == null ? null : JSpearCompiledExpression.variable(type, allocation.indexOf(variable)));
+        }
+        return null;
+    }
+
+    @Override
+    public JSpearCompiledExpression visitIntValue(JSpearSpecificationLanguageParser.IntValueContext ctx) {
+        return JSpearCompiledExpression.constant(new JSPearInteger(Integer.parseInt(ctx.getText())));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitNormalExpression(JSpearSpecificationLanguageParser.NormalExpressionContext ctx) {
+        return JSpearCompiledExpression.normal(ctx.mean.accept(this), ctx.variance.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitUniformExpression(JSpearSpecificationLanguageParser.UniformExpressionContext ctx) {
+        return JSpearCompiledExpression.uniform(ctx.expression().stream().map(e -> e.accept(this)).toArray(JSpearCompiledExpression[]::new));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitOrExpression(JSpearSpecificationLanguageParser.OrExpressionContext ctx) {
+        return JSpearCompiledExpression.or(ctx.left.accept(this), ctx.right.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitIfThenElseExpression(JSpearSpecificationLanguageParser.IfThenElseExpressionContext ctx) {
+        return JSpearCompiledExpression.ifThenElse(ctx.guard.accept(this), ctx.thenBranch.accept(this), ctx.elseBranch.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitRealValue(JSpearSpecificationLanguageParser.RealValueContext ctx) {
+        return JSpearCompiledExpression.constant(new JSpearReal(Double.parseDouble(ctx.getText())));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitMulDivExpression(JSpearSpecificationLanguageParser.MulDivExpressionContext ctx) {
+        return JSpearCompiledExpression.arithmetic(ctx.op.getText(), ctx.left.accept(this), ctx.right.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitAddSubExpression(JSpearSpecificationLanguageParser.AddSubExpressionContext ctx) {
+        return JSpearCompiledExpression.arithmetic(ctx.op.getText(), ctx.left.accept(this), ctx.right.accept(this));
+    }
+
+    @Override
+    public JSpearCompiledExpression visitRandomExpression(JSpearSpecificationLanguageParser.RandomExpressionContext ctx) {
+        if (ctx.from == null) {
+            return JSpearCompiledExpression.random();
+        }
+        return JSpearCompiledExpression.random(ctx.from.accept(this), ctx.to.accept(this));
+    }
+
+}
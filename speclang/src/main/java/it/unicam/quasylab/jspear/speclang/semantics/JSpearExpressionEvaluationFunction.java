@@ -30,7 +30,23 @@ import org.apache.commons.math3.random.RandomGenerator;
 public interface JSpearExpressionEvaluationFunction {
 
     static JSpearExpressionEvaluationFunction of(JSpearValue v) {
-        return (rg, s) -> v;
+        return new Constant(v);
+    }
+
+    /**
+     * Returns true if the given functions are all constant, namely if their evaluation depends neither on the
+     * random generator nor on the store.
+     *
+     * @param functions the functions to check.
+     * @return true if the given functions are all constant.
+     */
+    static boolean areConstant(JSpearExpressionEvaluationFunction ... functions) {
+        for (JSpearExpressionEvaluationFunction f: functions) {
+            if (!(f instanceof Constant)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     JSpearValue eval(RandomGenerator rg, JSpearStore store);
@@ -39,4 +55,18 @@ public interface JSpearExpressionEvaluationFunction {
     default JSpearValue eval() { return eval(null, null); }
 
     default JSpearValue eval(JSpearStore store) { return eval(null, store); }
+
+    /**
+     * The evaluation function always returning the same value. Expressions built only from constants are folded
+     * into instances of this class when they are evaluated, so that no work is repeated at each evaluation.
+     *
+     * @param value the returned value.
+     */
+    record Constant(JSpearValue value) implements JSpearExpressionEvaluationFunction {
+
+        @Override
+        public JSpearValue eval(RandomGenerator rg, JSpearStore store) {
+            return value;
+        }
+    }
 }
@@ -22,13 +22,14 @@
 
 package it.unicam.quasylab.jspear.speclang.semantics;
 
+import it.unicam.quasylab.jspear.ds.DataState;
 import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.speclang.JSpearSpecificationLanguageBaseVisitor;
 import it.unicam.quasylab.jspear.speclang.JSpearSpecificationLanguageParser;
 import it.unicam.quasylab.jspear.speclang.variables.*;
 import it.unicam.quasylab.jspear.speclang.values.*;
+import org.apache.commons.math3.random.RandomGenerator;
 
-import java.util.Arrays;
 import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.DoubleUnaryOperator;
@@ -91,28 +92,93 @@ public class JSpearExpressionEvaluator extends JSpearSpecificationLanguageBaseVi
         return expression.accept(new JSpearExpressionEvaluator(context, registry));
     }
 
+    /**
+     * Returns the function evaluating the given expression where the variables allocated with the given allocation
+     * are read, whenever the store used in the evaluation is built from a data state with the same allocation, directly
+     * from the data state by a compiled version of the expression (see {@link JSpearExpressionCompiler}). In any
+     * other case, and when the expression cannot be compiled, the expression is interpreted.
+     *
+     * @param allocation the allocation of the variables in the data state.
+     * @param context the evaluation context.
+     * @param registry the registry of declared variables.
+     * @param expression the expression to evaluate.
+     * @return the function evaluating the given expression.
+     */
+    public static JSpearExpressionEvaluationFunction eval(JSpearVariableAllocation allocation, JSpearExpressionEvaluationContext context, JSpearVariableRegistry registry, JSpearSpecificationLanguageParser.ExpressionContext expression) {
+        JSpearExpressionEvaluationFunction evaluation = eval(context, registry, expression);
+        if (evaluation instanceof JSpearExpressionEvaluationFunction.Constant) {
+            return evaluation;
+        }
+        JSpearCompiledExpression compiled = JSpearExpressionCompiler.compile(allocation, context, registry, expression);
+        if (compiled == null) {
+            return evaluation;
+        }
+        return new CompiledEvaluationFunction(allocation, compiled, compiled.toFunction(), evaluation);
+    }
+
+    /**
+     * Returns the data state expression evaluating the given expression on a data state. When possible, the
+     * expression is compiled to a function reading the variables directly from the data state at the indices given
+     * by the allocation (see {@link JSpearExpressionCompiler}), otherwise it is interpreted over a store built from
+     * the data state at each application. When the whole expression is constant, the resulting function just
+     * returns its value.
+     *
+     * @param allocation the allocation of the variables in the data state.
+     * @param context the evaluation context.
+     * @param registry the registry of declared variables.
+     * @param expression the expression to evaluate.
+     * @return the data state expression evaluating the given expression.
+     */
     public static DataStateExpression evalToDataStateExpression(JSpearVariableAllocation allocation, JSpearExpressionEvaluationContext context, JSpearVariableRegistry registry, JSpearSpecificationLanguageParser.ExpressionContext expression) {
         JSpearExpressionEvaluationFunction evaluation = expression.accept(new JSpearExpressionEvaluator(context, registry));
+        if (evaluation instanceof JSpearExpressionEvaluationFunction.Constant constant) {
+            double value = constant.value().toDouble();
+            return ds -> value;
+        }
+        JSpearCompiledExpression compiled = JSpearExpressionCompiler.compile(allocation, context, registry, expression);
+        if (compiled != null) {
+            return compiled.toFunction();
+        }
         return ds -> evaluation.eval(JSpearStore.storeOf(allocation, ds)).toDouble();
     }
 
+    /**
+     * Returns the given evaluation function or, when all its arguments are constant, the constant function
+     * returning its value. This allows the work depending only on literals to be done once when the expression
+     * is evaluated instead of each time the resulting function is applied.
+     *
+     * @param function the evaluation function.
+     * @param arguments the evaluation functions of the arguments of <code>function</code>.
+     * @return the given evaluation function or its value if all its arguments are constant.
+     */
+    private static JSpearExpressionEvaluationFunction fold(JSpearExpressionEvaluationFunction function, JSpearExpressionEvaluationFunction ... arguments) {
+        if (JSpearExpressionEvaluationFunction.areConstant(arguments)) {
+            try {
+                return JSpearExpressionEvaluationFunction.of(function.eval(null, null));
+            } catch (ArithmeticException e) {
+                return function;
+            }
+        }
+        return function;
+    }
+
     @Override
     public JSpearExpressionEvaluationFunction visitNegationExpression(JSpearSpecificationLanguageParser.NegationExpressionContext ctx) {
         JSpearExpressionEvaluationFunction arg = ctx.arg.accept(this);
-        return (rg, s) -> JSpearValue.negate(arg.eval(rg, s));
+        return fold((rg, s) -> JSpearValue.negate(arg.eval(rg, s)), arg);
     }
 
     @Override
     public JSpearExpressionEvaluationFunction visitExponentExpression(JSpearSpecificationLanguageParser.ExponentExpressionContext ctx) {
         JSpearExpressionEvaluationFunction leftEvaluation = ctx.left.accept(this);
         JSpearExpressionEvaluationFunction rightEvaluation = ctx.right.accept(this);
-        return (rg, s) -> JSpearValue.apply(Math::pow, leftEvaluation.eval(rg, s), rightEvaluation.eval(rg, s));
+        return fold((rg, s) -> JSpearValue.apply(Math::pow, leftEvaluation.eval(rg, s), rightEvaluation.eval(rg, s)), leftEvaluation, rightEvaluation);
     }
 
     private JSpearExpressionEvaluationFunction evalBinary(BiFunction<JSpearValue, JSpearValue, JSpearValue> op, JSpearSpecificationLanguageParser.ExpressionContext firstArgument, JSpearSpecificationLanguageParser.ExpressionContext secondArgument) {
         JSpearExpressionEvaluationFunction firstArgumentEvaluation = firstArgument.accept(this);
         JSpearExpressionEvaluationFunction secondArgumentEvaluation = secondArgument.accept(this);
-        return (rg, s) -> op.apply(firstArgumentEvaluation.eval(rg, s), secondArgumentEvaluation.eval(rg, s));
+        return fold((rg, s) -> op.apply(firstArgumentEvaluation.eval(rg, s), secondArgumentEvaluation.eval(rg, s)), firstArgumentEvaluation, secondArgumentEvaluation);
     }
 
 
@@ -170,7 +236,7 @@ public class JSpearExpressionEvaluator extends JSpearSpecificationLanguageBaseVi
 
     private JSpearExpressionEvaluationFunction evalUnary(DoubleUnaryOperator op, JSpearSpecificationLanguageParser.ExpressionContext argument) {
         JSpearExpressionEvaluationFunction argumentEvaluator = argument.accept(this);
-        return (rg, s) -> JSpearValue.apply(op, argumentEvaluator.eval(rg, s));
+        return fold((rg, s) -> JSpearValue.apply(op, argumentEvaluator.eval(rg, s)), argumentEvaluator);
     }
 
 
@@ -225,7 +291,7 @@ public class JSpearExpressionEvaluator extends JSpearSpecificationLanguageBaseVi
     public JSpearExpressionEvaluationFunction visitOrExpression(JSpearSpecificationLanguageParser.OrExpressionContext ctx) {
         JSpearExpressionEvaluationFunction leftEvaluation = ctx.left.accept(this);
         JSpearExpressionEvaluationFunction rightEvaluation = ctx.right.accept(this);
-        return (rg, s) -> JSpearValue.or( leftEvaluation.eval(rg, s), rightEvaluation.eval(rg, s));
+        return fold((rg, s) -> JSpearValue.or( leftEvaluation.eval(rg, s), rightEvaluation.eval(rg, s)), leftEvaluation, rightEvaluation);
     }
 
     @Override
@@ -233,7 +299,15 @@ public class JSpearExpressionEvaluator extends JSpearSpecificationLanguageBaseVi
         JSpearExpressionEvaluationFunction guardEvaluation = ctx.guard.accept(this);
         JSpearExpressionEvaluationFunction thenEvaluation = ctx.thenBranch.accept(this);
         JSpearExpressionEvaluationFunction elseEvaluation = ctx.elseBranch.accept(this);
-        return (rg, s) -> JSpearValue.ifThenElse(guardEvaluation.eval(rg, s), () -> thenEvaluation.eval(rg, s), () -> elseEvaluation.eval(rg, s));
+        if (guardEvaluation instanceof JSpearExpressionEvaluationFunction.Constant guard) {
+            return (guard.value() instanceof JSpearBoolean booleanValue ? (booleanValue.value() ? thenEvaluation : elseEvaluation) : JSpearExpressionEvaluationFunction.of(JSpearValue.ERROR_VALUE));
+        }
+        return (rg, s) -> {
+            if (guardEvaluation.eval(rg, s) instanceof JSpearBoolean booleanValue) {
+                return (booleanValue.value() ? thenEvaluation.eval(rg, s) : elseEvaluation.eval(rg, s));
+            }
+            return JSpearValue.ERROR_VALUE;
+        };
     }
 
     @Override
@@ -248,7 +322,13 @@ public class JSpearExpressionEvaluator extends JSpearSpecificationLanguageBaseVi
         if (context.isAFunction(functionName)) {
             JSpearExpressionEvaluationFunction[] arguments = ctx.callArguments.stream().map(e -> e.accept(this)).toArray(JSpearExpressionEvaluationFunction[]::new);
             JSpearFunction function = context.getFunction(functionName);
-            return (rg, s) -> function.apply(rg, Arrays.stream(arguments).map(e -> e.eval(rg, s)).toArray(JSpearValue[]::new) );
+            return (rg, s) -> {
+                JSpearValue[] values = new JSpearValue[arguments.length];
+                for (int i = 0; i < arguments.length; i++) {
+                    values[i] = arguments[i].eval(rg, s);
+                }
+                return function.apply(rg, values);
+            };
         } else {
             return JSpearExpressionEvaluationFunction.of(JSpearValue.ERROR_VALUE);
         }
@@ -284,4 +364,24 @@ public class JSpearExpressionEvaluator extends JSpearSpecificationLanguageBaseVi
     }
 
 
+    /**
+     * The evaluation function using the compiled version of an expression when the store is built from a data state
+     * with the allocation used to compile it, and the interpreted one otherwise.
+     *
+     * @param allocation the allocation used to compile the expression.
+     * @param compiled the compiled expression.
+     * @param function the function evaluating the compiled expression.
+     * @param interpreted the function interpreting the expression.
+     */
+    private record CompiledEvaluationFunction(JSpearVariableAllocation allocation, JSpearCompiledExpression compiled, JSpearCompiledFunction function, JSpearExpressionEvaluationFunction interpreted) implements JSpearExpressionEvaluationFunction {
+
+        @Override
+        public JSpearValue eval(RandomGenerator rg, JSpearStore store) {
+            DataState state = (store == null ? null : store.getDataState(allocation));
+            if (state == null) {
+                return interpreted.eval(rg, store);
+            }
+            return compiled.valueOf(function.eval(rg, state));
+        }
+    }
 }
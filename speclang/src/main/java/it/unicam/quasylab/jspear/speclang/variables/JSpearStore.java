@@ -61,6 +61,18 @@ public interface JSpearStore {
      */
     JSpearValue get(JSpearVariable variable);
 
+    /**
+     * Returns the data state containing the values of this store according to the given allocation, or
+     * <code>null</code> if the values of this store are not those of a data state allocated in this way. This is
+     * used to evaluate compiled expressions directly on data states.
+     *
+     * @param allocation variable allocation.
+     * @return the data state containing the values of this store according to the given allocation.
+     */
+    default DataState getDataState(JSpearVariableAllocation allocation) {
+        return null;
+    }
+
 
     /**
      * Returns a new store that enriches the given one with the binging of <code>variable</code> to <code>value</code>.
@@ -92,7 +104,17 @@ public interface JSpearStore {
      * @return the store whose binding are defined in terms of the given allocation and data state.
      */
     static JSpearStore storeOf(JSpearVariableAllocation allocation, DataState state) {
-        return v -> allocation.get(v, state);
+        return new JSpearStore() {
+            @Override
+            public JSpearValue get(JSpearVariable variable) {
+                return allocation.get(variable, state);
+            }
+
+            @Override
+            public DataState getDataState(JSpearVariableAllocation other) {
+                return (allocation == other ? state : null);
+            }
+        };
     }
 }
 
@@ -28,6 +28,7 @@ import it.unicam.quasylab.jspear.ds.DataStateUpdate;
 import it.unicam.quasylab.jspear.speclang.types.JSpearType;
 import it.unicam.quasylab.jspear.speclang.values.JSpearValue;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -39,6 +40,12 @@ public class JSpearVariableAllocation {
 
     private final Map<JSpearVariable, JSpearVariableAllocationData> allocationData = new HashMap<>();
 
+    /**
+     * Allocation data indexed by the index of the allocated variables. This table is used to resolve variables
+     * while expressions are evaluated without hashing them at each access.
+     */
+    private JSpearVariableAllocationData[] allocationTable = new JSpearVariableAllocationData[0];
+
 
     /**
      * Adds the given variable with the given type to this allocation.
@@ -50,18 +57,54 @@ public class JSpearVariableAllocation {
         if (allocationData.containsKey(variable)) {
             throw new IllegalArgumentException("Duplicated variable "+variable);
         }
-        this.allocationData.put(variable, new JSpearVariableAllocationData(variable, allocationData.size(), type));
+        register(new JSpearVariableAllocationData(variable, allocationData.size(), type));
     }
 
     public void add(JSpearVariable variable, JSpearType type, DataRange range) {
         if (allocationData.containsKey(variable)) {
             throw new IllegalArgumentException("Duplicated variable "+variable);
         }
-        this.allocationData.put(variable, new JSpearVariableAllocationData(variable, allocationData.size(), type, range));
+        register(new JSpearVariableAllocationData(variable, allocationData.size(), type, range));
+    }
+
+    private void register(JSpearVariableAllocationData data) {
+        this.allocationData.put(data.variable, data);
+        int index = data.variable.index();
+        if (index >= allocationTable.length) {
+            allocationTable = Arrays.copyOf(allocationTable, Math.max(index + 1, 2 * allocationTable.length));
+        }
+        allocationTable[index] = data;
+    }
+
+    private JSpearVariableAllocationData getAllocationData(JSpearVariable variable) {
+        int index = variable.index();
+        return ((index >= 0) && (index < allocationTable.length) ? allocationTable[index] : null);
+    }
+
+    /**
+     * Returns the index in data states of the given variable, or <code>-1</code> if the variable is not allocated.
+     *
+     * @param variable a variable.
+     * @return the index in data states of the given variable, or <code>-1</code> if the variable is not allocated.
+     */
+    public int indexOf(JSpearVariable variable) {
+        JSpearVariableAllocationData variableAllocationData = getAllocationData(variable);
+        return (variableAllocationData == null ? -1 : variableAllocationData.index);
+    }
+
+    /**
+     * Returns the type of the given variable, or <code>null</code> if the variable is not allocated.
+     *
+     * @param variable a variable.
+     * @return the type of the given variable, or <code>null</code> if the variable is not allocated.
+     */
+    public JSpearType getType(JSpearVariable variable) {
+        JSpearVariableAllocationData variableAllocationData = getAllocationData(variable);
+        return (variableAllocationData == null ? null : variableAllocationData.type);
     }
 
     public JSpearValue get(JSpearVariable variable, DataState state) {
-        JSpearVariableAllocationData variableAllocationData = allocationData.get(variable);
+        JSpearVariableAllocationData variableAllocationData = getAllocationData(variable);
         if (variableAllocationData == null) {
             return JSpearValue.ERROR_VALUE;
         } else {
@@ -70,7 +113,7 @@ public class JSpearVariableAllocation {
     }
 
     public Optional<DataStateUpdate> set(JSpearVariable variable, JSpearValue value) {
-        JSpearVariableAllocationData variableAllocationData = allocationData.get(variable);
+        JSpearVariableAllocationData variableAllocationData = getAllocationData(variable);
         if (variableAllocationData == null) {
             return Optional.empty();
         } else {
@@ -22,7 +22,12 @@
 
 package it.unicam.quasylab.jspear.speclang;
 
+import it.unicam.quasylab.jspear.DefaultRandomGenerator;
+import it.unicam.quasylab.jspear.ds.DataRange;
+import it.unicam.quasylab.jspear.ds.DataState;
+import it.unicam.quasylab.jspear.ds.DataStateExpression;
 import it.unicam.quasylab.jspear.speclang.parsing.ParseErrorCollector;
+import it.unicam.quasylab.jspear.speclang.semantics.JSpearExpressionEvaluationFunction;
 import it.unicam.quasylab.jspear.speclang.semantics.JSpearExpressionEvaluator;
 import it.unicam.quasylab.jspear.speclang.types.ExpressionTypeInference;
 import it.unicam.quasylab.jspear.speclang.types.JSpearRandomType;
@@ -30,6 +35,9 @@ import it.unicam.quasylab.jspear.speclang.types.JSpearType;
 import it.unicam.quasylab.jspear.speclang.types.LocalTypeContext;
 import it.unicam.quasylab.jspear.speclang.values.*;
 import it.unicam.quasylab.jspear.speclang.variables.JSpearExpressionEvaluationContext;
+import it.unicam.quasylab.jspear.speclang.variables.JSpearStore;
+import it.unicam.quasylab.jspear.speclang.variables.JSpearVariableAllocation;
+import it.unicam.quasylab.jspear.speclang.variables.JSpearVariableRegistry;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
@@ -39,7 +47,7 @@ import org.junit.jupiter.api.Test;
 import java.util.HashMap;
 import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class JSpearExpressionEvaluatorTest {
 
@@ -192,5 +200,84 @@ class JSpearExpressionEvaluatorTest {
         }
     }
 
+    private JSpearExpressionEvaluationFunction evalFunction(String code) {
+        return getParseTree(code).accept(new JSpearExpressionEvaluator(new JSpearExpressionEvaluationContext(new HashMap<>()), null));
+    }
+
+    @Test
+    public void constantExpressionsAreFolded() {
+        Map<String, JSpearValue> foldedTests = Map.of(
+                "2+3*4", new JSPearInteger(14),
+                "2. * 3 - 1", new JSpearReal(5.0),
+                "sqrt(4) + 1", new JSpearReal(3.0),
+                "!(2 < 3) | (2. >= 3)", JSpearBoolean.FALSE,
+                "(2<3?1.0:2.0)", new JSpearReal(1.0));
+        for (Map.Entry<String, JSpearValue> test: foldedTests.entrySet()) {
+            JSpearExpressionEvaluationFunction function = evalFunction(test.getKey());
+            assertTrue(function instanceof JSpearExpressionEvaluationFunction.Constant, test.getKey());
+            assertEquals(test.getValue(), function.eval(), test.getKey());
+        }
+    }
+
+    @Test
+    public void randomExpressionsAreNotFolded() {
+        assertFalse(evalFunction("R + 1") instanceof JSpearExpressionEvaluationFunction.Constant);
+        assertFalse(evalFunction("2 * R[0, 1]") instanceof JSpearExpressionEvaluationFunction.Constant);
+    }
+
+    @Test
+    public void constantGuardSelectsTheBranch() {
+        JSpearExpressionEvaluationFunction elseFunction = evalFunction("(2>3?R:2.0)");
+        assertTrue(elseFunction instanceof JSpearExpressionEvaluationFunction.Constant);
+        assertEquals(new JSpearReal(2.0), elseFunction.eval());
+        JSpearExpressionEvaluationFunction thenFunction = evalFunction("(2<3?R:2.0)");
+        assertFalse(thenFunction instanceof JSpearExpressionEvaluationFunction.Constant);
+        double value = thenFunction.eval(new DefaultRandomGenerator(0), null).toDouble();
+        assertTrue((0.0 <= value) && (value < 1.0));
+    }
+
+    @Test
+    public void nonBooleanGuardsGiveAnError() {
+        JSpearExpressionEvaluationFunction constantGuard = evalFunction("(1?2:3)");
+        assertTrue(constantGuard instanceof JSpearExpressionEvaluationFunction.Constant);
+        assertSame(JSpearValue.ERROR_VALUE, constantGuard.eval());
+        assertSame(JSpearValue.ERROR_VALUE, evalFunction("(R?2:3)").eval(new DefaultRandomGenerator(0), null));
+    }
+
+    @Test
+    public void unknownFunctionsGiveAnError() {
+        JSpearExpressionEvaluationFunction function = evalFunction("foo(1)");
+        assertTrue(function instanceof JSpearExpressionEvaluationFunction.Constant);
+        assertSame(JSpearValue.ERROR_VALUE, function.eval());
+    }
+
+
+
+    @Test
+    public void compiledExpressionsAgreeWithInterpretedOnes() {
+        JSpearVariableRegistry registry = new JSpearVariableRegistry();
+        JSpearVariableAllocation allocation = new JSpearVariableAllocation();
+        allocation.add(registry.getOrRegister("x"), JSpearType.INTEGER_TYPE);
+        allocation.add(registry.getOrRegister("y"), JSpearType.REAL_TYPE);
+        allocation.add(registry.getOrRegister("b"), JSpearType.BOOLEAN_TYPE);
+        JSpearExpressionEvaluationContext context = new JSpearExpressionEvaluationContext(Map.of("k", new JSPearInteger(2)));
+        DataState state = new DataState(new DataRange[] { new DataRange(-10, 10), new DataRange(-10, 10), new DataRange(0, 1) }, new double[] { 3, 1.5, 1 });
+        String[] expressions = { "x+k", "x*y-1", "x % 2", "x / 2", "y / 2", "-x", "x ^ 2", "max(x, y)", "sin(y)",
+                "x < y | b", "!b & x >= 3", "(b?x:k)", "(x > y?y:x)", "y*R", "U[x, y, 4]", "N[y, 2.0]", "x + R[0, 5]" };
+        for (String code: expressions) {
+            JSpearSpecificationLanguageParser.ExpressionContext expression = (JSpearSpecificationLanguageParser.ExpressionContext) getParseTree(code);
+            JSpearExpressionEvaluationFunction interpreted = JSpearExpressionEvaluator.eval(context, registry, expression);
+            JSpearExpressionEvaluationFunction compiled = JSpearExpressionEvaluator.eval(allocation, context, registry, expression);
+            DataStateExpression function = JSpearExpressionEvaluator.evalToDataStateExpression(allocation, context, registry, expression);
+            DefaultRandomGenerator interpretedGenerator = new DefaultRandomGenerator(0);
+            DefaultRandomGenerator compiledGenerator = new DefaultRandomGenerator(0);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(interpreted.eval(interpretedGenerator, JSpearStore.storeOf(allocation, state)), compiled.eval(compiledGenerator, JSpearStore.storeOf(allocation, state)), code);
+            }
+            if (!code.contains("R") && !code.contains("U") && !code.contains("N")) {
+                assertEquals(interpreted.eval(JSpearStore.storeOf(allocation, state)).toDouble(), function.eval(state), code);
+            }
+        }
+    }
 
-}
\ No newline at end of file
+}